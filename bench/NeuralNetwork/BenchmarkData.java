@@ -0,0 +1,68 @@
+package NeuralNetwork;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates the synthetic data sets used by the benchmarks.
+ *
+ * @author Nicolas Dutly
+ */
+final class BenchmarkData {
+
+    /**
+     * Number of colors of the synthetic data sets
+     */
+    static final int NB_OF_COLORS = 8;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates a data set with random rgb values and colors
+     *
+     * @param nbOfRows number of lines
+     * @param seed     seed of the random number generator
+     * @return the data set
+     */
+    static DataSet randomDataSet(int nbOfRows, long seed) {
+        Random random = new Random(seed);
+        byte[] rgb = new byte[3 * nbOfRows];
+        byte[] colors = new byte[nbOfRows];
+        for (int i = 0; i < nbOfRows; i++) {
+            for (int j = 0; j < 3; j++) {
+                rgb[3 * i + j] = (byte) random.nextInt(256);
+            }
+            colors[i] = (byte) random.nextInt(NB_OF_COLORS);
+        }
+        return new DataSet(rgb, colors, nbOfRows, NB_OF_COLORS, null);
+    }
+
+    /**
+     * Writes a csv data set with random rgb values and colors
+     *
+     * @param file     the csv file to write to
+     * @param nbOfRows number of lines
+     * @param seed     seed of the random number generator
+     * @throws IOException if an IO exception occurs
+     */
+    static void writeRandomCsv(File file, int nbOfRows, long seed) throws IOException {
+        Random random = new Random(seed);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int i = 0; i < nbOfRows; i++) {
+                writer.write(random.nextInt(256) + "," + random.nextInt(256) + "," + random.nextInt(256) + ";");
+                int color = random.nextInt(NB_OF_COLORS);
+                for (int j = 0; j < NB_OF_COLORS; j++) {
+                    writer.write(j == color ? "1" : "0");
+                    writer.write(j == NB_OF_COLORS - 1 ? ";\n" : ",");
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package NeuralNetwork;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate of every benchmark
+ * is reported along with its score. Results are also written to {@code stats/bench_results.csv}.
+ * <p>
+ * Usage: {@code java -cp <classpath> NeuralNetwork.BenchmarkMain [regex]}, where the optional
+ * regex selects the benchmarks to run (e.g. {@code Query}).
+ *
+ * @author Nicolas Dutly
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        new java.io.File("stats").mkdir();
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "NeuralNetwork\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result("stats/bench_results.csv")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,50 @@
+package NeuralNetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed to classify a whole 640x480 frame with
+ * {@link NeuralNetwork#classify(byte[], byte[])}, using one or several inference threads.
+ * Apart from the few bytes describing the frame, no memory should be allocated per frame.
+ *
+ * @author Nicolas Dutly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+    private static final int WIDTH = 640, HEIGHT = 480;
+
+    @Param({"10", "32"})
+    int nbOfHiddenNeurons;
+
+    @Param({"1", "4"})
+    int nbOfThreads;
+
+    private NeuralNetwork network;
+    private byte[] rgb;
+    private byte[] classes;
+
+    @Setup
+    public void setup() {
+        network = new NeuralNetwork(nbOfHiddenNeurons, BenchmarkData.NB_OF_COLORS, 42);
+        network.setNbOfInferenceThreads(nbOfThreads);
+        rgb = new byte[3 * WIDTH * HEIGHT];
+        new Random(42).nextBytes(rgb);
+        classes = new byte[WIDTH * HEIGHT];
+    }
+
+    @Benchmark
+    public byte[] classify() throws InterruptedException, ExecutionException {
+        network.classify(rgb, classes);
+        return classes;
+    }
+}
@@ -0,0 +1,130 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.Kernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and vector (SIMD) layer kernels, see {@link Kernels}, on a layer of
+ * {@code width} neurons fed by a layer of {@code width} neurons (plus the bias).
+ * The vector backend requires the sources located in {@code vector/} on the class path, its
+ * benchmarks fail if it is not available.
+ *
+ * @author Nicolas Dutly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+    /**
+     * Number of samples of the mini-batch benchmarks
+     */
+    static final int BATCH_SIZE = 32;
+
+    @Param({"8", "32", "128", "512"})
+    int width;
+
+    @Param({"scalar", "vector"})
+    String kernels;
+
+    private Kernels backend;
+    private int nbOfInputs;
+    private double[] weights;
+    private double[] weightDelta;
+    private double[] inputs;
+    private double[] weightedInput;
+    private double[] delta;
+    private double[] prevDelta;
+    private double[] batchInputs;
+    private double[] batchWeightedInput;
+    private double[] batchDelta;
+    private double[] batchPrevDelta;
+
+    @Setup
+    public void setup() {
+        backend = Kernels.forName(kernels);
+        nbOfInputs = width + 1;
+        Random random = new Random(42);
+        weights = randomArray(random, width * nbOfInputs);
+        weightDelta = new double[width * nbOfInputs];
+        inputs = randomArray(random, nbOfInputs);
+        weightedInput = new double[width];
+        delta = randomArray(random, width);
+        prevDelta = new double[nbOfInputs];
+        batchInputs = randomArray(random, BATCH_SIZE * nbOfInputs);
+        batchWeightedInput = new double[BATCH_SIZE * width];
+        batchDelta = randomArray(random, BATCH_SIZE * width);
+        batchPrevDelta = new double[BATCH_SIZE * nbOfInputs];
+    }
+
+    private static double[] randomArray(Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = random.nextDouble() * 2 - 1;
+        }
+        return array;
+    }
+
+    /**
+     * Weighted inputs of one sample (forward pass)
+     */
+    @Benchmark
+    public double[] gemv() {
+        backend.gemv(width, nbOfInputs, weights, nbOfInputs, inputs, weightedInput);
+        return weightedInput;
+    }
+
+    /**
+     * Weighted delta sums of one sample (back-propagation to the previous layer)
+     */
+    @Benchmark
+    public double[] gemvT() {
+        backend.gemvT(nbOfInputs, width, weights, nbOfInputs, delta, prevDelta);
+        return prevDelta;
+    }
+
+    /**
+     * Weight adjustments of one sample
+     */
+    @Benchmark
+    public double[] outer() {
+        backend.outer(width, nbOfInputs, delta, inputs, weightDelta, nbOfInputs);
+        return weightDelta;
+    }
+
+    /**
+     * Weighted inputs of a mini-batch
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double[] gemmNT() {
+        backend.gemmNT(BATCH_SIZE, width, nbOfInputs, batchInputs, nbOfInputs, weights, nbOfInputs, batchWeightedInput, width);
+        return batchWeightedInput;
+    }
+
+    /**
+     * Weighted delta sums of a mini-batch
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double[] gemmNN() {
+        backend.gemmNN(BATCH_SIZE, nbOfInputs, width, batchDelta, width, weights, nbOfInputs, batchPrevDelta, nbOfInputs);
+        return batchPrevDelta;
+    }
+
+    /**
+     * Weight adjustments of a mini-batch (accumulated, the sum is never reset)
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double[] gemmTN() {
+        backend.gemmTN(width, nbOfInputs, BATCH_SIZE, batchDelta, width, batchInputs, nbOfInputs, weightDelta, nbOfInputs);
+        return weightDelta;
+    }
+}
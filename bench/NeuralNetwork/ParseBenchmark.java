@@ -0,0 +1,52 @@
+package NeuralNetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed to parse a csv data set, see {@link DataSet#parse(String, int, boolean)},
+ * and to load the same data set from a binary file ({@link DataSet#load(String, int)}).
+ *
+ * @author Nicolas Dutly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParseBenchmark {
+
+    @Param({"10000", "1000000"})
+    int nbOfRows;
+
+    private File csv;
+    private File binary;
+
+    @Setup
+    public void setup() throws IOException {
+        csv = File.createTempFile("rgb_NN_bench", ".csv");
+        BenchmarkData.writeRandomCsv(csv, nbOfRows, 42);
+        binary = File.createTempFile("rgb_NN_bench", ".bin");
+        DataSet.parse(csv.getPath(), BenchmarkData.NB_OF_COLORS, false).write(binary.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        csv.delete();
+        binary.delete();
+    }
+
+    @Benchmark
+    public DataSet parse() throws IOException {
+        return DataSet.parse(csv.getPath(), BenchmarkData.NB_OF_COLORS, false);
+    }
+
+    @Benchmark
+    public DataSet load() throws IOException {
+        return DataSet.load(binary.getPath(), BenchmarkData.NB_OF_COLORS);
+    }
+}
@@ -0,0 +1,71 @@
+package NeuralNetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of {@link NeuralNetwork#query(boolean, double, double, double)}
+ * and of its allocation-free variants ({@link NeuralNetwork#query(boolean, double, double, double, double[])},
+ * {@link NeuralNetwork#classify(boolean, double, double, double)}), for which the GC profiler
+ * must report a normalized allocation rate ({@code gc.alloc.rate.norm}) of 0 B/op, as for the
+ * compiled classifier ({@link ClassifierCompiler}). The {@code allocations} command checks the
+ * same property without JMH, see {@link Base.AllocationCheck}.
+ *
+ * @author Nicolas Dutly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"10", "32", "128"})
+    int nbOfHiddenNeurons;
+
+    private NeuralNetwork network;
+    private RgbClassifier classifier;
+    private int rgb;
+    private double[] output;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        network = new NeuralNetwork(nbOfHiddenNeurons, BenchmarkData.NB_OF_COLORS, 42);
+        classifier = ClassifierCompiler.compile(network);
+        output = new double[BenchmarkData.NB_OF_COLORS];
+    }
+
+    @Benchmark
+    public double[] query() {
+        rgb = (rgb + 0x010305) & 0xFFFFFF;
+        return network.query(false, rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    @Benchmark
+    public double[] queryInto() {
+        rgb = (rgb + 0x010305) & 0xFFFFFF;
+        network.query(false, rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF, output);
+        return output;
+    }
+
+    @Benchmark
+    public int classify() {
+        rgb = (rgb + 0x010305) & 0xFFFFFF;
+        return network.classify(false, rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    @Benchmark
+    public double[] compiledQuery() {
+        rgb = (rgb + 0x010305) & 0xFFFFFF;
+        classifier.query(rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF, output);
+        return output;
+    }
+
+    @Benchmark
+    public int compiledClassify() {
+        rgb = (rgb + 0x010305) & 0xFFFFFF;
+        return classifier.classify(rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+}
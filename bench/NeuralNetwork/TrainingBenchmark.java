@@ -0,0 +1,58 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.Activation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the training throughput (training lines per second) of one epoch, see {@link NeuralNetwork#init(int)}.
+ * With several threads, every thread processes its own mini-batch of {@code batchSize} lines (batch size 1 and
+ * 1 thread being the per-line training); the final errors are compared by the {@code parallel} command of
+ * {@code Base.Main}, see {@code Base.ParallelCheck}.
+ *
+ * @author Nicolas Dutly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainingBenchmark {
+
+    /**
+     * Number of lines in the training set (one epoch)
+     */
+    static final int NB_OF_ROWS = 10000;
+
+    @Param({"10", "32", "128"})
+    int nbOfHiddenNeurons;
+
+    @Param({"1", "32"})
+    int batchSize;
+
+    @Param({"1", "2", "4", "8"})
+    int nbOfThreads;
+
+    @Param({"sigmoid", "fast-sigmoid", "relu"})
+    String activation;
+
+    private NeuralNetwork network;
+
+    @Setup
+    public void setup() {
+        network = new NeuralNetwork(nbOfHiddenNeurons, BenchmarkData.NB_OF_COLORS, 42);
+        network.setShowProgress(false);
+        network.setBatchSize(batchSize);
+        network.setNbOfThreads(nbOfThreads);
+        network.setActivation(Activation.forName(activation));
+        network.setDataSets(BenchmarkData.randomDataSet(NB_OF_ROWS, 42), null, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_OF_ROWS)
+    public void epoch() throws Exception {
+        network.init(1);
+    }
+}
@@ -0,0 +1,41 @@
+package NeuralNetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the validation throughput (validation lines per second), see {@link NeuralNetwork#validate()}.
+ *
+ * @author Nicolas Dutly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    /**
+     * Number of lines in the validation set
+     */
+    static final int NB_OF_ROWS = 10000;
+
+    @Param({"10", "32", "128"})
+    int nbOfHiddenNeurons;
+
+    private NeuralNetwork network;
+
+    @Setup
+    public void setup() {
+        network = new NeuralNetwork(nbOfHiddenNeurons, BenchmarkData.NB_OF_COLORS, 42);
+        network.setDataSets(BenchmarkData.randomDataSet(1, 42), BenchmarkData.randomDataSet(NB_OF_ROWS, 43), null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NB_OF_ROWS)
+    public void validate() {
+        network.validate();
+    }
+}
@@ -0,0 +1,150 @@
+package Base;
+
+import NeuralNetwork.NeuralNetwork;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Allocation check of the allocation-free inference methods,
+ * {@link NeuralNetwork#query(boolean, double, double, double, double[])} and
+ * {@link NeuralNetwork#classify(boolean, double, double, double)}.
+ * <p>
+ * For every topology, both methods are called in a loop until compiled by the JIT, then the bytes allocated
+ * by the current thread during a second loop are read from {@code com.sun.management.ThreadMXBean}
+ * (HotSpot and OpenJ9). Any allocated byte fails the check.
+ *
+ * @author Nicolas Dutly
+ */
+public class AllocationCheck {
+
+    /**
+     * Names of the checked methods
+     */
+    public static final String[] METHODS = {"query", "classify"};
+
+    private final int nbOfColors;
+    /**
+     * Contains the widths of the hidden layers of every topology
+     */
+    private final List<int[]> topologies;
+    /**
+     * Describes the number of warm-up calls (JIT compilation) and of checked calls per method
+     */
+    private int nbOfWarmupCalls = 200000;
+    private int nbOfCalls = 1000000;
+    private long seed = 1;
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Represents the bytes allocated by one method for one topology
+     */
+    public static class Result {
+        public final String topology, method;
+        public final long bytes;
+        public final int nbOfCalls;
+
+        Result(String topology, String method, long bytes, int nbOfCalls) {
+            this.topology = topology;
+            this.method = method;
+            this.bytes = bytes;
+            this.nbOfCalls = nbOfCalls;
+        }
+
+        /**
+         * @return whether the method did not allocate any memory
+         */
+        public boolean passed() {
+            return bytes <= 0;
+        }
+    }
+
+    /**
+     * @param nbOfColors the number of colors
+     * @param topologies the widths of the hidden layers of every topology to be checked
+     * @throws UnsupportedOperationException if the JVM does not measure the allocated bytes per thread
+     */
+    public AllocationCheck(int nbOfColors, List<int[]> topologies) {
+        this.nbOfColors = nbOfColors;
+        this.topologies = topologies;
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            throw new UnsupportedOperationException("The JVM does not measure the allocated bytes per thread");
+        }
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("The JVM does not measure the allocated bytes per thread");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Checks both methods for every topology
+     *
+     * @return the results, in the order of the topologies and methods
+     */
+    public List<Result> run() {
+        List<Result> results = new ArrayList<>();
+        for (int[] hiddenNeurons : topologies) {
+            //the weights do not matter, the network is not trained
+            NeuralNetwork network = new NeuralNetwork(hiddenNeurons, nbOfColors, seed);
+            int[] colors = new int[1024];
+            Random random = new Random(seed);
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = random.nextInt(1 << 24);
+            }
+            double[] output = new double[nbOfColors];
+            String topology = Arrays.toString(network.getTopology());
+            for (String method : METHODS) {
+                call(network, method, colors, output, nbOfWarmupCalls);
+                long id = Thread.currentThread().getId();
+                //the bytes allocated by reading the counter itself are subtracted
+                long before = threads.getThreadAllocatedBytes(id);
+                long overhead = threads.getThreadAllocatedBytes(id) - before;
+                before = threads.getThreadAllocatedBytes(id);
+                call(network, method, colors, output, nbOfCalls);
+                long bytes = threads.getThreadAllocatedBytes(id) - before - overhead;
+                results.add(new Result(topology, method, bytes, nbOfCalls));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Calls one of the {@link #METHODS}
+     *
+     * @param network   the network
+     * @param method    the method's name
+     * @param colors    the colors to be classified ({@code 0xRRGGBB})
+     * @param output    the probabilities' buffer
+     * @param nbOfCalls the number of calls
+     */
+    private static void call(NeuralNetwork network, String method, int[] colors, double[] output, int nbOfCalls) {
+        boolean query = method.equals("query");
+        long checksum = 0;
+        for (int i = 0; i < nbOfCalls; i++) {
+            int rgb = colors[i & (colors.length - 1)];
+            if (query) {
+                network.query(false, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, output);
+                checksum += (long) (output[0] * 1000);
+            } else {
+                checksum += network.classify(false, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            }
+        }
+        //keeps the loop from being optimized away
+        if (checksum == Long.MIN_VALUE) throw new IllegalStateException();
+    }
+
+    /**
+     * @param nbOfWarmupCalls number of warm-up calls per method, so that it is compiled by the JIT
+     * @param nbOfCalls       number of checked calls per method
+     * @param seed            seed of the networks and of the colors
+     */
+    public void setCalls(int nbOfWarmupCalls, int nbOfCalls, long seed) {
+        this.nbOfWarmupCalls = nbOfWarmupCalls;
+        this.nbOfCalls = nbOfCalls;
+        this.seed = seed;
+    }
+}
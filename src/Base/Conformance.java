@@ -0,0 +1,543 @@
+package Base;
+
+import NeuralNetwork.CSourceGenerator;
+import NeuralNetwork.DataSet;
+import NeuralNetwork.Layers.Activation;
+import NeuralNetwork.NeuralNetwork;
+import NeuralNetwork.Optimizers.Optimizer;
+import NeuralNetwork.QuantizedNetwork;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Conformance and latency harness of the generated C classifiers.
+ * <p>
+ * For every topology, a network is trained on the data set, then the C source of every generator
+ * (legacy {@link NeuralNetwork#write_C_source(String)}, unrolled and blocked {@link CSourceGenerator},
+ * quantized {@link QuantizedNetwork}) is generated and compiled with a driver main. The driver
+ * classifies random colors and the data set's colors, and the outputs are compared with the
+ * Java model:
+ * <ul>
+ * <li>legacy: the probabilities (rounded to 2 decimals by the C code) must agree within 0.01,</li>
+ * <li>unrolled / blocked (single precision): the probabilities must agree within {@link #FLOAT_TOLERANCE}
+ * and the classes must agree, unless both classes are (almost) equally probable,</li>
+ * <li>quantized: the classes and the Q15 probabilities must be equal to the Java reference's.</li>
+ * </ul>
+ * The driver then measures the time per {@code classify} and per {@code query} call, as well as
+ * the Java network's time per {@link NeuralNetwork#classify(boolean, double, double, double)} call.
+ *
+ * @author Nicolas Dutly
+ */
+public class Conformance {
+
+    /**
+     * Names of the C generators
+     */
+    public static final String[] GENERATORS = {"legacy", "unrolled", "blocked", "quantized"};
+    /**
+     * Largest accepted difference between the probabilities of the single precision C code and
+     * the Java network (and between the probabilities of two different classes, if they disagree)
+     */
+    static final double FLOAT_TOLERANCE = 1E-3;
+    /**
+     * Largest accepted difference between the probabilities of the legacy C code (rounded to
+     * 2 decimals) and the Java network
+     */
+    static final double LEGACY_TOLERANCE = 0.01 + 1E-6;
+
+    /**
+     * Represents the data set the networks are trained on, its colors being used as inputs as well
+     */
+    private final DataSet dataSet;
+    private final int nbOfColors;
+    /**
+     * Contains the widths of the hidden layers of every topology
+     */
+    private final List<int[]> topologies;
+    /**
+     * Contains the names of the generators to be checked
+     */
+    private String[] generators = GENERATORS;
+    /**
+     * Describes the training of the networks
+     */
+    private int nbOfEpochs = 50;
+    private int batchSize = 8;
+    private Optimizer optimizer = Optimizer.forName("adam", 1E-2);
+    private Activation activation = Activation.SIGMOID;
+    private long seed = 1;
+    /**
+     * Describes the number of random colors classified (in addition to the data set's) and the
+     * number of calls timed per generator
+     */
+    private int nbOfRandomColors = 10000;
+    private int nbOfTimedQueries = 1000000;
+    /**
+     * Describes the C compiler and its flags
+     */
+    private String compiler = "gcc";
+    private String[] flags = {"-O2", "-std=c99"};
+    /**
+     * Represents the directory receiving the generated files, a temporary directory (deleted
+     * once done) if {@code null}
+     */
+    private File workDir;
+
+    /**
+     * Represents the outcome of the check of one generator for one topology
+     */
+    public static class Result {
+        public final String topology, generator;
+        public final double maxDifference;
+        public final int mismatches;
+        public final double classifyNanos, queryNanos;
+
+        Result(String topology, String generator, double maxDifference, int mismatches,
+               double classifyNanos, double queryNanos) {
+            this.topology = topology;
+            this.generator = generator;
+            this.maxDifference = maxDifference;
+            this.mismatches = mismatches;
+            this.classifyNanos = classifyNanos;
+            this.queryNanos = queryNanos;
+        }
+
+        /**
+         * @return whether the C outputs agree with the Java model
+         */
+        public boolean passed() {
+            return mismatches == 0;
+        }
+    }
+
+    /**
+     * @param dataSet    the data set the networks are trained on (its colors are classified as well)
+     * @param nbOfColors the number of colors
+     * @param topologies the widths of the hidden layers of every topology to be checked
+     */
+    public Conformance(DataSet dataSet, int nbOfColors, List<int[]> topologies) {
+        this.dataSet = dataSet;
+        this.nbOfColors = nbOfColors;
+        this.topologies = topologies;
+    }
+
+    /**
+     * Parses a list of topologies: the widths of the hidden layers of each topology separated by
+     * commas, the topologies separated by semicolons (e.g. {@code 10,10;16,8;12,12,8})
+     *
+     * @param values the list
+     * @return the widths of the hidden layers of every topology
+     */
+    public static List<int[]> parseTopologies(String values) {
+        List<int[]> topologies = new ArrayList<>();
+        for (String topology : values.split(";")) {
+            topologies.add(Sweep.parseIntList(topology.trim()));
+        }
+        return topologies;
+    }
+
+    /**
+     * Checks every generator for every topology. The generated files are written to the work
+     * directory (or a temporary directory).
+     *
+     * @return the results, in the order of the topologies and generators
+     * @throws Exception if the training, the generation, the compilation or a driver failed
+     */
+    public List<Result> run() throws Exception {
+        File dir = workDir != null ? workDir : createTempDir();
+        try {
+            int[] colors = inputs();
+            File inputFile = new File(dir, "inputs.txt");
+            BufferedWriter writer = new BufferedWriter(new FileWriter(inputFile));
+            try {
+                for (int rgb : colors) {
+                    writer.write(((rgb >> 16) & 0xFF) + " " + ((rgb >> 8) & 0xFF) + " " + (rgb & 0xFF) + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            List<Result> results = new ArrayList<>();
+            for (int[] hiddenNeurons : topologies) {
+                NeuralNetwork network = train(hiddenNeurons);
+                String topology = Arrays.toString(network.getTopology());
+                results.add(new Result(topology, "java", 0, 0, javaNanos(network, colors), Double.NaN));
+                for (String generator : generators) {
+                    results.add(check(network, topology, generator, colors, dir, inputFile));
+                }
+            }
+            return results;
+        } finally {
+            if (workDir == null) delete(dir);
+        }
+    }
+
+    /**
+     * @return the colors to be classified ({@code 0xRRGGBB}): random colors followed by the data set's
+     */
+    private int[] inputs() {
+        int[] colors = new int[nbOfRandomColors + dataSet.size()];
+        Random random = new Random(seed);
+        for (int i = 0; i < nbOfRandomColors; i++) {
+            colors[i] = random.nextInt(1 << 24);
+        }
+        for (int row = 0; row < dataSet.size(); row++) {
+            colors[nbOfRandomColors + row] = dataSet.getRgb(row, 0) << 16 | dataSet.getRgb(row, 1) << 8 | dataSet.getRgb(row, 2);
+        }
+        return colors;
+    }
+
+    /**
+     * Trains a network of the given topology
+     *
+     * @param hiddenNeurons the widths of the hidden layers
+     * @return the trained network
+     * @throws Exception if the training failed
+     */
+    private NeuralNetwork train(int[] hiddenNeurons) throws Exception {
+        NeuralNetwork network = new NeuralNetwork(hiddenNeurons, nbOfColors, seed);
+        network.setShowProgress(false);
+        network.setOptimizer(optimizer);
+        network.setLearningRate(optimizer.getLearningRate());
+        network.setActivation(activation);
+        network.setBatchSize(batchSize);
+        network.setDataSets(dataSet, null, null);
+        network.init(nbOfEpochs);
+        return network;
+    }
+
+    /**
+     * @param network the network
+     * @param colors  the colors to be classified
+     * @return the Java network's time per classified color (ns)
+     */
+    private double javaNanos(NeuralNetwork network, int[] colors) {
+        int repetitions = Math.max(1, nbOfTimedQueries / colors.length);
+        long checksum = 0;
+        //untimed pass, so that classify() is compiled by the JIT before being timed
+        for (int rgb : colors) {
+            checksum += network.classify(false, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < repetitions; r++) {
+            for (int rgb : colors) {
+                checksum += network.classify(false, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        //keeps the loop from being optimized away
+        if (checksum < 0) throw new IllegalStateException();
+        return (double) nanos / ((long) repetitions * colors.length);
+    }
+
+    /**
+     * Generates, compiles and runs the C classifier of a generator and compares its outputs with
+     * the Java model's
+     *
+     * @param network   the trained network
+     * @param topology  the network's topology (label)
+     * @param generator the generator's name
+     * @param colors    the colors to be classified
+     * @param dir       the directory receiving the generated files
+     * @param inputFile the file containing the colors ({@code r g b} lines)
+     * @return the result
+     * @throws Exception if the generation, the compilation or the driver failed
+     */
+    private Result check(NeuralNetwork network, String topology, String generator, int[] colors, File dir, File inputFile)
+            throws Exception {
+        String name = "query_" + topology.replaceAll("[^0-9]+", "_").replaceAll("^_|_$", "") + "_" + generator;
+        File source = new File(dir, name + ".c");
+        File driver = new File(dir, name + "_driver.c");
+        File executable = new File(dir, name);
+        QuantizedNetwork quantized = null;
+        if (generator.equals("legacy")) {
+            network.write_C_source(source.getPath());
+        } else if (generator.equals("quantized")) {
+            quantized = QuantizedNetwork.quantize(network, dataSet);
+            quantized.write_C_source(source.getPath());
+        } else {
+            new CSourceGenerator(network, CSourceGenerator.Loops.valueOf(generator.toUpperCase())).write_C_source(source.getPath());
+        }
+        writeDriver(driver, generator, colors.length);
+        List<String> command = new ArrayList<>();
+        command.add(compiler);
+        command.addAll(Arrays.asList(flags));
+        command.addAll(Arrays.asList("-o", executable.getPath(), source.getPath(), driver.getPath(), "-lm"));
+        exec(command, null);
+        List<String> lines = exec(Collections.singletonList(executable.getPath()), inputFile);
+
+        //---------------------------------------comparison with the Java model--------------------------------------------
+        double maxDifference = 0;
+        int mismatches = 0;
+        double[] expected = new double[nbOfColors];
+        int[] expectedQ15 = new int[nbOfColors];
+        for (int i = 0; i < colors.length; i++) {
+            int r = (colors[i] >> 16) & 0xFF, g = (colors[i] >> 8) & 0xFF, b = colors[i] & 0xFF;
+            String[] values = lines.get(i).trim().split(" ");
+            int cClass = Integer.valueOf(values[0]);
+            boolean mismatch;
+            if (quantized != null) {
+                quantized.query(r, g, b, expectedQ15);
+                mismatch = cClass != quantized.classify(r, g, b);
+                for (int k = 0; k < nbOfColors; k++) {
+                    double difference = Math.abs(Double.valueOf(values[k + 1]) - expectedQ15[k]);
+                    maxDifference = Math.max(maxDifference, difference);
+                    mismatch |= difference != 0;
+                }
+            } else {
+                network.query(false, r, g, b, expected);
+                boolean legacy = generator.equals("legacy");
+                double tolerance = legacy ? LEGACY_TOLERANCE : FLOAT_TOLERANCE;
+                //the legacy code's classes are not compared, as rounding creates ties
+                int javaClass = network.classify(false, r, g, b);
+                mismatch = !legacy && expected[javaClass] - expected[cClass] > FLOAT_TOLERANCE;
+                for (int k = 0; k < nbOfColors; k++) {
+                    double difference = Math.abs(Double.valueOf(values[k + 1]) - expected[k]);
+                    maxDifference = Math.max(maxDifference, difference);
+                    mismatch |= difference > tolerance;
+                }
+            }
+            if (mismatch) mismatches++;
+        }
+        double classifyNanos = Double.NaN, queryNanos = Double.NaN;
+        for (int i = colors.length; i < lines.size(); i++) {
+            String[] values = lines.get(i).trim().split(" ");
+            if (values[0].equals("classify_ns")) classifyNanos = Double.valueOf(values[1]);
+            if (values[0].equals("query_ns")) queryNanos = Double.valueOf(values[1]);
+        }
+        return new Result(topology, generator, maxDifference, mismatches, classifyNanos, queryNanos);
+    }
+
+    /**
+     * Writes the driver main of a generator: reads the colors ({@code r g b} lines) from the standard
+     * input, prints the class and the outputs of every color ({@code class o1 ... oN} lines), then
+     * times the {@code classify} and {@code query} calls ({@code classify_ns} and {@code query_ns} lines)
+     *
+     * @param file        the C source to be created
+     * @param generator   the generator's name
+     * @param nbOfInputs  the number of colors
+     * @throws IOException if an IO exception occurs
+     */
+    private void writeDriver(File file, String generator, int nbOfInputs) throws IOException {
+        String declarations, run, classify;
+        if (generator.equals("legacy")) {
+            declarations = "double* query(double r, double g, double b);\n";
+            run = "    double* p = query(r, g, b);\n" +
+                    "    for(k = 0; k < NB_OF_COLORS; k++) o[k] = p[k];\n";
+            classify = "    double o[NB_OF_COLORS];\n" +
+                    "    int k, max = 0;\n" +
+                    "    run(r, g, b, o);\n" +
+                    "    for(k = 1; k < NB_OF_COLORS; k++) if(o[k] > o[max]) max = k;\n" +
+                    "    return max;\n";
+        } else {
+            String type = generator.equals("quantized") ? "uint16_t" : "float";
+            declarations = "int classify(unsigned char r, unsigned char g, unsigned char b);\n" +
+                    "void query(unsigned char r, unsigned char g, unsigned char b, " + type + " out[NB_OF_COLORS]);\n";
+            run = "    " + type + " p[NB_OF_COLORS];\n" +
+                    "    query(r, g, b, p);\n" +
+                    "    for(k = 0; k < NB_OF_COLORS; k++) o[k] = p[k];\n";
+            classify = "    return classify(r, g, b);\n";
+        }
+        int repetitions = Math.max(1, nbOfTimedQueries / nbOfInputs);
+        String cSource =
+                "/* Conformance driver generated by " + getClass().getSimpleName() + " (" + generator + ") */\n" +
+                        "#define _POSIX_C_SOURCE 199309L\n" +
+                        "#include <stdio.h>\n" +
+                        "#include <stdint.h>\n" +
+                        "#include <time.h>\n" +
+                        "#define NB_OF_COLORS " + nbOfColors + "\n" +
+                        "#define NB_OF_INPUTS " + nbOfInputs + "\n" +
+                        "#define REPETITIONS " + repetitions + "\n" +
+                        declarations +
+                        "static unsigned char rgb[NB_OF_INPUTS][3];\n" +
+                        "\n" +
+                        "static void run(unsigned char r, unsigned char g, unsigned char b, double o[NB_OF_COLORS]){\n" +
+                        "    int k;\n" +
+                        run +
+                        "}\n" +
+                        "\n" +
+                        "static int cls(unsigned char r, unsigned char g, unsigned char b){\n" +
+                        classify +
+                        "}\n" +
+                        "\n" +
+                        "static double now(void){\n" +
+                        "    struct timespec t;\n" +
+                        "    clock_gettime(CLOCK_MONOTONIC, &t);\n" +
+                        "    return t.tv_sec * 1E9 + t.tv_nsec;\n" +
+                        "}\n" +
+                        "\n" +
+                        "int main(void){\n" +
+                        "    double o[NB_OF_COLORS];\n" +
+                        "    double start;\n" +
+                        "    long checksum = 0;\n" +
+                        "    int i, k, rep, r, g, b;\n" +
+                        "    for(i = 0; i < NB_OF_INPUTS; i++){\n" +
+                        "        if(scanf(\"%d %d %d\", &r, &g, &b) != 3) return 1;\n" +
+                        "        rgb[i][0] = (unsigned char) r;\n" +
+                        "        rgb[i][1] = (unsigned char) g;\n" +
+                        "        rgb[i][2] = (unsigned char) b;\n" +
+                        "    }\n" +
+                        "    for(i = 0; i < NB_OF_INPUTS; i++){\n" +
+                        "        run(rgb[i][0], rgb[i][1], rgb[i][2], o);\n" +
+                        "        printf(\"%d\", cls(rgb[i][0], rgb[i][1], rgb[i][2]));\n" +
+                        "        for(k = 0; k < NB_OF_COLORS; k++) printf(\" %.9g\", o[k]);\n" +
+                        "        printf(\"\\n\");\n" +
+                        "    }\n" +
+                        "    start = now();\n" +
+                        "    for(rep = 0; rep < REPETITIONS; rep++){\n" +
+                        "        for(i = 0; i < NB_OF_INPUTS; i++) checksum += cls(rgb[i][0], rgb[i][1], rgb[i][2]);\n" +
+                        "    }\n" +
+                        "    printf(\"classify_ns %f\\n\", (now() - start) / ((double) REPETITIONS * NB_OF_INPUTS));\n" +
+                        "    start = now();\n" +
+                        "    for(rep = 0; rep < REPETITIONS; rep++){\n" +
+                        "        for(i = 0; i < NB_OF_INPUTS; i++){\n" +
+                        "            run(rgb[i][0], rgb[i][1], rgb[i][2], o);\n" +
+                        "            checksum += o[0] > 0;\n" +
+                        "        }\n" +
+                        "    }\n" +
+                        "    printf(\"query_ns %f\\n\", (now() - start) / ((double) REPETITIONS * NB_OF_INPUTS));\n" +
+                        "    printf(\"checksum %ld\\n\", checksum);\n" +
+                        "    return 0;\n" +
+                        "}\n";
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write(cSource);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Runs a command and waits for it
+     *
+     * @param command the command and its arguments
+     * @param input   file used as the command's standard input ({@code null} for none)
+     * @return the lines printed by the command (standard output and error)
+     * @throws IOException          if the command could not be run or failed (non-zero exit status)
+     * @throws InterruptedException if interrupted while waiting for the command
+     */
+    private static List<String> exec(List<String> command, File input) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        if (input != null) builder.redirectInput(input);
+        Process process = builder.start();
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        int status = process.waitFor();
+        if (status != 0) {
+            StringBuilder output = new StringBuilder();
+            for (String line : lines) {
+                output.append(line).append("\n");
+            }
+            throw new IOException(command.get(0) + " failed (exit status " + status + "):\n" + output);
+        }
+        return lines;
+    }
+
+    /**
+     * @return a new temporary directory
+     * @throws IOException if the directory could not be created
+     */
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("rgb_nn_conformance", "");
+        if (!dir.delete() || !dir.mkdir()) throw new IOException("Could not create the directory " + dir);
+        return dir;
+    }
+
+    /**
+     * Deletes a directory and the files it contains
+     *
+     * @param dir the directory
+     */
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Writes the results to a csv file, in the order of the list
+     *
+     * @param results  the results
+     * @param filename the csv file to write to
+     * @throws IOException if an IO exception occurs
+     */
+    public static void writeReport(List<Result> results, String filename) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+        try {
+            writer.write("Topology,Generator,Max Difference,Mismatches,Classify (ns),Query (ns),Status\n");
+            for (Result result : results) {
+                writer.write(String.format(Locale.ROOT, "\"%s\",%s,%g,%d,%.2f,%.2f,%s\n", result.topology, result.generator,
+                        result.maxDifference, result.mismatches, result.classifyNanos, result.queryNanos,
+                        result.passed() ? "PASS" : "FAIL"));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param generators the names of the generators to be checked (see {@link #GENERATORS})
+     */
+    public void setGenerators(String[] generators) {
+        for (String generator : generators) {
+            if (!Arrays.asList(GENERATORS).contains(generator))
+                throw new IllegalArgumentException("Unknown generator: " + generator + " (expected " + Arrays.toString(GENERATORS) + ")");
+        }
+        this.generators = generators;
+    }
+
+    /**
+     * Specifies how the networks are trained
+     *
+     * @param nbOfEpochs number of epochs
+     * @param batchSize  mini-batch size
+     * @param optimizer  optimizer (its learning rate is used)
+     * @param activation activation function of the hidden neurons
+     * @param seed       seed of the networks' random number generators (and of the random colors)
+     */
+    public void setTraining(int nbOfEpochs, int batchSize, Optimizer optimizer, Activation activation, long seed) {
+        this.nbOfEpochs = nbOfEpochs;
+        this.batchSize = batchSize;
+        this.optimizer = optimizer;
+        this.activation = activation;
+        this.seed = seed;
+    }
+
+    /**
+     * @param nbOfRandomColors number of random colors classified in addition to the data set's
+     * @param nbOfTimedQueries number of calls timed per generator (at least one pass over the colors)
+     */
+    public void setQueries(int nbOfRandomColors, int nbOfTimedQueries) {
+        this.nbOfRandomColors = nbOfRandomColors;
+        this.nbOfTimedQueries = nbOfTimedQueries;
+    }
+
+    /**
+     * @param compiler the C compiler's command
+     * @param flags    the compiler's flags (separated by spaces)
+     */
+    public void setCompiler(String compiler, String flags) {
+        this.compiler = compiler;
+        this.flags = flags.trim().isEmpty() ? new String[0] : flags.trim().split("\\s+");
+    }
+
+    /**
+     * @param workDir the directory receiving the generated files (kept), {@code null} for a
+     *                temporary directory
+     */
+    public void setWorkDir(File workDir) {
+        this.workDir = workDir;
+    }
+}
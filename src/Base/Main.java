@@ -1,9 +1,22 @@
 package Base;
 
+import NeuralNetwork.CSourceGenerator;
+import NeuralNetwork.ColorTable;
+import NeuralNetwork.DataSet;
+import NeuralNetwork.DataStream;
+import NeuralNetwork.Layers.Activation;
+import NeuralNetwork.Layers.Kernels;
 import NeuralNetwork.NeuralNetwork;
+import NeuralNetwork.Optimizers.LearningRateSchedule;
+import NeuralNetwork.Optimizers.Optimizer;
+import NeuralNetwork.QuantizedNetwork;
 import org.apache.commons.cli.*;
 
+import java.io.File;
+import java.io.IOException;
+
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 
@@ -23,6 +36,35 @@ public class Main {
     //default options:
     private static final String EPOCHS = "800";
     private static final String NEURONS = "10";
+    private static final String BATCH_SIZE = "1";
+    private static final String THREADS = "1";
+    private static final String LEARNING_RATE = "1E-3";
+    private static final String OPTIMIZER = "sgd";
+    private static final String ACTIVATION = "sigmoid";
+    private static final String LR_DECAY = "0";
+    private static final String LR_STEP = "0";
+    private static final String LR_MIN = "0";
+    private static final String WARMUP = "0";
+    private static final String SWEEP_OUT = "stats/leaderboard.csv";
+    private static final String LUT_LEVELS = "0";
+    private static final String QUANT_TOLERANCE = "1";
+    private static final String C_GENERATOR = "legacy";
+    private static final String KERNELS = "auto";
+    private static final String CONFORMANCE_TOPOLOGIES = "10,10;16,8;12,12,8";
+    private static final String CONFORMANCE_EPOCHS = "50";
+    private static final String CONFORMANCE_SAMPLES = "10000";
+    private static final String CONFORMANCE_QUERIES = "1000000";
+    private static final String PARALLEL_THREADS = "1,2,4,8";
+    private static final String PARALLEL_EPOCHS = "50";
+    private static final String PARALLEL_BATCH_SIZE = "8";
+    private static final String PARALLEL_TOLERANCE = "2";
+    private static final String ALLOCATION_TOPOLOGIES = "10,10;32,32;128,128";
+    private static final String ALLOCATION_CALLS = "1000000";
+    private static final String PARSERS = "0";
+    private static final String CHECKPOINT_EVERY = "50";
+    private static final String PATIENCE = "0";
+    private static final String MIN_DELTA = "0";
+    private static final String CHUNK_SIZE = String.valueOf(DataStream.CHUNK_SIZE);
 
     public static void main(String[] args) throws Exception {
 
@@ -32,6 +74,22 @@ public class Main {
             ANSI_RED = "";
             ANSI_GREEN = "";
         }
+        if (args.length > 0 && args[0].equals("conformance")) {
+            conformance(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("allocations")) {
+            allocations(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("parallel")) {
+            parallel(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("convert")) {
+            convert(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
 //---------------------------------------------------------------------------CLI option parsing------------------------------------------------------------------------
         Options options = new Options();
         Option training_set = new Option("t", "trainset", true, "Path to the training data set  (csv) that is is be processed");
@@ -42,22 +100,116 @@ public class Main {
         Option nbOfColors = new Option("c", "colors", true, "Number of colors to be recognized");
         Option write_mse_stats = new Option("s", "stats", false, "Write network error statistics to stats/mse_stats.csv");
         Option epoch_nb = new Option("x", "epochs", true, "specify a specific number of epochs to be executed (defaults to "+EPOCHS+")");
-        Option hidden_neurons = new Option("n", "neurons", true, "specify a specific number of hidden neurons (defaults to "+NEURONS+")");
+        Option hidden_neurons = new Option("n", "neurons", true, "specify a specific number of hidden neurons: one number for two hidden layers of that width, or the width of every hidden layer separated by commas, e.g. 16,8 (defaults to "+NEURONS+")");
         Option c_source_out = new Option("o", "csource", true, "Path to the c source that will be created. (overwrites if already existing [!])");
+        Option batch_size = new Option("b", "batch-size", true, "Number of training lines processed before the weights are adjusted, their adjustments are summed (not averaged): scale the learning rate down when increasing it (defaults to " + BATCH_SIZE + ", stochastic gradient descent)");
+        Option threads = new Option("j", "threads", true, "Number of threads used for training, each thread processes its own mini-batch: the weights are adjusted every batch-size * threads lines (effective mini-batch size), requires a batch size above 1 (defaults to " + THREADS + ")");
+        Option learning_rate = new Option("l", "learning-rate", true, "Learning rate used when adjusting the weights (defaults to " + LEARNING_RATE + ")");
+        Option optimizer = new Option(null, "optimizer", true, "Rule used to adjust the weights: sgd, momentum, nesterov, rmsprop or adam (defaults to " + OPTIMIZER + ")");
+        Option activation = new Option("a", "activation", true, "Activation function of the hidden neurons: sigmoid, fast-sigmoid (table-based approximation), tanh, relu or leaky-relu (defaults to " + ACTIVATION + ")");
+        Option lr_schedule = new Option(null, "lr-schedule", true, "Learning rate schedule: step, exponential, cosine or plateau (reduce on plateau of the validation error), constant learning rate if omitted");
+        Option lr_decay = new Option(null, "lr-decay", true, "Decay factor of the step, exponential and plateau schedules (defaults to 0.5, 0.99 and 0.5)");
+        Option lr_step = new Option(null, "lr-step", true, "Number of epochs between two decays (step schedule) or without improvement before a decay (plateau schedule) (defaults to 100 and 10)");
+        Option lr_min = new Option(null, "lr-min", true, "Lowest learning rate of the cosine and plateau schedules (defaults to " + LR_MIN + ")");
+        Option warmup = new Option(null, "warmup", true, "Number of epochs during which the learning rate grows linearly before the schedule starts (defaults to " + WARMUP + ")");
+        Option sweep_neurons = new Option(null, "sweep-neurons", true, "Sweep mode: numbers of hidden neurons to be tried, separated by commas or as a range first:last:step (e.g. 8:32:4)");
+        Option sweep_epochs = new Option(null, "sweep-epochs", true, "Sweep mode: numbers of epochs to be tried, separated by commas or as a range first:last:step");
+        Option sweep_lr = new Option(null, "sweep-lr", true, "Sweep mode: learning rates to be tried, separated by commas or as a range first:last:step");
+        Option sweep_jobs = new Option(null, "sweep-jobs", true, "Sweep mode: number of networks trained concurrently (defaults to the number of processors)");
+        Option sweep_out = new Option(null, "sweep-out", true, "Sweep mode: path to the leaderboard csv (defaults to " + SWEEP_OUT + ")");
+        Option lut = new Option(null, "lut", true, "Path to the lookup table (most probable color of every rgb value) that will be created, along with a C classifier reading it (<path>.c)");
+        Option lut_levels = new Option(null, "lut-levels", true, "Number of grid points per component of the lookup table's probability grid (e.g. 33), 0 for none (defaults to " + LUT_LEVELS + ")");
+        Option c_generator = new Option(null, "c-generator", true, "C source generator: legacy (double precision, libm), unrolled or blocked (single precision const weights, unrolled or blocked dot products, argmax-only classify(), no libm) (defaults to " + C_GENERATOR + ")");
+        Option c_bench = new Option(null, "c-bench", true, "Path to the benchmark main (time per pixel) that will be created for the unrolled and blocked C sources");
+        Option kernels = new Option(null, "kernels", true, "Layer kernels: scalar, vector (SIMD, requires the vector/ sources and --add-modules jdk.incubator.vector) or auto (vector if available) (defaults to " + KERNELS + ")");
+        Option quantize = new Option(null, "quantize", true, "Path to the integer-only C source (8 bit weights, 16 bit outputs, table-based activations, no floating point) that will be created, calibrated on the training set");
+        Option quant_tolerance = new Option(null, "quant-tolerance", true, "Largest accepted increase of the classification error (percentage points) of the quantized network over the float network (defaults to " + QUANT_TOLERANCE + ")");
+        Option stream = new Option(null, "stream", false, "Stream the training set from the disk chunk by chunk instead of loading it (for data sets larger than the memory), lines are shuffled within each chunk");
+        Option chunk_size = new Option(null, "chunk-size", true, "Number of lines per chunk when streaming the training set (defaults to " + CHUNK_SIZE + ")");
+        Option parsers = new Option(null, "parsers", true, "Number of threads parsing the training set when streaming a csv file, 0 to parse it on the reading thread (defaults to " + PARSERS + ")");
+        Option model = new Option(null, "model", true, "Path to the model file (topology, color names and weights) that will be created, it can be loaded without retraining");
+        Option checkpoint = new Option(null, "checkpoint", true, "Path to the checkpoint (model file) saved periodically during training");
+        Option checkpoint_every = new Option(null, "checkpoint-every", true, "Number of epochs between two checkpoints (defaults to " + CHECKPOINT_EVERY + ")");
+        Option resume = new Option(null, "resume", false, "Resume training from the checkpoint, if it exists");
+        Option patience = new Option(null, "patience", true, "Early stopping: stop once the validation error did not improve during this number of epochs, the best weights are kept (defaults to " + PATIENCE + ", disabled)");
+        Option min_delta = new Option(null, "min-delta", true, "Early stopping: minimal decrease of the error (percentage points) counted as an improvement (defaults to " + MIN_DELTA + ")");
+        Option seed = new Option("r", "seed", true, "Seed of the random number generator (weight initialization and training set shuffling), makes runs reproducible");
         nbOfColors.setRequired(true);
         nbOfColors.setArgName("nbOfColors");
         training_set.setRequired(true);
         validation_set.setArgName("VAL SET PATH");
         testing_set.setArgName("TESTING SET PATH");
         epoch_nb.setArgName("NB OF EPOCHS");
-        hidden_neurons.setArgName("NEURON NUMBER");
+        hidden_neurons.setArgName("NEURON NUMBER(S)");
         c_source_out.setArgName("C OUT PATH");
+        seed.setArgName("SEED");
+        batch_size.setArgName("BATCH SIZE");
+        threads.setArgName("NB OF THREADS");
+        learning_rate.setArgName("LEARNING RATE");
+        optimizer.setArgName("OPTIMIZER");
+        activation.setArgName("FUNCTION");
+        lr_schedule.setArgName("SCHEDULE");
+        lr_decay.setArgName("FACTOR");
+        lr_step.setArgName("NB OF EPOCHS");
+        lr_min.setArgName("LEARNING RATE");
+        warmup.setArgName("NB OF EPOCHS");
+        sweep_neurons.setArgName("NEURON NUMBERS");
+        sweep_epochs.setArgName("NBS OF EPOCHS");
+        sweep_lr.setArgName("LEARNING RATES");
+        sweep_jobs.setArgName("NB OF JOBS");
+        sweep_out.setArgName("LEADERBOARD PATH");
+        lut.setArgName("LUT PATH");
+        lut_levels.setArgName("NB OF LEVELS");
+        c_generator.setArgName("GENERATOR");
+        c_bench.setArgName("C OUT PATH");
+        kernels.setArgName("KERNELS");
+        quantize.setArgName("C OUT PATH");
+        quant_tolerance.setArgName("DELTA");
+        chunk_size.setArgName("NB OF LINES");
+        parsers.setArgName("NB OF THREADS");
+        model.setArgName("MODEL PATH");
+        checkpoint.setArgName("CHECKPOINT PATH");
+        checkpoint_every.setArgName("NB OF EPOCHS");
+        patience.setArgName("NB OF EPOCHS");
+        min_delta.setArgName("DELTA");
         validation_set.setRequired(false);
         testing_set.setRequired(false);
         write_mse_stats.setRequired(false);
         epoch_nb.setRequired(false);
         hidden_neurons.setRequired(false);
         c_source_out.setRequired(true);
+        seed.setRequired(false);
+        batch_size.setRequired(false);
+        threads.setRequired(false);
+        learning_rate.setRequired(false);
+        optimizer.setRequired(false);
+        activation.setRequired(false);
+        lr_schedule.setRequired(false);
+        lr_decay.setRequired(false);
+        lr_step.setRequired(false);
+        lr_min.setRequired(false);
+        warmup.setRequired(false);
+        sweep_neurons.setRequired(false);
+        sweep_epochs.setRequired(false);
+        sweep_lr.setRequired(false);
+        sweep_jobs.setRequired(false);
+        sweep_out.setRequired(false);
+        lut.setRequired(false);
+        lut_levels.setRequired(false);
+        c_generator.setRequired(false);
+        c_bench.setRequired(false);
+        kernels.setRequired(false);
+        quantize.setRequired(false);
+        quant_tolerance.setRequired(false);
+        stream.setRequired(false);
+        chunk_size.setRequired(false);
+        parsers.setRequired(false);
+        model.setRequired(false);
+        checkpoint.setRequired(false);
+        checkpoint_every.setRequired(false);
+        resume.setRequired(false);
+        patience.setRequired(false);
+        min_delta.setRequired(false);
         options.addOption(training_set);
         options.addOption(validation_set);
         options.addOption(testing_set);
@@ -66,6 +218,38 @@ public class Main {
         options.addOption(hidden_neurons);
         options.addOption(c_source_out);
         options.addOption(nbOfColors);
+        options.addOption(seed);
+        options.addOption(batch_size);
+        options.addOption(threads);
+        options.addOption(learning_rate);
+        options.addOption(optimizer);
+        options.addOption(activation);
+        options.addOption(lr_schedule);
+        options.addOption(lr_decay);
+        options.addOption(lr_step);
+        options.addOption(lr_min);
+        options.addOption(warmup);
+        options.addOption(sweep_neurons);
+        options.addOption(sweep_epochs);
+        options.addOption(sweep_lr);
+        options.addOption(sweep_jobs);
+        options.addOption(sweep_out);
+        options.addOption(lut);
+        options.addOption(lut_levels);
+        options.addOption(c_generator);
+        options.addOption(c_bench);
+        options.addOption(kernels);
+        options.addOption(quantize);
+        options.addOption(quant_tolerance);
+        options.addOption(stream);
+        options.addOption(chunk_size);
+        options.addOption(parsers);
+        options.addOption(model);
+        options.addOption(checkpoint);
+        options.addOption(checkpoint_every);
+        options.addOption(resume);
+        options.addOption(patience);
+        options.addOption(min_delta);
         CommandLineParser parser = new DefaultParser();
         HelpFormatter help = new HelpFormatter();
         help.setWidth(100);
@@ -78,6 +262,24 @@ public class Main {
         String footer = "\nExample usages:\njava -jar rgb_NN.jar -t training_set.csv -s -c 5 -o query.c\n" +
                 "java -jar rgb_NN.jar -t training_set.csv -e testing_set.csv -v validation_set.csv -c 5 -o query.c\n" +
                 "java -jar rgb_NN.jar -t training_set.csv -x 800 -n 15 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -x 800 -n 16,8 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -x 800 -n 16 -a fast-sigmoid -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -x 800 -b 32 -j 4 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -x 200 -b 16 --optimizer adam -l 1E-2 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -v validation_set.csv -x 300 -b 16 -l 0.1 --lr-schedule cosine --warmup 10 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -c 5 -o query.c --lut colors.lut\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -c 5 -o query.c --c-generator unrolled --c-bench query_bench.c\n" +
+                "java --add-modules jdk.incubator.vector -cp rgb_NN.jar:vector.jar Base.Main -t training_set.csv -n 256 -b 32 -c 5 -o query.c --kernels vector\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -v validation_set.csv -c 5 -o query.c --quantize query_int.c --quant-tolerance 0.5\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -v validation_set.csv --sweep-neurons 8:32:4 --sweep-epochs 200,400,800 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t recordings.bin --stream --chunk-size 1000000 -b 32 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t recordings.csv --stream --parsers 3 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -x 5000 -c 5 -o query.c --model colors.model --checkpoint colors.ckpt --resume\n" +
+                "java -jar rgb_NN.jar -t training_set.csv -v validation_set.csv -x 5000 --patience 100 --min-delta 0.1 -c 5 -o query.c\n" +
+                "java -jar rgb_NN.jar convert training_set.csv training_set.bin -c 5 (binary data sets are accepted wherever csv files are)\n" +
+                "java -jar rgb_NN.jar conformance -t training_set.csv -c 5 --topologies \"10,10;16,8;12,12,8\" (checks the generated C sources against the java model)\n" +
+                "java -jar rgb_NN.jar allocations -c 5 (checks that query(r, g, b, output) and classify(r, g, b) do not allocate memory)\n" +
+                "java -jar rgb_NN.jar parallel -t training_set.csv -v validation_set.csv -c 5 --threads 1,2,4,8 (speedup and error of the multi-threaded training)\n" +
                 "\nAuthor: Nicolas Dutly - nicolas.dutly[at]unifr.ch";
 
         try {
@@ -91,32 +293,468 @@ public class Main {
 
         String c_out = cmd.getOptionValue("csource");
         String tr_set = cmd.getOptionValue("t");
-        int nbOfNeurons = Integer.valueOf(cmd.getOptionValue("neurons") == null ? NEURONS : cmd.getOptionValue("neurons"));
+        int[] hiddenNeurons = Sweep.parseIntList(cmd.getOptionValue("neurons") == null ? NEURONS : cmd.getOptionValue("neurons"));
+        //a single width stands for the default topology: two hidden layers of that width
+        if (hiddenNeurons.length == 1) hiddenNeurons = new int[]{hiddenNeurons[0], hiddenNeurons[0]};
         int nbOfColorsv = Integer.valueOf(cmd.getOptionValue("c"));
         int nbOfEpochs = Integer.valueOf(cmd.getOptionValue("epochs") == null ? EPOCHS : cmd.getOptionValue("epochs"));
         String valcsv = cmd.getOptionValue("valset");
         String testcsv = cmd.getOptionValue("testset");
+        String seedv = cmd.getOptionValue("seed");
+        int batchSize = Integer.valueOf(cmd.getOptionValue("batch-size") == null ? BATCH_SIZE : cmd.getOptionValue("batch-size"));
+        int nbOfThreads = Integer.valueOf(cmd.getOptionValue("threads") == null ? THREADS : cmd.getOptionValue("threads"));
+        //every thread processes its own mini-batch, -j alone would silently turn SGD into mini-batches of -j lines
+        if (nbOfThreads > 1 && batchSize == 1) {
+            throw new IllegalArgumentException("Multi-threaded training requires mini-batches: set -b above 1 (the weights are adjusted every batch-size * threads lines)");
+        }
+        double learningRate = Double.valueOf(cmd.getOptionValue("learning-rate") == null ? LEARNING_RATE : cmd.getOptionValue("learning-rate"));
+        String optimizerName = cmd.getOptionValue("optimizer") == null ? OPTIMIZER : cmd.getOptionValue("optimizer");
+        Activation activationFunction = Activation.forName(cmd.getOptionValue("activation") == null ? ACTIVATION : cmd.getOptionValue("activation"));
+        String scheduleName = cmd.getOptionValue("lr-schedule");
+        double lrDecay = Double.valueOf(cmd.getOptionValue("lr-decay") == null ? LR_DECAY : cmd.getOptionValue("lr-decay"));
+        int lrStep = Integer.valueOf(cmd.getOptionValue("lr-step") == null ? LR_STEP : cmd.getOptionValue("lr-step"));
+        double lrMin = Double.valueOf(cmd.getOptionValue("lr-min") == null ? LR_MIN : cmd.getOptionValue("lr-min"));
+        int warmupEpochs = Integer.valueOf(cmd.getOptionValue("warmup") == null ? WARMUP : cmd.getOptionValue("warmup"));
+        String lutPath = cmd.getOptionValue("lut");
+        int lutLevels = Integer.valueOf(cmd.getOptionValue("lut-levels") == null ? LUT_LEVELS : cmd.getOptionValue("lut-levels"));
+        String cGenerator = cmd.getOptionValue("c-generator") == null ? C_GENERATOR : cmd.getOptionValue("c-generator");
+        //validated before training, null for the legacy generator
+        CSourceGenerator.Loops cLoops = null;
+        if (!cGenerator.equalsIgnoreCase("legacy")) {
+            try {
+                cLoops = CSourceGenerator.Loops.valueOf(cGenerator.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown C generator: " + cGenerator + " (expected legacy, unrolled or blocked)");
+            }
+        }
+        String cBenchPath = cmd.getOptionValue("c-bench");
+        Kernels layerKernels = Kernels.forName(cmd.getOptionValue("kernels") == null ? KERNELS : cmd.getOptionValue("kernels"));
+        String quantizedPath = cmd.getOptionValue("quantize");
+        double quantTolerance = Double.valueOf(cmd.getOptionValue("quant-tolerance") == null ? QUANT_TOLERANCE : cmd.getOptionValue("quant-tolerance"));
+        int nbOfParsers = Integer.valueOf(cmd.getOptionValue("parsers") == null ? PARSERS : cmd.getOptionValue("parsers"));
+        int chunkSize = Integer.valueOf(cmd.getOptionValue("chunk-size") == null ? CHUNK_SIZE : cmd.getOptionValue("chunk-size"));
+        String modelPath = cmd.getOptionValue("model");
+        String checkpointPath = cmd.getOptionValue("checkpoint");
+        int checkpointEvery = Integer.valueOf(cmd.getOptionValue("checkpoint-every") == null ? CHECKPOINT_EVERY : cmd.getOptionValue("checkpoint-every"));
+        int patienceEpochs = Integer.valueOf(cmd.getOptionValue("patience") == null ? PATIENCE : cmd.getOptionValue("patience"));
+        double minDelta = Double.valueOf(cmd.getOptionValue("min-delta") == null ? MIN_DELTA : cmd.getOptionValue("min-delta"));
+        boolean sweep = cmd.hasOption("sweep-neurons") || cmd.hasOption("sweep-epochs") || cmd.hasOption("sweep-lr");
 
 //-------------------------------------------------------------------------------end of option parsing-------------------------------------------------------
-        NeuralNetwork neuralNetwork = new NeuralNetwork(nbOfNeurons, nbOfColorsv);
+        Kernels.use(layerKernels);
+        if (cmd.hasOption("kernels")) System.out.println("Layer kernels: " + layerKernels.getName());
+        if (sweep) {
+            //the swept networks have two hidden layers of the same width (see Sweep)
+            if (hiddenNeurons.length != 2 || hiddenNeurons[0] != hiddenNeurons[1]) {
+                throw new IllegalArgumentException("Unsupported topology in sweep mode: " + cmd.getOptionValue("neurons")
+                        + " (the swept networks have two hidden layers of the same width, -n expects a single width)");
+            }
+            sweep(cmd, tr_set, valcsv, nbOfColorsv, hiddenNeurons[0], nbOfEpochs, learningRate, optimizerName, activationFunction, batchSize, seedv, c_out);
+            printElapsed();
+            return;
+        }
+        NeuralNetwork neuralNetwork = seedv == null ? new NeuralNetwork(hiddenNeurons, nbOfColorsv)
+                : new NeuralNetwork(hiddenNeurons, nbOfColorsv, Long.valueOf(seedv));
         neuralNetwork.setWriteStats(cmd.hasOption("s"));
+        neuralNetwork.setBatchSize(batchSize);
+        neuralNetwork.setNbOfThreads(nbOfThreads);
+        neuralNetwork.setNbOfInferenceThreads(nbOfThreads);
+        neuralNetwork.setActivation(activationFunction);
+        neuralNetwork.setOptimizer(Optimizer.forName(optimizerName, learningRate));
+        neuralNetwork.setLearningRate(learningRate);
+        if (scheduleName != null) {
+            LearningRateSchedule schedule = LearningRateSchedule.forName(scheduleName, learningRate, lrDecay, lrStep, lrMin);
+            schedule.setWarmup(warmupEpochs);
+            neuralNetwork.setLearningRateSchedule(schedule);
+        }
+        neuralNetwork.setEarlyStopping(patienceEpochs, minDelta);
         System.out.printf("Parsing data set(s)...");
-        neuralNetwork.parseDataSets(tr_set, valcsv, testcsv);
+        DataStream trainingStream = null;
+        if (cmd.hasOption("stream")) {
+            trainingStream = new DataStream(tr_set, nbOfColorsv, chunkSize, nbOfParsers);
+            neuralNetwork.setTrainingStream(trainingStream);
+            neuralNetwork.parseDataSets(null, valcsv, testcsv);
+        } else {
+            neuralNetwork.parseDataSets(tr_set, valcsv, testcsv);
+        }
         System.out.printf("%50s", ANSI_GREEN + "[OK]\n" + ANSI_RESET);
 
+        if (checkpointPath != null) {
+            neuralNetwork.setCheckpoint(checkpointPath, checkpointEvery);
+            if (cmd.hasOption("resume") && new File(checkpointPath).exists()) {
+                neuralNetwork.resume(checkpointPath);
+                System.out.println("Resuming from " + checkpointPath);
+            }
+        }
+
         System.out.printf("Training data set... \n");
-        neuralNetwork.init(nbOfEpochs);
+        try {
+            neuralNetwork.init(nbOfEpochs);
+        } finally {
+            if (trainingStream != null) trainingStream.close();
+        }
 
         System.out.printf("Generating C source...");
-        neuralNetwork.write_C_source(c_out);
+        if (cLoops == null) {
+            neuralNetwork.write_C_source(c_out);
+        } else {
+            CSourceGenerator generator = new CSourceGenerator(neuralNetwork, cLoops);
+            generator.write_C_source(c_out);
+            if (cBenchPath != null) generator.write_benchmark(cBenchPath);
+        }
         System.out.printf("%49s", ANSI_GREEN + "[OK]\n\n" + ANSI_RESET);
+        if (modelPath != null) {
+            System.out.printf("Saving model...");
+            neuralNetwork.save(modelPath);
+            System.out.printf("%56s", ANSI_GREEN + "[OK]\n\n" + ANSI_RESET);
+        }
+        if (lutPath != null) {
+            System.out.printf("Compiling lookup table...");
+            ColorTable table = ColorTable.compile(neuralNetwork, lutLevels);
+            table.save(lutPath);
+            table.write_C_source(lutPath + ".c");
+            System.out.printf("%47s", ANSI_GREEN + "[OK]\n\n" + ANSI_RESET);
+        }
+        if (quantizedPath != null) {
+            quantize(neuralNetwork, quantizedPath, quantTolerance);
+        }
         String trcol = neuralNetwork.getFinalTrainingErr() > 5 ? ANSI_RED : ANSI_GREEN;
         String valcol = neuralNetwork.getFinalValidationErr() > 8 ? ANSI_RED : ANSI_GREEN;
         System.out.println("Final classification error on training set: "+trcol+neuralNetwork.getFinalTrainingErr()+ANSI_RESET+"%");
         if (valcsv != null) {
             System.out.println("Final classification error on validation set: "+valcol+neuralNetwork.getFinalValidationErr()+ANSI_RESET+"%");
         }
+        System.out.println("Final cross-entropy loss on training set: "+neuralNetwork.getFinalTrainingLoss());
+        if (valcsv != null) {
+            System.out.println("Final cross-entropy loss on validation set: "+neuralNetwork.getFinalValidationLoss());
+        }
         System.out.println("Increase number of epochs (-x) and/or number of neurons (-n) to further reduce the error");
+        printElapsed();
+    }
+
+    /**
+     * Quantizes the trained network, calibrated on the training set (the validation set if the
+     * training set was streamed), writes the integer-only C source and compares the classification
+     * error of the quantized network with the float network's (validation set if any)
+     *
+     * @param network   the trained network
+     * @param path      the C source to be created
+     * @param tolerance the largest accepted increase of the classification error (percentage points)
+     * @throws IOException if an IO exception occurs
+     */
+    private static void quantize(NeuralNetwork network, String path, double tolerance) throws IOException {
+        DataSet calibrationSet = network.getTrainingSet() != null ? network.getTrainingSet() : network.getValidationSet();
+        if (calibrationSet == null) {
+            System.out.println(ANSI_RED + "No data set to calibrate the quantized network, pass a validation set when streaming" + ANSI_RESET);
+            return;
+        }
+        System.out.printf("Quantizing network...");
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(network, calibrationSet);
+        quantized.write_C_source(path);
+        System.out.printf("%51s", ANSI_GREEN + "[OK]\n\n" + ANSI_RESET);
+        DataSet dataSet = network.getValidationSet() != null ? network.getValidationSet() : calibrationSet;
+        double floatErr = network.getClassificationError(dataSet);
+        double quantizedErr = quantized.getClassificationError(dataSet);
+        boolean ok = quantized.isWithinTolerance(network, dataSet, tolerance);
+        System.out.println("Classification error of the quantized network: " + (ok ? ANSI_GREEN : ANSI_RED) + quantizedErr
+                + ANSI_RESET + "% (float network: " + floatErr + "%)");
+        if (!ok) {
+            System.out.println(ANSI_RED + "The quantized network exceeds the tolerance of " + tolerance + " percentage points" + ANSI_RESET);
+        }
+    }
+
+    /**
+     * Runs the hyperparameter sweep, writes the leaderboard and the C source of the best network
+     *
+     * @param cmd          the parsed command line
+     * @param tr_set       path of the training set
+     * @param valcsv       path of the validation set (optional)
+     * @param nbOfColors   number of colors to be recognized
+     * @param nbOfNeurons  number of hidden neurons, if not swept
+     * @param nbOfEpochs   number of epochs, if not swept
+     * @param learningRate learning rate, if not swept
+     * @param optimizer    name of the optimizer of every network
+     * @param activation   activation function of the hidden neurons of every network
+     * @param batchSize    mini-batch size of every network
+     * @param seed         seed of the networks (optional)
+     * @param c_out        path of the C source of the best network
+     * @throws Exception if parsing or training failed
+     */
+    private static void sweep(CommandLine cmd, String tr_set, String valcsv, int nbOfColors, int nbOfNeurons, int nbOfEpochs,
+                              double learningRate, String optimizer, Activation activation, int batchSize, String seed, String c_out) throws Exception {
+        int[] neurons = cmd.hasOption("sweep-neurons") ? Sweep.parseIntList(cmd.getOptionValue("sweep-neurons")) : new int[]{nbOfNeurons};
+        int[] epochs = cmd.hasOption("sweep-epochs") ? Sweep.parseIntList(cmd.getOptionValue("sweep-epochs")) : new int[]{nbOfEpochs};
+        double[] learningRates = cmd.hasOption("sweep-lr") ? Sweep.parseDoubleList(cmd.getOptionValue("sweep-lr")) : new double[]{learningRate};
+        int nbOfJobs = cmd.hasOption("sweep-jobs") ? Integer.valueOf(cmd.getOptionValue("sweep-jobs")) : Runtime.getRuntime().availableProcessors();
+        String leaderboard = cmd.getOptionValue("sweep-out") == null ? SWEEP_OUT : cmd.getOptionValue("sweep-out");
+
+        System.out.printf("Parsing data set(s)...");
+        DataSet trainingSet = DataSet.parse(tr_set, nbOfColors, false);
+        DataSet validationSet = valcsv == null ? null : DataSet.parse(valcsv, nbOfColors, false);
+        System.out.printf("%50s", ANSI_GREEN + "[OK]\n" + ANSI_RESET);
+
+        System.out.printf("Training %d networks (%d concurrently)...", neurons.length * epochs.length * learningRates.length, nbOfJobs);
+        Sweep sweep = new Sweep(trainingSet, validationSet, nbOfColors, neurons, epochs, learningRates);
+        sweep.setBatchSize(batchSize);
+        sweep.setOptimizer(Optimizer.forName(optimizer, learningRate));
+        sweep.setActivation(activation);
+        sweep.setSeed(seed == null ? null : Long.valueOf(seed));
+        List<Sweep.Result> results = sweep.run(nbOfJobs);
+        File leaderboardFile = new File(leaderboard);
+        if (leaderboardFile.getParentFile() != null) leaderboardFile.getParentFile().mkdirs();
+        sweep.writeLeaderboard(results, leaderboard);
+        System.out.printf("%20s", ANSI_GREEN + "[OK]\n" + ANSI_RESET);
+
+        Sweep.Result best = results.get(0);
+        System.out.printf("Generating C source of the best network...");
+        best.network.write_C_source(c_out);
+        System.out.printf("%29s", ANSI_GREEN + "[OK]\n\n" + ANSI_RESET);
+        System.out.println("Best network: " + best.neurons + " neurons, " + best.epochs + " epochs, learning rate " + best.learningRate);
+        System.out.println("Final classification error on training set: " + best.trainingErr + "%");
+        if (valcsv != null) {
+            System.out.println("Final classification error on validation set: " + best.validationErr + "%");
+        }
+        System.out.println("Leaderboard written to " + leaderboard);
+    }
+
+    /**
+     * Converts a csv data set to the binary data set format ({@code convert <csv> <binary> -c <nbOfColors> [--header]})
+     *
+     * @param args the command's arguments (without the command's name)
+     * @throws Exception if parsing or writing failed
+     */
+    private static void convert(String[] args) throws Exception {
+        Options options = new Options();
+        Option nbOfColors = new Option("c", "colors", true, "Number of colors (length of the output vectors)");
+        Option header = new Option(null, "header", false, "The first line of the csv contains the names of the colors (testing sets)");
+        nbOfColors.setArgName("nbOfColors");
+        nbOfColors.setRequired(true);
+        header.setRequired(false);
+        options.addOption(nbOfColors);
+        options.addOption(header);
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+            if (cmd.getArgs().length != 2) throw new ParseException("Expected the csv and the binary file paths");
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            HelpFormatter help = new HelpFormatter();
+            help.setWidth(100);
+            help.printHelp("java -jar rgb_NN.jar convert <csv> <binary>", "\nConverts a csv data set to the binary format\n\n", options, "", true);
+            System.exit(0);
+        }
+        System.out.printf("Converting data set...");
+        DataSet dataSet = DataSet.parse(cmd.getArgs()[0], Integer.valueOf(cmd.getOptionValue("c")), cmd.hasOption("header"));
+        dataSet.write(cmd.getArgs()[1]);
+        System.out.printf("%50s", ANSI_GREEN + "[OK]\n" + ANSI_RESET);
+        System.out.println(dataSet.size() + " lines written to " + cmd.getArgs()[1]);
+    }
+
+    /**
+     * Checks the generated C sources against the java model and measures their latency
+     * ({@code conformance -t <data set> -c <nbOfColors> [options]}), see {@link Conformance}.
+     * Exits with status 1 if a generated classifier disagrees with the java model.
+     *
+     * @param args the command's arguments (without the command's name)
+     * @throws Exception if the training, the generation or the compilation failed
+     */
+    private static void conformance(String[] args) throws Exception {
+        Options options = new Options();
+        Option dataSet = new Option("t", "trainset", true, "Path to the data set the networks are trained on, its colors are classified as well");
+        Option nbOfColors = new Option("c", "colors", true, "Number of colors (length of the output vectors)");
+        Option topologies = new Option(null, "topologies", true, "Widths of the hidden layers of every topology, separated by commas, the topologies separated by semicolons (defaults to " + CONFORMANCE_TOPOLOGIES + ")");
+        Option generators = new Option(null, "generators", true, "C generators to be checked, separated by commas (defaults to " + Arrays.toString(Conformance.GENERATORS) + ")");
+        Option epochs = new Option("x", "epochs", true, "Number of epochs each network is trained (defaults to " + CONFORMANCE_EPOCHS + ")");
+        Option activation = new Option("a", "activation", true, "Activation function of the hidden neurons (defaults to " + ACTIVATION + ")");
+        Option seed = new Option("r", "seed", true, "Seed of the networks and of the random colors (defaults to 1)");
+        Option samples = new Option(null, "samples", true, "Number of random colors classified in addition to the data set's (defaults to " + CONFORMANCE_SAMPLES + ")");
+        Option queries = new Option(null, "queries", true, "Number of calls timed per generator (defaults to " + CONFORMANCE_QUERIES + ")");
+        Option cc = new Option(null, "cc", true, "C compiler (defaults to gcc)");
+        Option cflags = new Option(null, "cflags", true, "C compiler flags (defaults to \"-O2 -std=c99\")");
+        Option workDir = new Option(null, "work-dir", true, "Directory receiving the generated files, which are kept (defaults to a temporary directory)");
+        Option report = new Option(null, "report", true, "Path to the report (csv) that will be created");
+        nbOfColors.setArgName("nbOfColors");
+        dataSet.setArgName("DATA SET PATH");
+        topologies.setArgName("TOPOLOGIES");
+        generators.setArgName("GENERATORS");
+        epochs.setArgName("NB OF EPOCHS");
+        activation.setArgName("FUNCTION");
+        seed.setArgName("SEED");
+        samples.setArgName("NB OF COLORS");
+        queries.setArgName("NB OF CALLS");
+        cc.setArgName("COMPILER");
+        cflags.setArgName("FLAGS");
+        workDir.setArgName("DIRECTORY");
+        report.setArgName("REPORT PATH");
+        dataSet.setRequired(true);
+        nbOfColors.setRequired(true);
+        for (Option option : Arrays.asList(dataSet, nbOfColors, topologies, generators, epochs, activation, seed, samples,
+                queries, cc, cflags, workDir, report)) {
+            options.addOption(option);
+        }
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            HelpFormatter help = new HelpFormatter();
+            help.setWidth(100);
+            help.printHelp("java -jar rgb_NN.jar conformance", "\nChecks the generated C sources against the java model and measures their latency\n\n", options, "", true);
+            System.exit(0);
+        }
+        int colors = Integer.valueOf(cmd.getOptionValue("c"));
+        Conformance conformance = new Conformance(DataSet.parse(cmd.getOptionValue("t"), colors, false), colors,
+                Conformance.parseTopologies(cmd.getOptionValue("topologies", CONFORMANCE_TOPOLOGIES)));
+        if (cmd.hasOption("generators")) conformance.setGenerators(cmd.getOptionValue("generators").split(","));
+        conformance.setTraining(Integer.valueOf(cmd.getOptionValue("epochs", CONFORMANCE_EPOCHS)), 8, Optimizer.forName("adam", 1E-2),
+                Activation.forName(cmd.getOptionValue("activation", ACTIVATION)), Long.valueOf(cmd.getOptionValue("seed", "1")));
+        conformance.setQueries(Integer.valueOf(cmd.getOptionValue("samples", CONFORMANCE_SAMPLES)),
+                Integer.valueOf(cmd.getOptionValue("queries", CONFORMANCE_QUERIES)));
+        conformance.setCompiler(cmd.getOptionValue("cc", "gcc"), cmd.getOptionValue("cflags", "-O2 -std=c99"));
+        if (cmd.hasOption("work-dir")) {
+            File dir = new File(cmd.getOptionValue("work-dir"));
+            dir.mkdirs();
+            conformance.setWorkDir(dir);
+        }
+        List<Conformance.Result> results = conformance.run();
+        boolean passed = true;
+        System.out.printf("%-22s %-10s %14s %10s %14s %14s\n", "Topology", "Generator", "Max difference", "Mismatches", "Classify (ns)", "Query (ns)");
+        for (Conformance.Result result : results) {
+            passed &= result.passed();
+            System.out.printf("%-22s %-10s %14.3g %10s %14.1f %14.1f\n", result.topology, result.generator, result.maxDifference,
+                    result.passed() ? String.valueOf(result.mismatches) : ANSI_RED + result.mismatches + ANSI_RESET,
+                    result.classifyNanos, result.queryNanos);
+        }
+        if (cmd.hasOption("report")) Conformance.writeReport(results, cmd.getOptionValue("report"));
+        System.out.println(passed ? ANSI_GREEN + "All generated classifiers agree with the java model" + ANSI_RESET
+                : ANSI_RED + "Some generated classifiers disagree with the java model" + ANSI_RESET);
+        if (!passed) System.exit(1);
+    }
+
+    /**
+     * Compares the multi-threaded training with the single-threaded, per-line training
+     * ({@code parallel -t <training set> -c <nbOfColors> [options]}), see {@link ParallelCheck}.
+     * Exits with status 1 if the error of a run differs too much from the reference's.
+     *
+     * @param args the command's arguments (without the command's name)
+     * @throws Exception if parsing or training failed
+     */
+    private static void parallel(String[] args) throws Exception {
+        Options options = new Options();
+        Option trainingSet = new Option("t", "trainset", true, "Path to the training set");
+        Option validationSet = new Option("v", "valset", true, "Path to the validation set, whose error is compared (the training error otherwise)");
+        Option nbOfColors = new Option("c", "colors", true, "Number of colors (length of the output vectors)");
+        Option neurons = new Option("n", "neurons", true, "Widths of the hidden layers, separated by commas (defaults to " + NEURONS + "," + NEURONS + ")");
+        Option threads = new Option(null, "threads", true, "Numbers of threads compared with the single-threaded reference, separated by commas (defaults to " + PARALLEL_THREADS + ")");
+        Option epochs = new Option("x", "epochs", true, "Number of epochs each network is trained (defaults to " + PARALLEL_EPOCHS + ")");
+        Option batchSize = new Option("b", "batch-size", true, "Mini-batch size of every thread (defaults to " + PARALLEL_BATCH_SIZE + "), the reference processes single lines");
+        Option learningRate = new Option("l", "learning-rate", true, "Learning rate (per line) of every network (defaults to " + LEARNING_RATE + ")");
+        Option activation = new Option("a", "activation", true, "Activation function of the hidden neurons (defaults to " + ACTIVATION + ")");
+        Option seed = new Option("r", "seed", true, "Seed of the networks (defaults to 1)");
+        Option tolerance = new Option(null, "tolerance", true, "Largest accepted difference between the error of a run and the reference's, in percentage points (defaults to " + PARALLEL_TOLERANCE + ")");
+        trainingSet.setArgName("TRAINING SET PATH");
+        validationSet.setArgName("VALIDATION SET PATH");
+        nbOfColors.setArgName("nbOfColors");
+        neurons.setArgName("NB OF NEURONS");
+        threads.setArgName("NBS OF THREADS");
+        epochs.setArgName("NB OF EPOCHS");
+        batchSize.setArgName("BATCH SIZE");
+        learningRate.setArgName("LEARNING RATE");
+        activation.setArgName("FUNCTION");
+        seed.setArgName("SEED");
+        tolerance.setArgName("DELTA");
+        trainingSet.setRequired(true);
+        nbOfColors.setRequired(true);
+        for (Option option : Arrays.asList(trainingSet, validationSet, nbOfColors, neurons, threads, epochs, batchSize,
+                learningRate, activation, seed, tolerance)) {
+            options.addOption(option);
+        }
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            HelpFormatter help = new HelpFormatter();
+            help.setWidth(100);
+            help.printHelp("java -jar rgb_NN.jar parallel", "\nCompares the speed and the error of the multi-threaded training with the single-threaded, per-line training\n\n", options, "", true);
+            System.exit(0);
+        }
+        int colors = Integer.valueOf(cmd.getOptionValue("c"));
+        int[] hiddenNeurons = Sweep.parseIntList(cmd.getOptionValue("neurons", NEURONS));
+        if (hiddenNeurons.length == 1) hiddenNeurons = new int[]{hiddenNeurons[0], hiddenNeurons[0]};
+        DataSet validation = cmd.hasOption("valset") ? DataSet.parse(cmd.getOptionValue("valset"), colors, false) : null;
+        ParallelCheck check = new ParallelCheck(DataSet.parse(cmd.getOptionValue("t"), colors, false), validation, colors, hiddenNeurons);
+        check.setTraining(Integer.valueOf(cmd.getOptionValue("epochs", PARALLEL_EPOCHS)), Integer.valueOf(cmd.getOptionValue("batch-size", PARALLEL_BATCH_SIZE)),
+                Double.valueOf(cmd.getOptionValue("learning-rate", LEARNING_RATE)), Activation.forName(cmd.getOptionValue("activation", ACTIVATION)),
+                Long.valueOf(cmd.getOptionValue("seed", "1")));
+        check.setTolerance(Double.valueOf(cmd.getOptionValue("tolerance", PARALLEL_TOLERANCE)));
+        List<ParallelCheck.Result> results = check.run(Sweep.parseIntList(cmd.getOptionValue("threads", PARALLEL_THREADS)));
+        boolean passed = true;
+        System.out.printf("%8s %11s %16s %10s %8s %11s\n", "Threads", "Batch size", "Effective batch", "Time (ms)", "Speedup", "Error (%)");
+        for (ParallelCheck.Result result : results) {
+            passed &= check.passed(result);
+            String error = String.format("%.3f", result.error);
+            if (result != results.get(0)) error += String.format(" (%+.3f)", result.errorDifference);
+            System.out.printf("%8d %11d %16d %10d %8.2f %s\n", result.nbOfThreads, result.batchSize, result.batchSize * result.nbOfThreads,
+                    result.millis, result.speedup, check.passed(result) ? error : ANSI_RED + error + ANSI_RESET);
+        }
+        System.out.println(passed ? ANSI_GREEN + "The multi-threaded training matches the single-threaded reference" + ANSI_RESET
+                : ANSI_RED + "The error of the multi-threaded training differs from the single-threaded reference" + ANSI_RESET);
+        if (!passed) System.exit(1);
+    }
+
+    /**
+     * Checks that the inference methods do not allocate memory once compiled by the JIT
+     * ({@code allocations -c <nbOfColors> [options]}), see {@link AllocationCheck}.
+     * Exits with status 1 if a method allocated memory.
+     *
+     * @param args the command's arguments (without the command's name)
+     */
+    private static void allocations(String[] args) {
+        Options options = new Options();
+        Option nbOfColors = new Option("c", "colors", true, "Number of colors (length of the output vectors)");
+        Option topologies = new Option(null, "topologies", true, "Widths of the hidden layers of every topology, separated by commas, the topologies separated by semicolons (defaults to " + ALLOCATION_TOPOLOGIES + ")");
+        Option calls = new Option(null, "calls", true, "Number of checked calls per method, after as many warm-up calls (defaults to " + ALLOCATION_CALLS + ")");
+        Option seed = new Option("r", "seed", true, "Seed of the networks and of the colors (defaults to 1)");
+        nbOfColors.setArgName("nbOfColors");
+        topologies.setArgName("TOPOLOGIES");
+        calls.setArgName("NB OF CALLS");
+        seed.setArgName("SEED");
+        nbOfColors.setRequired(true);
+        for (Option option : Arrays.asList(nbOfColors, topologies, calls, seed)) {
+            options.addOption(option);
+        }
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            HelpFormatter help = new HelpFormatter();
+            help.setWidth(100);
+            help.printHelp("java -jar rgb_NN.jar allocations", "\nChecks that query(r, g, b, output) and classify(r, g, b) do not allocate memory\n\n", options, "", true);
+            System.exit(0);
+        }
+        AllocationCheck check = new AllocationCheck(Integer.valueOf(cmd.getOptionValue("c")),
+                Conformance.parseTopologies(cmd.getOptionValue("topologies", ALLOCATION_TOPOLOGIES)));
+        int nbOfCalls = Integer.valueOf(cmd.getOptionValue("calls", ALLOCATION_CALLS));
+        check.setCalls(nbOfCalls, nbOfCalls, Long.valueOf(cmd.getOptionValue("seed", "1")));
+        List<AllocationCheck.Result> results = check.run();
+        boolean passed = true;
+        System.out.printf("%-22s %-10s %12s %12s\n", "Topology", "Method", "Calls", "Bytes");
+        for (AllocationCheck.Result result : results) {
+            passed &= result.passed();
+            System.out.printf("%-22s %-10s %12d %12s\n", result.topology, result.method, result.nbOfCalls,
+                    result.passed() ? String.valueOf(result.bytes) : ANSI_RED + result.bytes + ANSI_RESET);
+        }
+        System.out.println(passed ? ANSI_GREEN + "No memory allocated" + ANSI_RESET
+                : ANSI_RED + "Some methods allocated memory" + ANSI_RESET);
+        if (!passed) System.exit(1);
+    }
+
+    /**
+     * Prints the time elapsed since the program start
+     */
+    private static void printElapsed() {
         /*short snippet to format elapsed time, found here:
         https://stackoverflow.com/questions/6710094/how-to-format-an-elapsed-time-interval-in-hhmmss-sss-format-in-java*/
         long millis = System.currentTimeMillis() - start;
@@ -0,0 +1,154 @@
+package Base;
+
+import NeuralNetwork.DataSet;
+import NeuralNetwork.Layers.Activation;
+import NeuralNetwork.Layers.Layer;
+import NeuralNetwork.NeuralNetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Speedup and error check of the data-parallel training.
+ * <p>
+ * The same network (same seed) is trained once per line with a single thread (stochastic gradient
+ * descent, the reference), then with mini-batches of {@code batchSize} lines on every given number of
+ * threads, each thread processing its own mini-batch (the weights being adjusted every
+ * {@code batchSize * nbOfThreads} lines). The learning rate is the same for every run: the adjustments
+ * of the lines of a mini-batch are summed (see {@link Layer#applyWeightDelta()}), so that an epoch
+ * moves the weights about as far as the reference does.
+ * <p>
+ * For every run, the training time, the speedup over the reference and the final classification error
+ * (on the validation set if any, on the training set otherwise) are reported. A run passes if its error
+ * differs from the reference's by at most {@code tolerance} percentage points.
+ *
+ * @author Nicolas Dutly
+ */
+public class ParallelCheck {
+
+    private final DataSet trainingSet, validationSet;
+    private final int nbOfColors;
+    private final int[] hiddenNeurons;
+    /**
+     * Describes the training of the networks
+     */
+    private int nbOfEpochs = 50;
+    private int batchSize = 8;
+    private double learningRate = Layer.LEARNING_RATE;
+    private Activation activation = Activation.SIGMOID;
+    private long seed = 1;
+    /**
+     * Largest accepted difference (percentage points) between the error of a run and the reference's
+     */
+    private double tolerance = 2;
+
+    /**
+     * Represents the outcome of one training run
+     */
+    public static class Result {
+        public final int nbOfThreads, batchSize;
+        public final long millis;
+        public final double error;
+        /**
+         * Reference time divided by this run's time, and this run's error minus the reference's
+         */
+        public double speedup = 1, errorDifference;
+
+        Result(int nbOfThreads, int batchSize, long millis, double error) {
+            this.nbOfThreads = nbOfThreads;
+            this.batchSize = batchSize;
+            this.millis = millis;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @param trainingSet   the training set
+     * @param validationSet the validation set, {@code null} to compare the training errors
+     * @param nbOfColors    the number of colors
+     * @param hiddenNeurons the widths of the hidden layers
+     */
+    public ParallelCheck(DataSet trainingSet, DataSet validationSet, int nbOfColors, int[] hiddenNeurons) {
+        this.trainingSet = trainingSet;
+        this.validationSet = validationSet;
+        this.nbOfColors = nbOfColors;
+        this.hiddenNeurons = hiddenNeurons;
+    }
+
+    /**
+     * Trains the reference, then one network per number of threads
+     *
+     * @param threadCounts the numbers of threads to be compared with the reference
+     * @return the results, the reference first
+     * @throws Exception if the training failed
+     */
+    public List<Result> run(int[] threadCounts) throws Exception {
+        //untimed epoch of every configuration, so that the timed runs are compiled by the JIT
+        train(1, 1, 1);
+        for (int nbOfThreads : threadCounts) {
+            train(nbOfThreads, batchSize, 1);
+        }
+        List<Result> results = new ArrayList<>();
+        Result reference = train(1, 1, nbOfEpochs);
+        results.add(reference);
+        for (int nbOfThreads : threadCounts) {
+            Result result = train(nbOfThreads, batchSize, nbOfEpochs);
+            result.speedup = (double) reference.millis / Math.max(1, result.millis);
+            result.errorDifference = result.error - reference.error;
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * @param nbOfThreads number of training threads
+     * @param batchSize   mini-batch size of every thread
+     * @param nbOfEpochs  number of epochs
+     * @return the training time and final error
+     * @throws Exception if the training failed
+     */
+    private Result train(int nbOfThreads, int batchSize, int nbOfEpochs) throws Exception {
+        NeuralNetwork network = new NeuralNetwork(hiddenNeurons, nbOfColors, seed);
+        network.setShowProgress(false);
+        network.setActivation(activation);
+        network.setLearningRate(learningRate);
+        network.setBatchSize(batchSize);
+        network.setNbOfThreads(nbOfThreads);
+        network.setDataSets(trainingSet, validationSet, null);
+        long start = System.nanoTime();
+        network.init(nbOfEpochs);
+        long millis = (System.nanoTime() - start) / 1000000;
+        double error = validationSet != null ? network.getFinalValidationErr() : network.getFinalTrainingErr();
+        return new Result(nbOfThreads, batchSize, millis, error);
+    }
+
+    /**
+     * @param result a result returned by {@link #run(int[])}
+     * @return whether its error differs from the reference's by at most the tolerance
+     */
+    public boolean passed(Result result) {
+        return Math.abs(result.errorDifference) <= tolerance;
+    }
+
+    /**
+     * @param nbOfEpochs   number of epochs every network is trained
+     * @param batchSize    mini-batch size of every thread (the reference processes single lines)
+     * @param learningRate learning rate of every network (per line)
+     * @param activation   activation function of the hidden neurons
+     * @param seed         seed of every network
+     */
+    public void setTraining(int nbOfEpochs, int batchSize, double learningRate, Activation activation, long seed) {
+        this.nbOfEpochs = nbOfEpochs;
+        this.batchSize = batchSize;
+        this.learningRate = learningRate;
+        this.activation = activation;
+        this.seed = seed;
+    }
+
+    /**
+     * @param tolerance largest accepted difference (percentage points) between the error of a run and the reference's
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+}
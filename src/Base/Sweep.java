@@ -0,0 +1,255 @@
+package Base;
+
+import NeuralNetwork.DataSet;
+import NeuralNetwork.Layers.Activation;
+import NeuralNetwork.NeuralNetwork;
+import NeuralNetwork.Optimizers.Optimizer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hyperparameter sweep: trains one network per combination of number of hidden neurons,
+ * number of epochs and learning rate, and ranks the networks by classification error.
+ * <p>
+ * The networks are trained concurrently on a bounded thread pool and all use the same
+ * (immutable) parsed data sets, as such the csv files are parsed only once.
+ *
+ * @author Nicolas Dutly
+ */
+public class Sweep {
+
+    /**
+     * Represents the data sets shared by all networks
+     */
+    private final DataSet trainingSet, validationSet;
+    /**
+     * Describes how many colors are to be classified
+     */
+    private final int nbOfColors;
+    /**
+     * Contains the values to be tried for each hyperparameter
+     */
+    private final int[] neurons, epochs;
+    private final double[] learningRates;
+    /**
+     * Describes the mini-batch size used by every network
+     */
+    private int batchSize = 1;
+    /**
+     * Seed of the networks' random number generators, {@code null} for random seeds
+     */
+    private Long seed;
+    /**
+     * Optimizer used by every network, {@code null} for plain gradient descent
+     */
+    private Optimizer optimizer;
+    /**
+     * Activation function of the hidden neurons of every network
+     */
+    private Activation activation = Activation.SIGMOID;
+
+    /**
+     * Represents the outcome of the training of one network
+     */
+    public static class Result {
+        public final int neurons, epochs;
+        public final double learningRate;
+        public final double trainingErr, validationErr;
+        public final long millis;
+        public final NeuralNetwork network;
+
+        Result(int neurons, int epochs, double learningRate, NeuralNetwork network, long millis) {
+            this.neurons = neurons;
+            this.epochs = epochs;
+            this.learningRate = learningRate;
+            this.trainingErr = network.getFinalTrainingErr();
+            this.validationErr = network.getFinalValidationErr();
+            this.millis = millis;
+            this.network = network;
+        }
+    }
+
+    /**
+     * @param trainingSet   the training set
+     * @param validationSet the validation set (optional, the networks are ranked by their
+     *                      training error if missing)
+     * @param nbOfColors    how many colors are to be recognized
+     * @param neurons       the numbers of hidden neurons to be tried
+     * @param epochs        the numbers of epochs to be tried
+     * @param learningRates the learning rates to be tried
+     */
+    public Sweep(DataSet trainingSet, DataSet validationSet, int nbOfColors, int[] neurons, int[] epochs, double[] learningRates) {
+        this.trainingSet = trainingSet;
+        this.validationSet = validationSet;
+        this.nbOfColors = nbOfColors;
+        this.neurons = neurons;
+        this.epochs = epochs;
+        this.learningRates = learningRates;
+    }
+
+    /**
+     * Parses a list of integers, either separated by commas ({@code 8,10,16})
+     * or given as a range ({@code first:last:step}, e.g. {@code 100:800:100})
+     *
+     * @param values the list
+     * @return the parsed values
+     */
+    public static int[] parseIntList(String values) {
+        double[] parsed = parseDoubleList(values);
+        int[] result = new int[parsed.length];
+        for (int i = 0; i < parsed.length; i++) {
+            result[i] = (int) Math.round(parsed[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a list of numbers, either separated by commas ({@code 1e-3,5e-3})
+     * or given as a range ({@code first:last:step})
+     *
+     * @param values the list
+     * @return the parsed values
+     */
+    public static double[] parseDoubleList(String values) {
+        if (values.contains(":")) {
+            String[] range = values.split(":");
+            if (range.length != 3) throw new IllegalArgumentException("Invalid range (first:last:step): " + values);
+            double first = Double.valueOf(range[0]);
+            double last = Double.valueOf(range[1]);
+            double step = Double.valueOf(range[2]);
+            if (step <= 0) throw new IllegalArgumentException("Invalid range step: " + values);
+            int count = (int) Math.floor((last - first) / step + 1e-9) + 1;
+            double[] result = new double[Math.max(count, 0)];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = first + i * step;
+            }
+            return result;
+        }
+        String[] list = values.split(",");
+        double[] result = new double[list.length];
+        for (int i = 0; i < list.length; i++) {
+            result[i] = Double.valueOf(list[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Trains one network per hyperparameter combination.
+     *
+     * @param nbOfJobs number of networks trained concurrently
+     * @return the results, best network first (lowest validation error, then lowest training time)
+     * @throws InterruptedException if interrupted while waiting for the networks
+     * @throws ExecutionException   if the training of a network failed
+     */
+    public List<Result> run(int nbOfJobs) throws InterruptedException, ExecutionException {
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (final int n : neurons) {
+            for (final int x : epochs) {
+                for (final double l : learningRates) {
+                    tasks.add(new Callable<Result>() {
+                        @Override
+                        public Result call() throws Exception {
+                            return train(n, x, l);
+                        }
+                    });
+                }
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbOfJobs);
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final boolean validated = validationSet != null;
+        Collections.sort(results, new Comparator<Result>() {
+            @Override
+            public int compare(Result r1, Result r2) {
+                int cmp = validated ? Double.compare(r1.validationErr, r2.validationErr)
+                        : Double.compare(r1.trainingErr, r2.trainingErr);
+                return cmp != 0 ? cmp : Long.compare(r1.millis, r2.millis);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Trains a network using the given hyperparameters
+     *
+     * @param nbOfNeurons  number of hidden neurons
+     * @param nbOfEpochs   number of epochs
+     * @param learningRate learning rate
+     * @return the result
+     * @throws Exception if the training failed
+     */
+    private Result train(int nbOfNeurons, int nbOfEpochs, double learningRate) throws Exception {
+        long start = System.currentTimeMillis();
+        NeuralNetwork network = seed == null ? new NeuralNetwork(nbOfNeurons, nbOfColors)
+                : new NeuralNetwork(nbOfNeurons, nbOfColors, seed);
+        network.setShowProgress(false);
+        if (optimizer != null) network.setOptimizer(optimizer);
+        network.setActivation(activation);
+        network.setLearningRate(learningRate);
+        network.setBatchSize(batchSize);
+        network.setDataSets(trainingSet, validationSet, null);
+        network.init(nbOfEpochs);
+        return new Result(nbOfNeurons, nbOfEpochs, learningRate, network, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Writes the results to a csv file (leaderboard), in the order of the list
+     *
+     * @param results  the results
+     * @param filename the csv file to write to
+     * @throws IOException if an IO exception occurs
+     */
+    public void writeLeaderboard(List<Result> results, String filename) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+        try {
+            writer.write("Rank,Neurons,Epochs,Learning Rate,Validation Error,Training Error,Time (ms)\n");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                writer.write(String.format(Locale.ROOT, "%d,%d,%d,%s,%s,%f,%d\n", i + 1, result.neurons, result.epochs,
+                        result.learningRate, validationSet == null ? "" : String.format(Locale.ROOT, "%f", result.validationErr),
+                        result.trainingErr, result.millis));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param batchSize the mini-batch size used by every network
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param seed seed of the networks' random number generators (the same seed is used by all networks)
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param optimizer the optimizer (prototype) used by every network
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * @param activation the activation function of the hidden neurons of every network
+     */
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+    }
+}
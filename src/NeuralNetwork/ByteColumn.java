@@ -0,0 +1,70 @@
+package NeuralNetwork;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of bytes, used to collect a column of a data set while it is being parsed,
+ * without knowing the number of lines in advance.
+ *
+ * @author Nicolas Dutly
+ */
+class ByteColumn {
+
+    /**
+     * Largest array size supported by all JVMs
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private byte[] values;
+    private int size;
+
+    /**
+     * @param capacity the initial capacity (expected number of values)
+     */
+    ByteColumn(int capacity) {
+        values = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Creates an (empty) column using the given array, as long as it is large enough
+     *
+     * @param values the array
+     */
+    ByteColumn(byte[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Removes all values, keeping the array
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a value, growing the array by half of its size if full
+     *
+     * @param value the value
+     */
+    void add(byte value) {
+        if (size == values.length) {
+            if (size == MAX_CAPACITY) throw new OutOfMemoryError("Column too large");
+            values = Arrays.copyOf(values, (int) Math.min(MAX_CAPACITY, size + (size >> 1) + 1L));
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @return the values (the array may be larger than the number of values, it is not copied)
+     */
+    byte[] array() {
+        return values;
+    }
+
+    /**
+     * @return the number of values
+     */
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,358 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.Activation;
+import NeuralNetwork.Layers.Layer;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+
+/**
+ * Single precision C source writer, generating faster code than {@link NeuralNetwork#write_C_source(String)}:
+ * <ul>
+ * <li>the weights are {@code static const float} arrays (placed in flash by embedded compilers),</li>
+ * <li>the dot products are sized at generation time: either fully unrolled, or blocked (4 partial
+ * sums per neuron, the remainder unrolled), the bias weight being subtracted instead of multiplied,</li>
+ * <li>{@code classify(r, g, b)} returns the index of the most probable color without computing
+ * the soft-max,</li>
+ * <li>{@code query(r, g, b, out)} computes the probabilities with a max-subtracted soft-max, the
+ * exponential being computed without libm ({@code fast_expf}, relative error below 4E-6).</li>
+ * </ul>
+ * Neither libm nor any other library is needed. {@link #write_benchmark(String)} generates a
+ * companion main measuring the time (and optionally the cycles) per classified pixel.
+ *
+ * @author Nicolas Dutly
+ */
+public class CSourceGenerator {
+
+    /**
+     * Describes how the dot products are generated
+     */
+    public enum Loops {
+        /**
+         * Every product is written out with constant indices (best for small layers)
+         */
+        UNROLLED,
+        /**
+         * One loop per layer, {@link #BLOCK} partial sums per neuron, the remainder unrolled
+         */
+        BLOCKED
+    }
+
+    /**
+     * Number of partial sums of the blocked dot products
+     */
+    public static final int BLOCK = 4;
+
+    /**
+     * Libm-free exponential: {@code exp(x) = 2^i * 2^f} with {@code i = floor(x * log2(e))}, {@code 2^f}
+     * being approximated by a polynomial of degree 6 on [0, 1) and {@code 2^i} added to the
+     * exponent bits. The coefficients minimize the maximal relative error of the polynomial (2E-9), the
+     * error of the function being dominated by the single precision argument reduction: below 1.1E-6
+     * on [-20, 0] and below 4E-6 on the whole range (measured against {@code exp()} over all floats)
+     */
+    private static final String FAST_EXPF =
+            "static float fast_expf(float x){\n" +
+                    "    union { float f; int32_t i; } v;\n" +
+                    "    float t;\n" +
+                    "    int32_t i;\n" +
+                    "    if(x < -87.f) return 0.f;\n" +
+                    "    if(x > 88.f) x = 88.f;\n" +
+                    "    t = x * 1.44269504f;\n" +
+                    "    i = (int32_t) t;\n" +
+                    "    if(t < i) i--;\n" +
+                    "    t -= i;\n" +
+                    "    v.f = 1.f + t * (0.693147045f + t * (0.240229302f + t * (0.0554852991f + t * (0.00967540842f\n" +
+                    "            + t * (0.0012468295f + t * 0.000216112046f)))));\n" +
+                    "    v.i += (int32_t) ((uint32_t) i << 23);\n" +
+                    "    return v.f;\n" +
+                    "}\n";
+
+    private final NeuralNetwork network;
+    private final Loops loops;
+
+    /**
+     * @param network the trained network
+     * @param loops   how the dot products are generated
+     */
+    public CSourceGenerator(NeuralNetwork network, Loops loops) {
+        this.network = network;
+        this.loops = loops;
+    }
+
+    /**
+     * Generates the C classifier: {@code int classify(unsigned char r, unsigned char g, unsigned char b)}
+     * and {@code void query(unsigned char r, unsigned char g, unsigned char b, float out[NB_OF_COLORS])}.
+     *
+     * @param filename the C source to be created (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     */
+    public void write_C_source(String filename) throws IOException {
+        String timeStamp = new SimpleDateFormat("dd.MM.yyyy 'at' HH:mm:ss").format(new Date());
+        Layer[] layers = network.getWeightedLayers();
+        int last = layers.length - 1;
+        //---------------------------------------weights and activation functions---------------------------------------
+        StringBuilder declarations = new StringBuilder();
+        for (int l = 0; l <= last; l++) {
+            appendWeights(declarations, weightsName(l, last), layers[l]);
+        }
+        EnumSet<Activation> functions = EnumSet.noneOf(Activation.class);
+        for (int l = 0; l < last; l++) {
+            functions.add(layers[l].getActivation());
+        }
+        for (Activation function : functions) {
+            declarations.append(function.toC(true));
+        }
+        //---------------------------------------forward phase-----------------------------------------------------------
+        StringBuilder forward = new StringBuilder();
+        forward.append("    float in[3];\n");
+        for (int l = 0; l < last; l++) {
+            forward.append("    float hiddenOut").append(l + 1).append("[").append(layers[l].getNbOfWeightedNeurons()).append("];\n");
+        }
+        forward.append("    in[0] = r * (2.f / 255.f) - 1.f;\n")
+                .append("    in[1] = g * (2.f / 255.f) - 1.f;\n")
+                .append("    in[2] = b * (2.f / 255.f) - 1.f;\n");
+        String prevOut = "in";
+        for (int l = 0; l <= last; l++) {
+            String out = l < last ? "hiddenOut" + (l + 1) : "out";
+            String function = l < last ? layers[l].getActivation().getCFunction() : null;
+            if (loops == Loops.UNROLLED) appendUnrolled(forward, layers[l], weightsName(l, last), prevOut, out, function);
+            else appendBlocked(forward, layers[l], weightsName(l, last), prevOut, out, function);
+            prevOut = out;
+        }
+
+        String cSource =
+                "/*------------------------------------------------------------------------------------------------" +
+                        "\nThis file was automatically generated by " + getClass().getSimpleName() + " (" + loops.name().toLowerCase() + " dot products)\n" +
+                        "Gen time: " + timeStamp + ". Single precision, no libm needed.\n" +
+                        "classify() returns the index of the most probable color (the soft-max is skipped), query() the\n" +
+                        "probability of each color, same order as the training data set (eg: r,g,b,v,c)\n" +
+                        "Topology: " + Arrays.toString(network.getTopology()) + "\n" +
+                        "--------------------------------------------------------------------------------------------------*/\n\n\n" +
+                        "#include <stdint.h>\n" +
+                        "#define NB_OF_COLORS " + network.getNbOfColors() + "\n" +
+                        FAST_EXPF +
+                        declarations +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b);\n" +
+                        "void query(unsigned char r, unsigned char g, unsigned char b, float out[NB_OF_COLORS]);\n" +
+                        "\n" +
+                        "static void feed_forward(unsigned char r, unsigned char g, unsigned char b, float out[NB_OF_COLORS]){\n" +
+                        (loops == Loops.BLOCKED ? "    int i;\n" : "") +
+                        forward +
+                        "}\n" +
+                        "\n" +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b){\n" +
+                        "    float out[NB_OF_COLORS];\n" +
+                        "    int i;\n" +
+                        "    int max = 0;\n" +
+                        "    feed_forward(r, g, b, out);\n" +
+                        "    for(i = 1; i < NB_OF_COLORS; i++){\n" +
+                        "        if(out[i] > out[max]) max = i;\n" +
+                        "    }\n" +
+                        "    return max;\n" +
+                        "}\n" +
+                        "\n" +
+                        "void query(unsigned char r, unsigned char g, unsigned char b, float out[NB_OF_COLORS]){\n" +
+                        "    float max, sum = 0;\n" +
+                        "    int i;\n" +
+                        "    feed_forward(r, g, b, out);\n" +
+                        "    max = out[0];\n" +
+                        "    for(i = 1; i < NB_OF_COLORS; i++){\n" +
+                        "        if(out[i] > max) max = out[i];\n" +
+                        "    }\n" +
+                        "    for(i = 0; i < NB_OF_COLORS; i++){\n" +
+                        "        out[i] = fast_expf(out[i] - max);\n" +
+                        "        sum += out[i];\n" +
+                        "    }\n" +
+                        "    sum = 1.f / sum;\n" +
+                        "    for(i = 0; i < NB_OF_COLORS; i++){\n" +
+                        "        out[i] *= sum;\n" +
+                        "    }\n" +
+                        "}\n";
+        write(filename, cSource);
+    }
+
+    /**
+     * Generates a benchmark main for the classifier written by {@link #write_C_source(String)}:
+     * classifies a frame of pseudo-random pixels several times and prints the time per pixel
+     * ({@code clock()}) and a checksum. If {@code BENCH_CYCLES} is defined as an expression reading
+     * a cycle counter (e.g. {@code -DBENCH_CYCLES=__rdtsc()} on x86, a timer register on the robot),
+     * the cycles per pixel are printed as well. Compile it along with the classifier, e.g.
+     * {@code gcc -O2 query.c query_bench.c}.
+     *
+     * @param filename the C source to be created (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     */
+    public void write_benchmark(String filename) throws IOException {
+        String cSource =
+                "/*------------------------------------------------------------------------------------------------" +
+                        "\nBenchmark of the classifier generated by " + getClass().getSimpleName() + ", topology "
+                        + Arrays.toString(network.getTopology()) + "\n" +
+                        "Usage: bench [pixels per frame] [frames]. Define BENCH_CYCLES as an expression reading a cycle\n" +
+                        "counter (e.g. -DBENCH_CYCLES=__rdtsc() -include x86intrin.h) to print the cycles per pixel\n" +
+                        "--------------------------------------------------------------------------------------------------*/\n\n\n" +
+                        "#include <stdio.h>\n" +
+                        "#include <stdlib.h>\n" +
+                        "#include <stdint.h>\n" +
+                        "#include <time.h>\n" +
+                        "#define NB_OF_COLORS " + network.getNbOfColors() + "\n" +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b);\n" +
+                        "void query(unsigned char r, unsigned char g, unsigned char b, float out[NB_OF_COLORS]);\n" +
+                        "\n" +
+                        "int main(int argc, char** argv){\n" +
+                        "    long pixels = argc > 1 ? atol(argv[1]) : 640 * 480;\n" +
+                        "    long frames = argc > 2 ? atol(argv[2]) : 10;\n" +
+                        "    unsigned char* rgb = malloc(3 * pixels);\n" +
+                        "    uint32_t state = 2463534242u;\n" +
+                        "    long checksum = 0;\n" +
+                        "    long i, f;\n" +
+                        "    clock_t start;\n" +
+                        "    double seconds;\n" +
+                        "    float out[NB_OF_COLORS];\n" +
+                        "    if(rgb == NULL) return 1;\n" +
+                        "    /* xorshift32 */\n" +
+                        "    for(i = 0; i < 3 * pixels; i++){\n" +
+                        "        state ^= state << 13;\n" +
+                        "        state ^= state >> 17;\n" +
+                        "        state ^= state << 5;\n" +
+                        "        rgb[i] = (unsigned char) state;\n" +
+                        "    }\n" +
+                        "#ifdef BENCH_CYCLES\n" +
+                        "    unsigned long long cycles = BENCH_CYCLES;\n" +
+                        "#endif\n" +
+                        "    start = clock();\n" +
+                        "    for(f = 0; f < frames; f++){\n" +
+                        "        for(i = 0; i < pixels; i++){\n" +
+                        "            checksum += classify(rgb[3 * i], rgb[3 * i + 1], rgb[3 * i + 2]);\n" +
+                        "        }\n" +
+                        "    }\n" +
+                        "    seconds = (double) (clock() - start) / CLOCKS_PER_SEC;\n" +
+                        "#ifdef BENCH_CYCLES\n" +
+                        "    cycles = BENCH_CYCLES - cycles;\n" +
+                        "    printf(\"classify: %.1f cycles/pixel\\n\", (double) cycles / (pixels * frames));\n" +
+                        "#endif\n" +
+                        "    printf(\"classify: %.2f ns/pixel (checksum %ld)\\n\", 1E9 * seconds / (pixels * frames), checksum);\n" +
+                        "    start = clock();\n" +
+                        "    for(i = 0; i < pixels; i++){\n" +
+                        "        query(rgb[3 * i], rgb[3 * i + 1], rgb[3 * i + 2], out);\n" +
+                        "        checksum += out[0] > 0.5f;\n" +
+                        "    }\n" +
+                        "    seconds = (double) (clock() - start) / CLOCKS_PER_SEC;\n" +
+                        "    printf(\"query:    %.2f ns/pixel (checksum %ld)\\n\", 1E9 * seconds / pixels, checksum);\n" +
+                        "    free(rgb);\n" +
+                        "    return 0;\n" +
+                        "}\n";
+        write(filename, cSource);
+    }
+
+    /**
+     * @param l    the index of a weighted layer
+     * @param last the index of the output layer
+     * @return the name of the layer's weight array
+     */
+    private static String weightsName(int l, int last) {
+        return l < last ? "hl" + (l + 1) + "Weights" : "outWeights";
+    }
+
+    /**
+     * Appends the weights of a layer as a flat {@code static const float} array (row-major,
+     * one row per neuron, bias weight last)
+     *
+     * @param sb    the builder
+     * @param name  the array's name
+     * @param layer the layer
+     */
+    private static void appendWeights(StringBuilder sb, String name, Layer layer) {
+        int rows = layer.getNbOfWeightedNeurons();
+        int columns = layer.getNbOfInputs();
+        sb.append(String.format("static const float %s[%d] = {", name, rows * columns));
+        for (int i = 0; i < rows; i++) {
+            sb.append(i > 0 ? ",\n    " : "\n    ");
+            for (int j = 0; j < columns; j++) {
+                sb.append(j > 0 ? ", " : "").append((float) layer.getWeight(i, j)).append("f");
+            }
+        }
+        sb.append("\n};\n");
+    }
+
+    /**
+     * Appends the fully unrolled weighted inputs (and activations) of a layer
+     *
+     * @param sb       the builder
+     * @param layer    the layer
+     * @param weights  the name of the layer's weight array
+     * @param in       the name of the layer's input array (without bias)
+     * @param out      the name of the layer's output array
+     * @param function the activation function, {@code null} for the output layer
+     */
+    private static void appendUnrolled(StringBuilder sb, Layer layer, String weights, String in, String out, String function) {
+        int columns = layer.getNbOfInputs();
+        for (int i = 0; i < layer.getNbOfWeightedNeurons(); i++) {
+            int row = i * columns;
+            sb.append("    ").append(out).append("[").append(i).append("] = ").append(function == null ? "" : function + "(");
+            for (int j = 0; j < columns - 1; j++) {
+                sb.append(j > 0 ? " + " : "").append(weights).append("[").append(row + j).append("] * ").append(in).append("[").append(j).append("]");
+            }
+            sb.append(" - ").append(weights).append("[").append(row + columns - 1).append("]").append(function == null ? "" : ")").append(";\n");
+        }
+    }
+
+    /**
+     * Appends the blocked weighted inputs (and activations) of a layer: one loop over the neurons,
+     * {@link #BLOCK} partial sums, the inputs not filling a whole block being unrolled
+     *
+     * @param sb       the builder
+     * @param layer    the layer
+     * @param weights  the name of the layer's weight array
+     * @param in       the name of the layer's input array (without bias)
+     * @param out      the name of the layer's output array
+     * @param function the activation function, {@code null} for the output layer
+     */
+    private static void appendBlocked(StringBuilder sb, Layer layer, String weights, String in, String out, String function) {
+        int columns = layer.getNbOfInputs();
+        int inputs = columns - 1;
+        int blocked = inputs - inputs % BLOCK;
+        sb.append("    for(i = 0; i < ").append(layer.getNbOfWeightedNeurons()).append("; i++){\n")
+                .append("        const float* w = ").append(weights).append(" + i * ").append(columns).append(";\n")
+                .append("        float s0 = 0");
+        for (int p = 1; p < BLOCK; p++) {
+            sb.append(", s").append(p).append(" = 0");
+        }
+        sb.append(";\n");
+        if (blocked > 0) {
+            sb.append("        int j;\n")
+                    .append("        for(j = 0; j < ").append(blocked).append("; j += ").append(BLOCK).append("){\n");
+            for (int p = 0; p < BLOCK; p++) {
+                sb.append("            s").append(p).append(" += w[j + ").append(p).append("] * ").append(in).append("[j + ").append(p).append("];\n");
+            }
+            sb.append("        }\n");
+        }
+        for (int j = blocked; j < inputs; j++) {
+            sb.append("        s").append(j - blocked).append(" += w[").append(j).append("] * ").append(in).append("[").append(j).append("];\n");
+        }
+        sb.append("        ").append(out).append("[i] = ").append(function == null ? "" : function + "(").append("s0");
+        for (int p = 1; p < BLOCK; p++) {
+            sb.append(" + s").append(p);
+        }
+        sb.append(" - w[").append(inputs).append("]").append(function == null ? "" : ")").append(";\n")
+                .append("    }\n");
+    }
+
+    /**
+     * Writes a source file
+     *
+     * @param filename the file (overwritten if existing)
+     * @param source   the file's content
+     * @throws IOException if an IO exception occurs
+     */
+    private static void write(String filename, String source) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.Layer;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles a trained network to a specialized Java class, in the same spirit as
+ * {@link NeuralNetwork#write_C_source(String)}: the source of an {@link RgbClassifier} implementation
+ * is generated with the network's weights baked in as constants and every dot product unrolled.
+ * The source is compiled in-process ({@code javax.tools}, a JDK is required) and the class is loaded by its
+ * own class loader. The JIT then compiles the whole network into a few branch-light methods: no layer objects,
+ * no loops and no allocation.
+ * <p>
+ * The sums are computed in the same order as by the scalar layer kernels ({@link NeuralNetwork.Layers.Kernels#SCALAR}),
+ * as such the compiled classifier returns exactly the same values as
+ * {@link NeuralNetwork#classify(boolean, double, double, double)} and
+ * {@link NeuralNetwork#query(boolean, double, double, double, double[])} with the scalar kernels. With the
+ * vector kernels, which accumulate the dot products lane-wise with fused multiply-adds, the values may differ
+ * in the last bits (and the classes of near ties).
+ * <p>
+ * The JIT doesn't compile methods larger than 8000 bytes of bytecode (unless {@code -XX:-DontCompileHugeMethods}),
+ * so the code depends on the network's size:
+ * <ul>
+ * <li>up to {@link #UNROLL_LIMIT} weights, the whole network is unrolled in {@code classify} and {@code query},</li>
+ * <li>up to {@link #BLOCKS_LIMIT} weights, every layer is unrolled in blocks of at most {@link #BLOCK_WEIGHTS}
+ * weights, one method per block, the neuron outputs being written to per-thread buffers,</li>
+ * <li>larger networks loop over copies of the weights, the neuron outputs being written to per-thread buffers.</li>
+ * </ul>
+ *
+ * @author Nicolas Dutly
+ */
+public class ClassifierCompiler {
+
+    /**
+     * Largest number of weights of an unrolled network (each weight takes about 8 bytes of bytecode
+     * per method)
+     */
+    public static final int UNROLL_LIMIT = 800;
+    /**
+     * Largest number of weights of a block method (each weight takes about 10 bytes of bytecode)
+     */
+    public static final int BLOCK_WEIGHTS = 600;
+    /**
+     * Largest number of weights of a network unrolled in blocks: the machine code of larger networks
+     * no longer fits the instruction caches, and runs slower than the loops
+     */
+    public static final int BLOCKS_LIMIT = 2500;
+    /**
+     * Package of the generated classes
+     */
+    static final String PACKAGE = "NeuralNetwork.generated";
+    private static final String ACTIVATION = "NeuralNetwork.Layers.Activation";
+    /**
+     * Used to name the generated classes
+     */
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    /**
+     * Describes how the dot products are generated, see the class's description
+     */
+    private enum Code {
+        UNROLLED, BLOCKS, LOOPS
+    }
+
+    private ClassifierCompiler() {
+    }
+
+    /**
+     * Generates, compiles and loads the classifier of a network. Later changes of the network's
+     * weights (e.g. further training) don't affect the classifier.
+     *
+     * @param network the trained network
+     * @return the classifier
+     * @throws IllegalStateException        if no Java compiler is available (JRE) or the compilation failed
+     * @throws ReflectiveOperationException if the compiled class could not be loaded or instantiated
+     */
+    public static RgbClassifier compile(NeuralNetwork network) throws ReflectiveOperationException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IllegalStateException("No Java compiler available, a JDK is required");
+        String className = "RgbClassifier" + COUNT.incrementAndGet();
+        final String name = PACKAGE + "." + className;
+        final String source = generateSource(network, className);
+
+        //the class files are written to memory
+        final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        classes.put(className, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        StringWriter diagnostics = new StringWriter();
+        List<String> options = Arrays.asList("-classpath", classPath());
+        Boolean compiled = compiler.getTask(diagnostics, fileManager, null, options, null,
+                Collections.singletonList(sourceFile)).call();
+        if (!compiled) throw new IllegalStateException("The compilation of the classifier failed:\n" + diagnostics);
+
+        ClassLoader loader = new ClassLoader(RgbClassifier.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String className) throws ClassNotFoundException {
+                ByteArrayOutputStream bytes = classes.get(className);
+                if (bytes == null) throw new ClassNotFoundException(className);
+                byte[] b = bytes.toByteArray();
+                return defineClass(className, b, 0, b.length);
+            }
+        };
+        Layer[] layers = network.getWeightedLayers();
+        double[][] weights = new double[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            weights[l] = layers[l].getWeights().clone();
+        }
+        return (RgbClassifier) loader.loadClass(name).getConstructor(double[][].class).newInstance((Object) weights);
+    }
+
+    /**
+     * @return the class path of the compiler: the JVM's class path and the location of this class
+     * (if loaded from elsewhere)
+     */
+    private static String classPath() {
+        String classPath = System.getProperty("java.class.path");
+        CodeSource codeSource = RgbClassifier.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null) {
+            try {
+                classPath = new File(codeSource.getLocation().toURI()).getPath() + File.pathSeparator + classPath;
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                //not a file, only the JVM's class path is used
+            }
+        }
+        return classPath;
+    }
+
+    /**
+     * Generates the source of the classifier of a network: a public class of the {@link #PACKAGE}
+     * package implementing {@link RgbClassifier}, its constructor taking the weights of every weighted
+     * layer (only used if the network has more than {@link #BLOCKS_LIMIT} weights).
+     *
+     * @param network   the trained network
+     * @param className the class's simple name
+     * @return the class's source
+     */
+    public static String generateSource(NeuralNetwork network, String className) {
+        Layer[] layers = network.getWeightedLayers();
+        int nbOfWeights = 0;
+        for (Layer layer : layers) {
+            nbOfWeights += layer.getWeights().length;
+        }
+        Code code = nbOfWeights <= UNROLL_LIMIT ? Code.UNROLLED : nbOfWeights <= BLOCKS_LIMIT ? Code.BLOCKS : Code.LOOPS;
+        boolean unrolled = code == Code.UNROLLED;
+        int nbOfColors = network.getNbOfColors();
+        int last = layers.length - 1;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(PACKAGE).append(";\n\n")
+                .append("/**\n * Generated by ").append(ClassifierCompiler.class.getSimpleName()).append(", topology ")
+                .append(Arrays.toString(network.getTopology())).append(", ").append(code.name().toLowerCase()).append("\n */\n")
+                .append("public final class ").append(className).append(" implements ").append(RgbClassifier.class.getName()).append(" {\n");
+        for (int l = 0; l < last; l++) {
+            sb.append("    private static final ").append(ACTIVATION).append(" A").append(l + 1).append(" = ").append(ACTIVATION)
+                    .append(".").append(layers[l].getActivation().name()).append(";\n");
+        }
+        if (unrolled) {
+            sb.append("\n    public ").append(className).append("(double[][] weights) {\n    }\n");
+        } else {
+            if (code == Code.LOOPS) {
+                for (int l = 0; l <= last; l++) {
+                    sb.append("    private final double[] w").append(l + 1).append(";\n");
+                }
+            }
+            sb.append("    private final ThreadLocal<double[][]> buffers = new ThreadLocal<double[][]>() {\n")
+                    .append("        @Override\n")
+                    .append("        protected double[][] initialValue() {\n")
+                    .append("            return new double[][]{new double[4]");
+            for (Layer layer : layers) {
+                sb.append(", new double[").append(layer.getNbOfWeightedNeurons() + 1).append("]");
+            }
+            sb.append("};\n        }\n    };\n\n")
+                    .append("    public ").append(className).append("(double[][] weights) {\n");
+            if (code == Code.LOOPS) {
+                for (int l = 0; l <= last; l++) {
+                    sb.append("        w").append(l + 1).append(" = weights[").append(l).append("];\n");
+                }
+            }
+            sb.append("    }\n");
+        }
+        sb.append("\n    @Override\n    public int getNbOfColors() {\n        return ").append(nbOfColors).append(";\n    }\n");
+
+        //classify: argmax of the output layer's weighted inputs
+        sb.append("\n    @Override\n    public int classify(int red, int green, int blue) {\n");
+        appendForward(sb, layers, code);
+        if (unrolled) {
+            sb.append("        int max = 0;\n        double best = z0;\n");
+            for (int k = 1; k < nbOfColors; k++) {
+                sb.append("        if (z").append(k).append(" > best) {\n            max = ").append(k).append(";\n            best = z")
+                        .append(k).append(";\n        }\n");
+            }
+        } else {
+            sb.append("        int max = 0;\n")
+                    .append("        for (int k = 1; k < ").append(nbOfColors).append("; k++) {\n")
+                    .append("            if (z[k] > z[max]) max = k;\n")
+                    .append("        }\n");
+        }
+        sb.append("        return max;\n    }\n");
+
+        //query: max-subtracted soft-max, as computed by the output layer
+        sb.append("\n    @Override\n    public void query(int red, int green, int blue, double[] output) {\n");
+        appendForward(sb, layers, code);
+        if (unrolled) {
+            sb.append("        double max = z0;\n");
+            for (int k = 1; k < nbOfColors; k++) {
+                sb.append("        if (z").append(k).append(" > max) max = z").append(k).append(";\n");
+            }
+            for (int k = 0; k < nbOfColors; k++) {
+                sb.append("        double e").append(k).append(" = Math.exp(z").append(k).append(" - max);\n");
+            }
+            sb.append("        double expSum = 0");
+            for (int k = 0; k < nbOfColors; k++) {
+                sb.append(" + e").append(k);
+            }
+            sb.append(";\n        double inv = 1 / expSum;\n");
+            for (int k = 0; k < nbOfColors; k++) {
+                sb.append("        output[").append(k).append("] = e").append(k).append(" * inv;\n");
+            }
+        } else {
+            sb.append("        double max = z[0];\n")
+                    .append("        for (int k = 1; k < ").append(nbOfColors).append("; k++) {\n")
+                    .append("            if (z[k] > max) max = z[k];\n")
+                    .append("        }\n")
+                    .append("        double expSum = 0;\n")
+                    .append("        for (int k = 0; k < ").append(nbOfColors).append("; k++) {\n")
+                    .append("            output[k] = Math.exp(z[k] - max);\n")
+                    .append("            expSum += output[k];\n")
+                    .append("        }\n")
+                    .append("        double inv = 1 / expSum;\n")
+                    .append("        for (int k = 0; k < ").append(nbOfColors).append("; k++) {\n")
+                    .append("            output[k] *= inv;\n")
+                    .append("        }\n");
+        }
+        sb.append("    }\n");
+        if (code == Code.BLOCKS) {
+            appendBlocks(sb, layers);
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Appends the forward phase: normalization of the inputs, then the outputs of the hidden layers
+     * and the weighted inputs of the output layer ({@code z0}, {@code z1}, ... if unrolled, the array
+     * {@code z} otherwise)
+     *
+     * @param sb     the builder
+     * @param layers the weighted layers
+     * @param code   how the dot products are generated
+     */
+    private static void appendForward(StringBuilder sb, Layer[] layers, Code code) {
+        int last = layers.length - 1;
+        if (code == Code.UNROLLED) {
+            sb.append("        double x0 = 2 * (red / 255.) - 1;\n")
+                    .append("        double x1 = 2 * (green / 255.) - 1;\n")
+                    .append("        double x2 = 2 * (blue / 255.) - 1;\n");
+            String in = "x";
+            for (int l = 0; l <= last; l++) {
+                Layer layer = layers[l];
+                String out = l < last ? "h" + (l + 1) + "_" : "z";
+                int inputs = layer.getNbOfInputs();
+                for (int k = 0; k < layer.getNbOfWeightedNeurons(); k++) {
+                    sb.append("        double ").append(out).append(k).append(" = ").append(l < last ? "A" + (l + 1) + ".activate(" : "");
+                    for (int j = 0; j < inputs - 1; j++) {
+                        sb.append(j > 0 ? " + " : "").append(in).append(j).append(" * ").append(layer.getWeight(k, j));
+                    }
+                    //bias input: -1 * w = -w
+                    sb.append(" - ").append(layer.getWeight(k, inputs - 1)).append(l < last ? ")" : "").append(";\n");
+                }
+                in = out;
+            }
+        } else if (code == Code.BLOCKS) {
+            sb.append("        double[][] b = buffers.get();\n")
+                    .append("        double[] in = b[0];\n")
+                    .append("        in[0] = 2 * (red / 255.) - 1;\n")
+                    .append("        in[1] = 2 * (green / 255.) - 1;\n")
+                    .append("        in[2] = 2 * (blue / 255.) - 1;\n");
+            for (int l = 0; l <= last; l++) {
+                int nbOfBlocks = blocks(layers[l]).size() - 1;
+                for (int block = 0; block < nbOfBlocks; block++) {
+                    sb.append("        layer").append(l + 1).append("_").append(block).append("(b[").append(l).append("], b[")
+                            .append(l + 1).append("]);\n");
+                }
+            }
+            sb.append("        double[] z = b[").append(layers.length).append("];\n");
+        } else {
+            sb.append("        double[][] b = buffers.get();\n")
+                    .append("        double[] in = b[0];\n")
+                    .append("        in[0] = 2 * (red / 255.) - 1;\n")
+                    .append("        in[1] = 2 * (green / 255.) - 1;\n")
+                    .append("        in[2] = 2 * (blue / 255.) - 1;\n")
+                    .append("        in[3] = ").append(NeuralNetwork.BIAS).append(";\n");
+            for (int l = 0; l <= last; l++) {
+                Layer layer = layers[l];
+                int inputs = layer.getNbOfInputs();
+                int neurons = layer.getNbOfWeightedNeurons();
+                String out = "b[" + (l + 1) + "]";
+                sb.append("        for (int k = 0; k < ").append(neurons).append("; k++) {\n")
+                        .append("            double sum = 0;\n")
+                        .append("            for (int j = 0; j < ").append(inputs).append("; j++) {\n")
+                        .append("                sum += b[").append(l).append("][j] * w").append(l + 1).append("[k * ").append(inputs).append(" + j];\n")
+                        .append("            }\n")
+                        .append("            ").append(out).append("[k] = ").append(l < last ? "A" + (l + 1) + ".activate(sum)" : "sum").append(";\n")
+                        .append("        }\n");
+                if (l < last) sb.append("        ").append(out).append("[").append(neurons).append("] = ").append(NeuralNetwork.BIAS).append(";\n");
+            }
+            sb.append("        double[] z = b[").append(layers.length).append("];\n");
+        }
+    }
+
+    /**
+     * Splits the weights of a layer, in the order of the dot products (neuron by neuron, input by
+     * input), into blocks of at most {@link #BLOCK_WEIGHTS} weights
+     *
+     * @param layer the weighted layer
+     * @return the index of the first weight of every block, followed by the number of weights
+     */
+    private static List<Integer> blocks(Layer layer) {
+        int nbOfWeights = layer.getNbOfWeightedNeurons() * layer.getNbOfInputs();
+        List<Integer> blocks = new ArrayList<>();
+        for (int start = 0; start < nbOfWeights; start += BLOCK_WEIGHTS) {
+            blocks.add(start);
+        }
+        blocks.add(nbOfWeights);
+        return blocks;
+    }
+
+    /**
+     * Appends the block methods of every layer ({@code layer1_0}, {@code layer1_1}, ...), each one
+     * reading the layer's inputs from the array {@code in} to local variables and writing its outputs to
+     * the array {@code out}.
+     * A dot product split between two blocks is accumulated in {@code out}, the sum being continued in
+     * the same order by the next block.
+     *
+     * @param sb     the builder
+     * @param layers the weighted layers
+     */
+    private static void appendBlocks(StringBuilder sb, Layer[] layers) {
+        int last = layers.length - 1;
+        for (int l = 0; l <= last; l++) {
+            Layer layer = layers[l];
+            int inputs = layer.getNbOfInputs();
+            List<Integer> blocks = blocks(layer);
+            for (int block = 0; block < blocks.size() - 1; block++) {
+                sb.append("\n    private static void layer").append(l + 1).append("_").append(block)
+                        .append("(double[] in, double[] out) {\n");
+                int start = blocks.get(block);
+                int end = blocks.get(block + 1);
+                //the inputs used by the block are read once (the JIT can't keep them in registers
+                //across the writes to out, which might be the same array)
+                for (int j = 0; j < inputs - 1; j++) {
+                    if ((j - start % inputs + inputs) % inputs < end - start) {
+                        sb.append("        double x").append(j).append(" = in[").append(j).append("];\n");
+                    }
+                }
+                for (int i = start; i < end; ) {
+                    int k = i / inputs;
+                    int j = i % inputs;
+                    boolean activated = l < last && (k + 1) * inputs <= end;
+                    sb.append("        out[").append(k).append("] = ").append(activated ? "A" + (l + 1) + ".activate(" : "");
+                    //continues the sum of the previous block
+                    if (j > 0) sb.append("out[").append(k).append("]");
+                    for (; i < end && i < (k + 1) * inputs; i++, j++) {
+                        if (j < inputs - 1) {
+                            sb.append(j > 0 ? " + " : "").append("x").append(j).append(" * ").append(layer.getWeight(k, j));
+                        } else {
+                            //bias input: -1 * w = -w
+                            sb.append(" - ").append(layer.getWeight(k, j));
+                        }
+                    }
+                    sb.append(activated ? ")" : "").append(";\n");
+                }
+                sb.append("    }\n");
+            }
+        }
+    }
+}
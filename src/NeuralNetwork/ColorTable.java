@@ -0,0 +1,316 @@
+package NeuralNetwork;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lookup table (LUT) classifier: a trained network tabulated over the whole rgb cube.
+ * <p>
+ * As there are only 256^3 rgb values, the most probable color of every one of them is computed
+ * once ({@link #compile(NeuralNetwork, int)}) and stored in a 16 MB table of color indices,
+ * classifying a color then being a single table read. Optionally, the probabilities of the colors
+ * are tabulated on a coarser grid ({@code levels} points per component, probabilities quantized
+ * to bytes), {@link #query(int, int, int, double[])} interpolating between the grid points.
+ * <p>
+ * A table can be saved to a file and loaded again, the file being memory-mapped instead of read
+ * ({@link #load(String)}). {@link #write_C_source(String)} generates the equivalent C classifier,
+ * which reads the same file.
+ *
+ * @author Nicolas Dutly
+ */
+public class ColorTable {
+
+    /**
+     * Number of rgb values (256^3)
+     */
+    public static final int SIZE = 1 << 24;
+    /**
+     * Identifies a table file ("RGBT")
+     */
+    private static final int MAGIC = 0x52474254;
+    private static final int VERSION = 1;
+    /**
+     * Size in bytes of a table file's header: magic, version, number of colors, levels
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Contains the index of the most probable color of every rgb value ({@code 0xRRGGBB})
+     */
+    private final ByteBuffer classes;
+    /**
+     * Contains the quantized probabilities ([0-255]) of every color at every grid point,
+     * {@code null} if the probabilities are not tabulated
+     */
+    private final ByteBuffer probabilities;
+    /**
+     * Describes how many colors the network recognizes
+     */
+    private final int nbOfColors;
+    /**
+     * Describes the number of grid points per component of the probability table, 0 if none
+     */
+    private final int levels;
+
+    /**
+     * @param classes       the index of the most probable color of every rgb value
+     * @param probabilities the quantized probabilities of the grid points (optional)
+     * @param nbOfColors    the number of colors
+     * @param levels        the number of grid points per component (0 if no probabilities)
+     */
+    private ColorTable(ByteBuffer classes, ByteBuffer probabilities, int nbOfColors, int levels) {
+        this.classes = classes;
+        this.probabilities = probabilities;
+        this.nbOfColors = nbOfColors;
+        this.levels = levels;
+    }
+
+    /**
+     * Tabulates a trained network. The rgb cube is classified using the network's inference
+     * threads ({@link NeuralNetwork#setNbOfInferenceThreads(int)}).
+     *
+     * @param network the trained network
+     * @param levels  number of grid points per component of the probability table
+     *                (e.g. 33 for a point every 8 values), 0 to only tabulate the most probable colors
+     * @return the table
+     * @throws InterruptedException if interrupted while waiting for the inference threads
+     * @throws ExecutionException   if an inference thread failed
+     */
+    public static ColorTable compile(NeuralNetwork network, int levels) throws InterruptedException, ExecutionException {
+        if (levels == 1 || levels < 0 || levels > 256) throw new IllegalArgumentException("Invalid number of levels: " + levels);
+        byte[] classes = new byte[SIZE];
+        //the index of a pixel is its rgb value
+        network.infer(new PixelSource() {
+            @Override
+            public int getRgb(int pixel) {
+                return pixel;
+            }
+        }, SIZE, classes, null);
+
+        int nbOfColors = network.getNbOfColors();
+        byte[] probabilities = null;
+        if (levels > 0) {
+            probabilities = new byte[levels * levels * levels * nbOfColors];
+            double[] output = new double[nbOfColors];
+            double step = 255. / (levels - 1);
+            int p = 0;
+            for (int r = 0; r < levels; r++) {
+                for (int g = 0; g < levels; g++) {
+                    for (int b = 0; b < levels; b++) {
+                        network.query(false, r * step, g * step, b * step, output);
+                        for (int k = 0; k < nbOfColors; k++) {
+                            probabilities[p++] = (byte) Math.round(output[k] * 255);
+                        }
+                    }
+                }
+            }
+        }
+        return new ColorTable(ByteBuffer.wrap(classes), probabilities == null ? null : ByteBuffer.wrap(probabilities),
+                nbOfColors, levels);
+    }
+
+    /**
+     * Loads a table saved by {@link #save(String)}. The file is memory-mapped (read-only), as such
+     * the table's pages are only read from the disk when used and shared between processes.
+     *
+     * @param filename the table file
+     * @return the table
+     * @throws IOException if an IO exception occurs or if the file is not a table file
+     */
+    public static ColorTable load(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a color table: " + filename);
+            if (buffer.getInt(4) != VERSION)
+                throw new IOException("Unsupported color table version: " + buffer.getInt(4));
+            int nbOfColors = buffer.getInt(8);
+            int levels = buffer.getInt(12);
+            int probabilitiesSize = levels * levels * levels * nbOfColors;
+            if (buffer.limit() != HEADER_SIZE + SIZE + probabilitiesSize)
+                throw new IOException("Truncated color table: " + filename);
+
+            buffer.position(HEADER_SIZE).limit(HEADER_SIZE + SIZE);
+            ByteBuffer classes = buffer.slice();
+            ByteBuffer probabilities = null;
+            if (levels > 0) {
+                buffer.limit(HEADER_SIZE + SIZE + probabilitiesSize).position(HEADER_SIZE + SIZE);
+                probabilities = buffer.slice();
+            }
+            return new ColorTable(classes, probabilities, nbOfColors, levels);
+        } finally {
+            //the mapping stays valid once the file is closed
+            file.close();
+        }
+    }
+
+    /**
+     * Saves the table: a 16 byte header (magic, version, number of colors and levels, big-endian
+     * integers), followed by the 2^24 color indices (index {@code 0xRRGGBB}) and the quantized
+     * probabilities of the grid points (if any, red-major, one byte per color).
+     *
+     * @param filename the file to write to (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     */
+    public void save(String filename) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(nbOfColors).putInt(levels).flip();
+        FileOutputStream out = new FileOutputStream(filename);
+        try {
+            FileChannel channel = out.getChannel();
+            write(channel, header);
+            write(channel, classes.duplicate());
+            if (probabilities != null) write(channel, probabilities.duplicate());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a whole buffer to a channel
+     *
+     * @param channel the channel
+     * @param buffer  the buffer (from its position to its limit)
+     * @throws IOException if an IO exception occurs
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Classifies a color
+     *
+     * @param red   the red rgb value [0-255]
+     * @param green the green rgb value [0-255]
+     * @param blue  the blue rgb value [0-255]
+     * @return the index of the most probable color (same order as the training output vectors)
+     */
+    public int classify(int red, int green, int blue) {
+        return classes.get(red << 16 | green << 8 | blue);
+    }
+
+    /**
+     * Classifies a color
+     *
+     * @param rgb the rgb value, packed as {@code 0xRRGGBB} (the highest byte is ignored)
+     * @return the index of the most probable color
+     */
+    public int classify(int rgb) {
+        return classes.get(rgb & 0xFFFFFF);
+    }
+
+    /**
+     * Computes the probability of every color by trilinear interpolation of the probability table.
+     * Does not allocate any memory.
+     *
+     * @param red    the red rgb value [0-255]
+     * @param green  the green rgb value [0-255]
+     * @param blue   the blue rgb value [0-255]
+     * @param output array receiving the probability of each color (at least {@code nbOfColors} long)
+     * @throws IllegalStateException if the probabilities were not tabulated
+     */
+    public void query(int red, int green, int blue, double[] output) {
+        if (probabilities == null) throw new IllegalStateException("The probabilities were not tabulated");
+        double scale = (levels - 1) / 255.;
+        double fr = red * scale, fg = green * scale, fb = blue * scale;
+        int r = Math.min((int) fr, levels - 2);
+        int g = Math.min((int) fg, levels - 2);
+        int b = Math.min((int) fb, levels - 2);
+        double tr = fr - r, tg = fg - g, tb = fb - b;
+
+        for (int k = 0; k < nbOfColors; k++) {
+            output[k] = 0;
+        }
+        //add up the 8 corners of the grid cell containing the color
+        for (int corner = 0; corner < 8; corner++) {
+            int dr = corner >> 2, dg = (corner >> 1) & 1, db = corner & 1;
+            double weight = (dr == 0 ? 1 - tr : tr) * (dg == 0 ? 1 - tg : tg) * (db == 0 ? 1 - tb : tb);
+            int p = (((r + dr) * levels + g + dg) * levels + b + db) * nbOfColors;
+            for (int k = 0; k < nbOfColors; k++) {
+                output[k] += weight * (probabilities.get(p + k) & 0xFF);
+            }
+        }
+        for (int k = 0; k < nbOfColors; k++) {
+            output[k] /= 255;
+        }
+    }
+
+    /**
+     * Generates a C classifier reading a table file saved by {@link #save(String)}:
+     * {@code load_color_table(path)} loads the table once, {@code classify(r, g, b)} then returns
+     * the index of the most probable color with a single array read.
+     *
+     * @param filename the C source to be created (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     */
+    public void write_C_source(String filename) throws IOException {
+        String timeStamp = new SimpleDateFormat("dd.MM.yyyy 'at' HH:mm:ss").format(new Date());
+        String cSource =
+                "/*------------------------------------------------------------------------------------------------" +
+                        "\nThis file was automatically generated by " + getClass().getSimpleName() + "\n" +
+                        "Gen time: " + timeStamp + ". Call load_color_table() once with the path of the table file,\n" +
+                        "classify() then returns the index of the most probable color (same order as the\n" +
+                        "training data set (eg: r,g,b,v,c)), or -1 if no table is loaded\n" +
+                        "--------------------------------------------------------------------------------------------------*/\n\n\n" +
+                        "#include <stdio.h>\n" +
+                        "#include <stdlib.h>\n" +
+                        "#define COLOR_TABLE_HEADER " + HEADER_SIZE + "\n" +
+                        "#define COLOR_TABLE_SIZE " + SIZE + "\n" +
+                        "#define NB_OF_COLORS " + nbOfColors + "\n" +
+                        "static unsigned char* color_table = NULL;\n" +
+                        "int load_color_table(const char* path);\n" +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b);\n" +
+                        "\n" +
+                        "int load_color_table(const char* path){\n" +
+                        "    FILE* file = fopen(path, \"rb\");\n" +
+                        "    if(file == NULL) return -1;\n" +
+                        "    unsigned char* table = malloc(COLOR_TABLE_SIZE);\n" +
+                        "    if(table == NULL || fseek(file, COLOR_TABLE_HEADER, SEEK_SET) != 0\n" +
+                        "            || fread(table, 1, COLOR_TABLE_SIZE, file) != COLOR_TABLE_SIZE){\n" +
+                        "        free(table);\n" +
+                        "        fclose(file);\n" +
+                        "        return -1;\n" +
+                        "    }\n" +
+                        "    fclose(file);\n" +
+                        "    free(color_table);\n" +
+                        "    color_table = table;\n" +
+                        "    return 0;\n" +
+                        "}\n" +
+                        "\n" +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b){\n" +
+                        "    if(color_table == NULL) return -1;\n" +
+                        "    return color_table[(r << 16) | (g << 8) | b];\n" +
+                        "}\n";
+        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+        try {
+            writer.write(cSource);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the number of colors
+     */
+    public int getNbOfColors() {
+        return nbOfColors;
+    }
+
+    /**
+     * @return the number of grid points per component of the probability table, 0 if none
+     */
+    public int getLevels() {
+        return levels;
+    }
+}
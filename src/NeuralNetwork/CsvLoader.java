@@ -0,0 +1,234 @@
+package NeuralNetwork;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass csv data set loader, see {@link DataSet#parse(String, int, boolean)} for the format.
+ * <p>
+ * The file is memory-mapped (in windows of {@link #WINDOW} bytes, so that files larger than 2 GB
+ * can be loaded) and parsed in place: the integers are parsed directly from the mapped bytes and
+ * appended to growable columns (rgb values and color index of each line), no string or
+ * intermediate array is created per line.
+ * <p>
+ * A loader can also parse a file chunk by chunk ({@link #parse(ByteBuffer, boolean, int)}), see {@link DataStream}.
+ *
+ * @author Nicolas Dutly
+ */
+class CsvLoader {
+
+    /**
+     * Size of the mapped windows of the file
+     */
+    private static final int WINDOW = 1 << 28;
+    /**
+     * Approximate length of a line, used to estimate the number of lines from the file size
+     */
+    private static final int LINE_LENGTH = 16;
+
+    private final String path;
+    private final int nbOfColors;
+    private final boolean hasHeader;
+    /**
+     * Contains the rgb values of the parsed lines (3 bytes per line)
+     */
+    private ByteColumn rgb;
+    /**
+     * Contains the index of the expected color of the parsed lines
+     */
+    private ByteColumn colors;
+    /**
+     * Contains the color names defined in the header line, if any
+     */
+    private String[] colorNames;
+    /**
+     * Describes the number of the line being parsed (for error messages)
+     */
+    private long lineNumber;
+
+    /**
+     * @param path       the csv file's path
+     * @param nbOfColors number of colors (length of the output vectors)
+     * @param hasHeader  whether the first line contains the names of the colors
+     */
+    CsvLoader(String path, int nbOfColors, boolean hasHeader) {
+        this.path = path;
+        this.nbOfColors = nbOfColors;
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * Specifies the number of lines preceding the next parsed line in the file (for error messages),
+     * when parsing a part of a file
+     *
+     * @param lineNumber the number of preceding lines
+     */
+    void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Specifies the columns the parsed lines are appended to
+     *
+     * @param rgb    receives the rgb values (3 bytes per line)
+     * @param colors receives the index of the expected color of each line
+     */
+    void setColumns(ByteColumn rgb, ByteColumn colors) {
+        this.rgb = rgb;
+        this.colors = colors;
+    }
+
+    /**
+     * Loads a csv data set
+     *
+     * @param path       the csv file's path
+     * @param nbOfColors number of colors (length of the output vectors)
+     * @param hasHeader  whether the first line contains the names of the colors, separated by commas
+     * @return the data set
+     * @throws IOException if an IO exception occurs or if the file has a bad format
+     */
+    static DataSet load(String path, int nbOfColors, boolean hasHeader) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            CsvLoader loader = new CsvLoader(path, nbOfColors, hasHeader);
+            int rows = (int) Math.min(size / LINE_LENGTH, Integer.MAX_VALUE / 3);
+            loader.setColumns(new ByteColumn(3 * rows), new ByteColumn(rows));
+            long offset = 0;
+            while (offset < size) {
+                long length = Math.min(WINDOW, size - offset);
+                boolean last = offset + length == size;
+                int parsed = loader.parse(channel.map(FileChannel.MapMode.READ_ONLY, offset, length), last, Integer.MAX_VALUE);
+                if (parsed == 0 && !last) throw loader.error("line too long");
+                offset += parsed;
+            }
+            return new DataSet(loader.rgb.array(), loader.colors.array(), loader.colors.size(), nbOfColors, loader.colorNames);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Parses the complete lines of a buffer (from index 0 to its limit), or until
+     * the columns contain {@code maxRows} lines
+     *
+     * @param buffer  the buffer
+     * @param last    whether the buffer ends at the end of the file (the last line
+     *                may then not be terminated by a line break)
+     * @param maxRows maximal number of lines in the columns
+     * @return the number of bytes parsed (up to the end of the last parsed line)
+     * @throws IOException if a line has a bad format
+     */
+    int parse(ByteBuffer buffer, boolean last, int maxRows) throws IOException {
+        int limit = buffer.limit();
+        int start = 0;
+        while (start < limit && colors.size() < maxRows) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') end++;
+            if (end == limit && !last) break;
+            lineNumber++;
+            parseLine(buffer, start, end);
+            start = end + 1;
+        }
+        return Math.min(start, limit);
+    }
+
+    /**
+     * Parses a line: {@code r,g,b;x1,x2,...,xn;} (the last semicolon being optional),
+     * blank lines are skipped.
+     *
+     * @param buffer the buffer containing the line
+     * @param start  index of the line's first byte
+     * @param end    index after the line's last byte (line break excluded)
+     * @throws IOException if the line has a bad format
+     */
+    private void parseLine(ByteBuffer buffer, int start, int end) throws IOException {
+        int i = skipBlanks(buffer, start, end);
+        if (i == end) return;
+        if (hasHeader && colorNames == null) {
+            parseHeader(buffer, start, end);
+            return;
+        }
+        for (int component = 0; component < 3; component++) {
+            int value = 0;
+            int digits = 0;
+            i = skipBlanks(buffer, i, end);
+            for (; i < end && isDigit(buffer.get(i)); i++, digits++) {
+                value = 10 * value + buffer.get(i) - '0';
+                if (value > 255) throw error("rgb value out of range [0-255]");
+            }
+            i = skipBlanks(buffer, i, end);
+            if (digits == 0 || i == end || buffer.get(i) != (component < 2 ? ',' : ';')) throw error("bad format");
+            rgb.add((byte) value);
+            i++;
+        }
+        //index of the first output set to one
+        int color = -1;
+        for (int k = 0; ; k++) {
+            int value = 0;
+            int digits = 0;
+            i = skipBlanks(buffer, i, end);
+            for (; i < end && isDigit(buffer.get(i)); i++, digits++) {
+                value = Math.min(10 * value + buffer.get(i) - '0', 10);
+            }
+            i = skipBlanks(buffer, i, end);
+            if (digits == 0) throw error("bad format");
+            if (k >= nbOfColors) throw error("more than " + nbOfColors + " outputs");
+            if (value == 1 && color < 0) color = k;
+            if (i == end || buffer.get(i) == ';') break;
+            if (buffer.get(i) != ',') throw error("bad format");
+            i++;
+        }
+        colors.add((byte) color);
+    }
+
+    /**
+     * Parses the header line, containing the names of the colors separated by commas
+     *
+     * @param buffer the buffer containing the line
+     * @param start  index of the line's first byte
+     * @param end    index after the line's last byte
+     * @throws IOException if a color name contains digits
+     */
+    private void parseHeader(ByteBuffer buffer, int start, int end) throws IOException {
+        byte[] line = new byte[end - start];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = buffer.get(start + i);
+        }
+        colorNames = new String(line, StandardCharsets.UTF_8).trim().split(",");
+        for (String colorName : colorNames) {
+            if (Pattern.compile("[0-9]+").matcher(colorName).find()) {
+                throw error("invalid test color header. The test file must " +
+                        "contain a header line containing color names separated by commas");
+            }
+        }
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param i      index of the first byte to be checked
+     * @param end    index after the last byte to be checked
+     * @return index of the first byte which is not a space, tab or carriage return
+     */
+    private static int skipBlanks(ByteBuffer buffer, int i, int end) {
+        while (i < end && (buffer.get(i) == ' ' || buffer.get(i) == '\t' || buffer.get(i) == '\r')) i++;
+        return i;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * @param message the error's description
+     * @return an exception locating the error (file and line number)
+     */
+    private IOException error(String message) {
+        return new IOException(String.format("%s:%d: %s (expected r,g,b;x1,x2,...,xn;)", path, lineNumber, message));
+    }
+}
@@ -0,0 +1,283 @@
+package NeuralNetwork;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Represents a parsed data set (training, validation or testing set).
+ * <p>
+ * A data set is immutable once parsed, as such a single instance can be shared by several
+ * networks, even if they are trained concurrently.
+ * The data set is stored in columns of primitives: the rgb values of each line (3 bytes per line)
+ * and the index of each line's color (the index of the output set to one in the line's
+ * expected output vector, 1-N encoding). The inputs of the network are the normalized
+ * rgb values ([-1,1]).
+ * <p>
+ * Data sets are either parsed from csv files or loaded from binary files ({@link #write(String)}),
+ * which are memory-mapped and used without copying.
+ *
+ * @author Nicolas Dutly
+ */
+public class DataSet {
+    /**
+     * Contains the normalized value ([-1,1]) of every rgb component value [0-255]
+     */
+    static final double[] NORMALIZED = new double[256];
+
+    static {
+        for (int i = 0; i < NORMALIZED.length; i++) {
+            NORMALIZED[i] = 2 * (i / 255.) - 1;
+        }
+    }
+
+    /**
+     * Identifies a binary data set file ("RGBD")
+     */
+    private static final int MAGIC = 0x52474244;
+    private static final int VERSION = 1;
+
+    /**
+     * Contains the rgb values, 3 bytes per line (heap buffer or mapped file)
+     */
+    private final ByteBuffer rgb;
+    /**
+     * Contains the index of the expected color of each line, -1 if none of the outputs is set to one
+     */
+    private final ByteBuffer colors;
+    /**
+     * Describes the number of lines
+     */
+    private final int size;
+    /**
+     * Describes the length of the expected output vectors
+     */
+    private final int nbOfColors;
+    /**
+     * Contains the color names defined in the header line (only testing sets have one),
+     * {@code null} otherwise
+     */
+    private final String[] colorNames;
+
+    /**
+     * @param rgb        the rgb values, 3 bytes per line (the array may be longer)
+     * @param colors     the index of the expected color of each line (the array may be longer)
+     * @param size       the number of lines
+     * @param nbOfColors the length of the expected output vectors
+     * @param colorNames the color names, {@code null} if unknown
+     */
+    DataSet(byte[] rgb, byte[] colors, int size, int nbOfColors, String[] colorNames) {
+        this(ByteBuffer.wrap(rgb), ByteBuffer.wrap(colors), size, nbOfColors, colorNames);
+    }
+
+    /**
+     * @param rgb        the rgb values, 3 bytes per line, starting at index 0
+     * @param colors     the index of the expected color of each line, starting at index 0
+     * @param size       the number of lines
+     * @param nbOfColors the length of the expected output vectors
+     * @param colorNames the color names, {@code null} if unknown
+     */
+    private DataSet(ByteBuffer rgb, ByteBuffer colors, int size, int nbOfColors, String[] colorNames) {
+        if (nbOfColors > Byte.MAX_VALUE) throw new IllegalArgumentException("Too many colors: " + nbOfColors);
+        this.rgb = rgb;
+        this.colors = colors;
+        this.size = size;
+        this.nbOfColors = nbOfColors;
+        this.colorNames = colorNames;
+    }
+
+    /**
+     * Parses a csv file, which is in following format: <br >
+     * {@code r,g,b;x1,x2,x3,...,xn}<br>
+     * With one of the {@code xi} set to one. Where <br>
+     * {@code r}: red value [0-255]<br>
+     * {@code g}: green value [0-255]<br>
+     * {@code b}: blue value [0-255]<br>
+     * {@code x1}: set to 1 if color is red<br>
+     * {@code x2}: set to 1 if color is green<br>
+     * {@code x3}: set to 1 if color is blue<br>
+     * (Note: the order of the {@code xi} can be interchanged, this will result
+     * in a change of the output vector)
+     * <p>
+     * The file is read once, memory-mapped, see {@link CsvLoader}. Binary data sets
+     * ({@link #write(String)}) are recognized by their header and loaded with {@link #load(String, int)}.
+     *
+     * @param dataSetPath csv (or binary) file path of the data set
+     * @param nbOfColors  number of colors (length of the output vectors)
+     * @param hasHeader   whether the first line contains the names of the colors, separated
+     *                    by commas (testing sets)
+     * @return the parsed data set
+     * @throws IOException if an IO exception occurs or if the file has a bad format
+     */
+    public static DataSet parse(String dataSetPath, int nbOfColors, boolean hasHeader) throws IOException {
+        if (isBinary(dataSetPath)) {
+            DataSet dataSet = load(dataSetPath, nbOfColors);
+            if (hasHeader && dataSet.colorNames == null)
+                throw new IOException(dataSetPath + ": the testing set must contain the names of the colors");
+            return dataSet;
+        }
+        return CsvLoader.load(dataSetPath, nbOfColors, hasHeader);
+    }
+
+    /**
+     * @param dataSetPath the data set's file path
+     * @return whether the file is a binary data set (starts with the binary format's magic number)
+     * @throws IOException if an IO exception occurs
+     */
+    static boolean isBinary(String dataSetPath) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(dataSetPath));
+        try {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads a binary data set written by {@link #write(String)}. The file is memory-mapped (read-only)
+     * and the data set reads the rgb values and colors directly from the mapping.
+     *
+     * @param dataSetPath binary file path of the data set
+     * @param nbOfColors  number of colors of the network, must not be smaller than the data set's
+     * @return the data set
+     * @throws IOException if an IO exception occurs or if the file is not a valid binary data set
+     */
+    public static DataSet load(String dataSetPath, int nbOfColors) throws IOException {
+        DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(dataSetPath)));
+        int fileColors, size;
+        String[] colorNames;
+        long offset = 4 * 4 + 2;
+        try {
+            if (header.readInt() != MAGIC) throw new IOException("Not a binary data set: " + dataSetPath);
+            int version = header.readInt();
+            if (version != VERSION) throw new IOException("Unsupported data set version: " + version);
+            fileColors = header.readInt();
+            size = header.readInt();
+            int nbOfNames = header.readShort();
+            colorNames = nbOfNames == 0 ? null : new String[nbOfNames];
+            for (int i = 0; i < nbOfNames; i++) {
+                byte[] name = new byte[header.readShort()];
+                header.readFully(name);
+                colorNames[i] = new String(name, StandardCharsets.UTF_8);
+                offset += 2 + name.length;
+            }
+        } finally {
+            header.close();
+        }
+        if (fileColors > nbOfColors)
+            throw new IOException(String.format("%s: %d colors, only %d expected", dataSetPath, fileColors, nbOfColors));
+
+        RandomAccessFile file = new RandomAccessFile(dataSetPath, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() != offset + 4L * size) throw new IOException("Truncated data set: " + dataSetPath);
+            //the mappings stay valid once the file is closed
+            ByteBuffer rgb = channel.map(FileChannel.MapMode.READ_ONLY, offset, 3L * size);
+            ByteBuffer colors = channel.map(FileChannel.MapMode.READ_ONLY, offset + 3L * size, size);
+            return new DataSet(rgb, colors, size, nbOfColors, colorNames);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the data set in binary format: a header (magic number, version, number of colors, number
+     * of lines, color names), followed by the rgb values (3 bytes per line) and the index of the
+     * color of each line (1 byte per line). Integers are big-endian, the names are preceded by their
+     * length (short) and UTF-8 encoded.
+     *
+     * @param filename the file to write to (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     */
+    public void write(String filename) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nbOfColors);
+            out.writeInt(size);
+            out.writeShort(colorNames == null ? 0 : colorNames.length);
+            if (colorNames != null) {
+                for (String colorName : colorNames) {
+                    byte[] name = colorName.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(name.length);
+                    out.write(name);
+                }
+            }
+            write(out, rgb, 3 * size);
+            write(out, colors, size);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the first bytes of a buffer to a stream
+     *
+     * @param out    the stream
+     * @param buffer the buffer
+     * @param length the number of bytes to be written
+     * @throws IOException if an IO exception occurs
+     */
+    private static void write(OutputStream out, ByteBuffer buffer, int length) throws IOException {
+        ByteBuffer values = buffer.duplicate();
+        values.position(0);
+        byte[] chunk = new byte[8192];
+        for (int i = 0; i < length; i += chunk.length) {
+            int n = Math.min(chunk.length, length - i);
+            values.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * @return the number of lines in the data set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row       the line's index
+     * @param component the rgb component (0: red, 1: green, 2: blue)
+     * @return the rgb value [0-255]
+     */
+    public int getRgb(int row, int component) {
+        return rgb.get(3 * row + component) & 0xFF;
+    }
+
+    /**
+     * @param row       the line's index
+     * @param component the rgb component (0: red, 1: green, 2: blue)
+     * @return the normalized rgb value ([-1,1]), i.e. the network's input
+     */
+    public double getInput(int row, int component) {
+        return NORMALIZED[rgb.get(3 * row + component) & 0xFF];
+    }
+
+    /**
+     * @param row the line's index
+     * @return the index of the expected color of the line (index of the expected output
+     * set to one), -1 if none
+     */
+    public int getColor(int row) {
+        return colors.get(row);
+    }
+
+    /**
+     * @return the length of the expected output vectors
+     */
+    public int getNbOfColors() {
+        return nbOfColors;
+    }
+
+    /**
+     * @return the color names defined in the data set's header, {@code null} if it has none
+     */
+    public String[] getColorNames() {
+        return colorNames;
+    }
+}
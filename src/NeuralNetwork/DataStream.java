@@ -0,0 +1,316 @@
+package NeuralNetwork;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.*;
+
+/**
+ * Reads a data set (csv or binary) from the disk chunk by chunk, so that data sets larger than the
+ * heap can be used for training ({@link NeuralNetwork#setTrainingStream(DataStream)}).
+ * <p>
+ * Only two chunks are held in memory: while a chunk is processed, the next one is read (prefetched)
+ * by a background thread into the other chunk's buffers (double buffering). As such the memory
+ * footprint is fixed ({@code 2 * chunkSize * 4} bytes) whatever the size of the file.
+ * <p>
+ * Csv files can also be parsed by several threads ({@link #DataStream(String, int, int, int)}),
+ * see {@link ParsingPipeline}: training can then start on the first chunks while the following
+ * ones are being parsed concurrently.
+ *
+ * @author Nicolas Dutly
+ */
+public class DataStream implements Closeable {
+
+    /**
+     * Describes the default number of lines per chunk
+     */
+    public static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Size of the buffer the csv files are read into
+     */
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    private final int nbOfColors;
+    private final int chunkSize;
+    /**
+     * Reads the chunks from the file
+     */
+    private final ChunkReader reader;
+    /**
+     * Reads and parses the chunks if several parsing threads are used ({@link #reader} is then unused)
+     */
+    private final ParsingPipeline pipeline;
+    /**
+     * Contains the rgb values and colors of both chunks
+     */
+    private final ByteColumn[] rgb = new ByteColumn[2];
+    private final ByteColumn[] colors = new ByteColumn[2];
+    /**
+     * Describes which chunk's buffers are filled next
+     */
+    private int current;
+    /**
+     * Represents the background thread reading the chunks
+     */
+    private final ExecutorService executor;
+    /**
+     * Represents the chunk being read, {@code null} if the end of the file was reached
+     */
+    private Future<DataSet> pending;
+    /**
+     * Indicates whether no chunk was returned since the data set was opened or rewound
+     */
+    private boolean atStart = true;
+
+    /**
+     * Opens a data set
+     *
+     * @param path       csv or binary file path of the data set
+     * @param nbOfColors number of colors (length of the output vectors)
+     * @param chunkSize  number of lines per chunk
+     * @throws IOException if an IO exception occurs
+     */
+    public DataStream(String path, int nbOfColors, int chunkSize) throws IOException {
+        this(path, nbOfColors, chunkSize, 0);
+    }
+
+    /**
+     * Opens a data set, csv files being parsed by several threads
+     *
+     * @param path        csv or binary file path of the data set
+     * @param nbOfColors  number of colors (length of the output vectors)
+     * @param chunkSize   number of lines per chunk
+     * @param nbOfParsers number of threads parsing the chunks of csv files, 0 to parse them on the
+     *                    prefetching thread (binary files are not parsed)
+     * @throws IOException if an IO exception occurs
+     */
+    public DataStream(String path, int nbOfColors, int chunkSize, int nbOfParsers) throws IOException {
+        if (chunkSize < 1) throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        if (nbOfParsers < 0) throw new IllegalArgumentException("Invalid number of parsers: " + nbOfParsers);
+        this.nbOfColors = nbOfColors;
+        this.chunkSize = chunkSize;
+        boolean binary = DataSet.isBinary(path);
+        if (!binary && nbOfParsers > 0) {
+            pipeline = new ParsingPipeline(path, nbOfColors, chunkSize, nbOfParsers);
+            reader = null;
+            executor = null;
+            return;
+        }
+        pipeline = null;
+        this.reader = binary ? new BinaryChunkReader(path, nbOfColors) : new CsvChunkReader(path, nbOfColors);
+        for (int i = 0; i < 2; i++) {
+            rgb[i] = new ByteColumn(new byte[3 * chunkSize]);
+            colors[i] = new ByteColumn(new byte[chunkSize]);
+        }
+        executor = Executors.newSingleThreadExecutor(ParsingPipeline.daemonThreads("rgb_NN data stream"));
+        pending = prefetch();
+    }
+
+    /**
+     * Returns the next chunk and starts reading the following one. The returned chunk is only valid
+     * until the next call to this method (its buffers are then reused).
+     *
+     * @return the next chunk, {@code null} if the end of the data set was reached
+     * @throws IOException if an IO exception occurs or if the file has a bad format
+     */
+    public DataSet next() throws IOException {
+        if (pipeline != null) return pipeline.next();
+        if (pending == null) return null;
+        atStart = false;
+        DataSet chunk;
+        try {
+            chunk = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading a chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        if (chunk.size() == 0) {
+            pending = null;
+            return null;
+        }
+        pending = prefetch();
+        return chunk;
+    }
+
+    /**
+     * Restarts at the beginning of the data set (e.g. for the next epoch)
+     *
+     * @throws IOException if an IO exception occurs
+     */
+    public void rewind() throws IOException {
+        if (pipeline != null) {
+            pipeline.rewind();
+            return;
+        }
+        if (atStart) return;
+        atStart = true;
+        if (pending != null) {
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading a chunk", e);
+            } catch (ExecutionException e) {
+                //the error is reported again if it persists
+            }
+        }
+        reader.reset();
+        pending = prefetch();
+    }
+
+    /**
+     * Starts reading the next chunk into the buffers not used by the current chunk
+     *
+     * @return the chunk being read
+     */
+    private Future<DataSet> prefetch() {
+        final ByteColumn chunkRgb = rgb[current];
+        final ByteColumn chunkColors = colors[current];
+        current ^= 1;
+        return executor.submit(new Callable<DataSet>() {
+            @Override
+            public DataSet call() throws IOException {
+                chunkRgb.clear();
+                chunkColors.clear();
+                int size = reader.read(chunkRgb, chunkColors, chunkSize);
+                return new DataSet(chunkRgb.array(), chunkColors.array(), size, nbOfColors, null);
+            }
+        });
+    }
+
+    /**
+     * @return the maximal number of lines per chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Stops the background thread and closes the file
+     *
+     * @throws IOException if an IO exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (pipeline != null) {
+            pipeline.close();
+            return;
+        }
+        executor.shutdownNow();
+        reader.close();
+    }
+
+    /**
+     * Reads the lines of a file into columns
+     */
+    private static abstract class ChunkReader implements Closeable {
+        /**
+         * Reads the next lines
+         *
+         * @param rgb     receives the rgb values
+         * @param colors  receives the colors
+         * @param maxRows the maximal number of lines to be read
+         * @return the number of lines read, 0 at the end of the file
+         * @throws IOException if an IO exception occurs or if the file has a bad format
+         */
+        abstract int read(ByteColumn rgb, ByteColumn colors, int maxRows) throws IOException;
+
+        /**
+         * Restarts at the beginning of the file
+         *
+         * @throws IOException if an IO exception occurs
+         */
+        abstract void reset() throws IOException;
+    }
+
+    /**
+     * Reads a csv file through a fixed-size buffer, see {@link CsvLoader}
+     */
+    private static class CsvChunkReader extends ChunkReader {
+        private final String path;
+        private final int nbOfColors;
+        private final FileInputStream in;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private CsvLoader loader;
+        private boolean eof;
+
+        CsvChunkReader(String path, int nbOfColors) throws IOException {
+            this.path = path;
+            this.nbOfColors = nbOfColors;
+            this.in = new FileInputStream(path);
+            this.channel = in.getChannel();
+            this.loader = new CsvLoader(path, nbOfColors, false);
+        }
+
+        @Override
+        int read(ByteColumn rgb, ByteColumn colors, int maxRows) throws IOException {
+            loader.setColumns(rgb, colors);
+            while (colors.size() < maxRows) {
+                while (!eof && buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) eof = true;
+                }
+                buffer.flip();
+                int parsed = loader.parse(buffer, eof, maxRows);
+                buffer.position(parsed);
+                buffer.compact();
+                if (eof && buffer.position() == 0) break;
+                if (parsed == 0 && colors.size() < maxRows)
+                    throw new IOException(path + ": line longer than " + BUFFER_SIZE + " bytes");
+            }
+            return colors.size();
+        }
+
+        @Override
+        void reset() throws IOException {
+            channel.position(0);
+            buffer.clear();
+            eof = false;
+            loader = new CsvLoader(path, nbOfColors, false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a binary data set, which is memory-mapped, see {@link DataSet#load(String, int)}
+     */
+    private static class BinaryChunkReader extends ChunkReader {
+        private final DataSet dataSet;
+        private int row;
+
+        BinaryChunkReader(String path, int nbOfColors) throws IOException {
+            dataSet = DataSet.load(path, nbOfColors);
+        }
+
+        @Override
+        int read(ByteColumn rgb, ByteColumn colors, int maxRows) {
+            int size = Math.min(maxRows, dataSet.size() - row);
+            for (int i = row; i < row + size; i++) {
+                rgb.add((byte) dataSet.getRgb(i, 0));
+                rgb.add((byte) dataSet.getRgb(i, 1));
+                rgb.add((byte) dataSet.getRgb(i, 2));
+                colors.add((byte) dataSet.getColor(i));
+            }
+            row += size;
+            return size;
+        }
+
+        @Override
+        void reset() {
+            row = 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
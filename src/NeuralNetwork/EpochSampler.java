@@ -0,0 +1,83 @@
+package NeuralNetwork;
+
+import java.util.Random;
+
+/**
+ * Generates the order in which the rows of a data set are fed through the
+ * network during an epoch.
+ * <p>
+ * Every row is visited exactly once per epoch. The order is a random permutation
+ * generated by shuffling a primitive index array (Fisher-Yates), which takes
+ * O(n) time per epoch and doesn't allocate anything after construction.
+ * Passing a seeded {@link Random} makes the order reproducible.
+ *
+ * @author Nicolas Dutly
+ */
+public class EpochSampler {
+    /**
+     * Contains the row indices, in the order of the current epoch
+     */
+    private final int[] order;
+    /**
+     * Represents the random number generator used to shuffle the rows
+     */
+    private final Random random;
+
+    /**
+     * Creates a sampler over {@code nbOfRows} rows
+     *
+     * @param nbOfRows number of rows in the data set
+     * @param random   the random number generator used to shuffle the rows
+     */
+    public EpochSampler(int nbOfRows, Random random) {
+        this.order = new int[nbOfRows];
+        for (int i = 0; i < nbOfRows; i++) {
+            order[i] = i;
+        }
+        this.random = random;
+    }
+
+    /**
+     * Shuffles the rows for the next epoch.
+     * The returned array is reused by the next call to this method.
+     *
+     * @return the row indices in the order they are to be processed
+     */
+    public int[] shuffle() {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    /**
+     * Shuffles the first {@code nbOfRows} rows only (e.g. the rows of a chunk smaller than
+     * the sampler), the other elements of the returned array are to be ignored.
+     * The returned array is reused by the next call to this method.
+     *
+     * @param nbOfRows number of rows to be shuffled, at most {@link #getNbOfRows()}
+     * @return the row indices in the order they are to be processed
+     */
+    public int[] shuffle(int nbOfRows) {
+        for (int i = 0; i < nbOfRows; i++) {
+            order[i] = i;
+        }
+        for (int i = nbOfRows - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    /**
+     * @return the number of rows sampled per epoch
+     */
+    public int getNbOfRows() {
+        return order.length;
+    }
+}
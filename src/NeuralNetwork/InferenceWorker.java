@@ -0,0 +1,116 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.HiddenLayer;
+import NeuralNetwork.Layers.InputLayer;
+import NeuralNetwork.Layers.Layer;
+import NeuralNetwork.Layers.OutputLayer;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Classifies a stripe of the pixels of a frame. The pixels are fed through replicas of the
+ * network's layers in chunks of {@link #CHUNK} pixels (mini-batches), as such the weighted
+ * inputs of a chunk are calculated with matrix-matrix products.
+ * <p>
+ * Every worker owns its layers' buffers, which are reused from one frame to the next,
+ * as such several workers can classify stripes of the same frame concurrently.
+ *
+ * @author Nicolas Dutly
+ */
+class InferenceWorker implements Callable<Void> {
+
+    /**
+     * Number of pixels fed through the network at once
+     */
+    static final int CHUNK = 256;
+    private final InputLayer inputLayer;
+    private final HiddenLayer[] hiddenLayers;
+    private final OutputLayer outputLayer;
+    /**
+     * Describes the stripe: the pixels {@code from} to {@code to - 1} of {@link #pixels}
+     */
+    private PixelSource pixels;
+    private int from, to;
+    /**
+     * Receives the index of the color of each pixel (if not {@code null})
+     */
+    private byte[] classes;
+    /**
+     * Receives the probability of each color of each pixel (if not {@code null}),
+     * one plane of {@link #nbOfPixels} elements per color
+     */
+    private double[] probabilities;
+    private int nbOfPixels;
+
+    /**
+     * Creates a worker using replicas of the given layers
+     *
+     * @param inputLayer   the network's input layer
+     * @param hiddenLayers the network's hidden layers
+     * @param outputLayer  the network's output layer
+     */
+    InferenceWorker(InputLayer inputLayer, HiddenLayer[] hiddenLayers, OutputLayer outputLayer) {
+        this.inputLayer = (InputLayer) inputLayer.replicate(null);
+        this.inputLayer.setBatchSize(CHUNK);
+        this.hiddenLayers = new HiddenLayer[hiddenLayers.length];
+        Layer prevLayer = this.inputLayer;
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            this.hiddenLayers[l] = (HiddenLayer) hiddenLayers[l].replicate(prevLayer);
+            this.hiddenLayers[l].setBatchSize(CHUNK);
+            prevLayer = this.hiddenLayers[l];
+        }
+        this.outputLayer = outputLayer.replicate(prevLayer);
+        this.outputLayer.setBatchSize(CHUNK);
+    }
+
+    /**
+     * Specifies the pixels to be classified on the next call and where the results are written to
+     *
+     * @param pixels        the frame's pixels
+     * @param nbOfPixels    number of pixels in the frame
+     * @param from          index of the first pixel of the stripe
+     * @param to            index after the last pixel of the stripe
+     * @param classes       receives the index of the color of each pixel (optional)
+     * @param probabilities receives the probability planes (optional)
+     */
+    void setStripe(PixelSource pixels, int nbOfPixels, int from, int to, byte[] classes, double[] probabilities) {
+        this.pixels = pixels;
+        this.nbOfPixels = nbOfPixels;
+        this.from = from;
+        this.to = to;
+        this.classes = classes;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * Classifies the stripe
+     */
+    @Override
+    public Void call() {
+        int nbOfColors = outputLayer.getNbOfNeurons();
+        double[] outputs = outputLayer.getBatchOutputs();
+        for (int first = from; first < to; first += CHUNK) {
+            int size = Math.min(CHUNK, to - first);
+            for (int s = 0; s < size; s++) {
+                int rgb = pixels.getRgb(first + s);
+                inputLayer.setBatchInputs(s, DataSet.NORMALIZED[(rgb >> 16) & 0xFF], DataSet.NORMALIZED[(rgb >> 8) & 0xFF],
+                        DataSet.NORMALIZED[rgb & 0xFF]);
+            }
+            for (HiddenLayer hiddenLayer : hiddenLayers) {
+                hiddenLayer.processBatch(size);
+            }
+            if (classes != null) {
+                outputLayer.classifyBatch(size, classes, first);
+            }
+            if (probabilities != null) {
+                outputLayer.processBatch(size);
+                for (int s = 0; s < size; s++) {
+                    for (int k = 0; k < nbOfColors; k++) {
+                        probabilities[k * nbOfPixels + first + s] = outputs[s * nbOfColors + k];
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,243 @@
+package NeuralNetwork.Layers;
+
+/**
+ * Describes the activation function of the neurons of a hidden layer, its derivative (used in
+ * back-propagation) and the equivalent C function (used by the C source writers), in double or
+ * single precision. The single precision functions don't use libm: they call
+ * {@code fast_expf(float)}, which is defined by the single precision C source writer.
+ * <p>
+ * The derivatives are expressed as functions of the neuron's output rather than of its weighted
+ * input, as the outputs are already stored by the layers.
+ *
+ * @author Nicolas Dutly
+ */
+public enum Activation {
+
+    /**
+     * Logistic function {@code 1 / (1 + e^-x)}
+     */
+    SIGMOID("sigmoid") {
+        @Override
+        public double activate(double x) {
+            return (1. / (1 + Math.exp(-x)));
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y * (1 - y);
+        }
+
+        @Override
+        String cBody(boolean singlePrecision) {
+            if (singlePrecision) return "    return 1.f / (1.f + fast_expf(-x));\n";
+            return "    return 1. / (1 + exp(-x));\n";
+        }
+    },
+    /**
+     * Logistic function approximated by linear interpolation in a table of {@link #TABLE_SIZE}
+     * intervals covering [-{@link #TABLE_RANGE}, {@link #TABLE_RANGE}], saturated outside of it.
+     * The absolute error is below 4E-4 (3.4E-4 due to the saturation, 5E-5 due to the
+     * interpolation), the cost of {@code Math.exp} is replaced by a table lookup.
+     */
+    FAST_SIGMOID("fast_sigmoid") {
+        @Override
+        public double activate(double x) {
+            double t = (x + TABLE_RANGE) * (TABLE_SIZE / (2. * TABLE_RANGE));
+            if (t <= 0) return SIGMOID_TABLE[0];
+            if (t >= TABLE_SIZE) return SIGMOID_TABLE[TABLE_SIZE];
+            int i = (int) t;
+            return SIGMOID_TABLE[i] + (t - i) * (SIGMOID_TABLE[i + 1] - SIGMOID_TABLE[i]);
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y * (1 - y);
+        }
+
+        @Override
+        String cDeclarations(boolean singlePrecision) {
+            StringBuilder sb = new StringBuilder("static const ").append(singlePrecision ? "float" : "double")
+                    .append(" sigmoid_table[").append(TABLE_SIZE + 1).append("] = {");
+            for (int i = 0; i <= TABLE_SIZE; i++) {
+                sb.append(i % 8 == 0 ? "\n    " : " ");
+                if (singlePrecision) sb.append((float) SIGMOID_TABLE[i]).append("f");
+                else sb.append(SIGMOID_TABLE[i]);
+                sb.append(i < TABLE_SIZE ? "," : "");
+            }
+            return sb.append("\n};\n").toString();
+        }
+
+        @Override
+        String cBody(boolean singlePrecision) {
+            return "    " + (singlePrecision ? "float" : "double") + " t = (x + " + TABLE_RANGE + (singlePrecision ? "f" : "")
+                    + ") * " + TABLE_SIZE / (2. * TABLE_RANGE) + (singlePrecision ? "f" : "") + ";\n" +
+                    "    if (t <= 0) return sigmoid_table[0];\n" +
+                    "    if (t >= " + TABLE_SIZE + ") return sigmoid_table[" + TABLE_SIZE + "];\n" +
+                    "    int i = (int) t;\n" +
+                    "    return sigmoid_table[i] + (t - i) * (sigmoid_table[i + 1] - sigmoid_table[i]);\n";
+        }
+    },
+    /**
+     * Hyperbolic tangent, outputs in [-1,1]
+     */
+    TANH("tanh") {
+        @Override
+        public double activate(double x) {
+            return Math.tanh(x);
+        }
+
+        @Override
+        public double derivative(double y) {
+            return 1 - y * y;
+        }
+
+        @Override
+        String cBody(boolean singlePrecision) {
+            if (singlePrecision) return "    return 2.f / (1.f + fast_expf(-2.f * x)) - 1.f;\n";
+            return "    return tanh(x);\n";
+        }
+    },
+    /**
+     * Rectified linear unit {@code max(0, x)}
+     */
+    RELU("relu") {
+        @Override
+        public double activate(double x) {
+            return x > 0 ? x : 0;
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y > 0 ? 1 : 0;
+        }
+
+        @Override
+        String cBody(boolean singlePrecision) {
+            return "    return x > 0 ? x : 0;\n";
+        }
+    },
+    /**
+     * Leaky rectified linear unit, the slope of the negative part being {@link #LEAK}
+     */
+    LEAKY_RELU("leaky_relu") {
+        @Override
+        public double activate(double x) {
+            return x > 0 ? x : LEAK * x;
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y > 0 ? 1 : LEAK;
+        }
+
+        @Override
+        String cBody(boolean singlePrecision) {
+            return "    return x > 0 ? x : " + LEAK + (singlePrecision ? "f" : "") + " * x;\n";
+        }
+    };
+
+    /**
+     * Describes the slope of the negative part of {@link #LEAKY_RELU}
+     */
+    public static final double LEAK = 0.01;
+    /**
+     * Describe the table used by {@link #FAST_SIGMOID}: number of intervals and half the covered range
+     */
+    static final int TABLE_SIZE = 256;
+    static final double TABLE_RANGE = 8;
+    /**
+     * Contains the logistic function at {@code TABLE_SIZE + 1} evenly spaced points of
+     * [-TABLE_RANGE, TABLE_RANGE]
+     */
+    private static final double[] SIGMOID_TABLE = new double[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            SIGMOID_TABLE[i] = 1. / (1 + Math.exp(-(i * (2. * TABLE_RANGE / TABLE_SIZE) - TABLE_RANGE)));
+        }
+    }
+
+    /**
+     * Describes the function's name in the CLI and the model files
+     */
+    private final String name;
+
+    Activation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param x the neuron's weighted input
+     * @return the neuron's output
+     */
+    public abstract double activate(double x);
+
+    /**
+     * @param y the neuron's output
+     * @return the derivative of the activation function at the corresponding weighted input
+     */
+    public abstract double derivative(double y);
+
+    /**
+     * @param singlePrecision whether {@code x} and the result are floats rather than doubles
+     * @return the body of the C function computing the activation of {@code x}
+     */
+    abstract String cBody(boolean singlePrecision);
+
+    /**
+     * @param singlePrecision whether the declarations are used by the single precision function
+     * @return the C declarations needed by the C function (e.g. tables), empty if none
+     */
+    String cDeclarations(boolean singlePrecision) {
+        return "";
+    }
+
+    /**
+     * @return the C definition of the activation function ({@code static double activate_<name>(double x)}),
+     * preceded by its declarations, if any
+     */
+    public String toC() {
+        return toC(false);
+    }
+
+    /**
+     * @param singlePrecision whether the function uses floats ({@code static float activate_<name>(float x)},
+     *                        libm-free) rather than doubles
+     * @return the C definition of the activation function, preceded by its declarations, if any
+     */
+    public String toC(boolean singlePrecision) {
+        String type = singlePrecision ? "float" : "double";
+        return cDeclarations(singlePrecision) + "static " + type + " " + getCFunction() + "(" + type + " x){\n"
+                + cBody(singlePrecision) + "}\n";
+    }
+
+    /**
+     * @return the name of the C function defined by {@link #toC()} (prefixed, as e.g. {@code tanh}
+     * is defined by math.h)
+     */
+    public String getCFunction() {
+        return "activate_" + name;
+    }
+
+    /**
+     * @return the function's name (e.g. {@code fast_sigmoid})
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the function's name (case insensitive, dashes are accepted instead of underscores,
+     *             e.g. {@code leaky-relu})
+     * @return the activation function
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Activation forName(String name) {
+        String normalized = name.toLowerCase().replace('-', '_');
+        for (Activation activation : values()) {
+            if (activation.name.equals(normalized)) return activation;
+        }
+        throw new IllegalArgumentException("Unknown activation function: " + name
+                + " (expected sigmoid, fast-sigmoid, tanh, relu or leaky-relu)");
+    }
+}
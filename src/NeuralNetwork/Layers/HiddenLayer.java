@@ -1,7 +1,5 @@
 package NeuralNetwork.Layers;
 
-import Jama.Matrix;
-
 /**
  * Describes the network's hidden layer.
  *
@@ -19,23 +17,39 @@ public class HiddenLayer extends Layer {
 
     /**
      * Calculates the delta for the hidden layer using SGD and as such
-     * the sigmoid derivatives
+     * the derivatives of the activation function (sigmoid by default)
      */
     @Override
     public void calculate_delta() {
-        double[] tmp;
-        double weighted_delta_sum;
-        int nbOfNextNeurons;
-        weighted_delta_sum = 0;
-        tmp = new double[nbOfNeurons];
-        //if next layer is a HL, don't iterate over the last Neuron (Layer's bias)
-        nbOfNextNeurons = (nextLayer.getClass().getCanonicalName().equals("NeuralNetwork.Layers.OutputLayer")) ? nextLayer.getNbOfNeurons() : nextLayer.getNbOfNeurons() - 1;
+        //don't iterate over the next layer's bias (if any), it has no weights
+        Kernels.get().gemvT(nbOfNeurons, nextLayer.getNbOfWeightedNeurons(), nextLayer.weights, nextLayer.nbOfInputs, nextLayer.delta, delta);
+        //the weighted delta sum carries over from one neuron to the next
+        double weighted_delta_sum = 0;
         for (int j = 0; j < nbOfNeurons; j++) {
-            for (int k = 0; k < nbOfNextNeurons; k++) {
-                weighted_delta_sum += nextLayer.getNeurons()[k].getSynapse_weights().get(j, 0) * nextLayer.getDelta().get(k, 0);
+            weighted_delta_sum += delta[j];
+            delta[j] = activation.derivative(outputs[j]) * weighted_delta_sum;
+        }
+    }
+
+    /**
+     * Same as {@link #calculate_delta()}, for every sample of the mini-batch.
+     * The weighted delta sums of all samples are calculated with a single matrix-matrix product
+     * {@code S = D * W}, D containing the next layer's deltas (one row per sample) and W its weights.
+     *
+     * @param size number of samples in the mini-batch
+     */
+    @Override
+    public void calculateBatchDelta(int size) {
+        Kernels.get().gemmNN(size, nbOfNeurons, nextLayer.getNbOfWeightedNeurons(),
+                nextLayer.batchDelta, nextLayer.nbOfNeurons, nextLayer.weights, nextLayer.nbOfInputs, batchDelta, nbOfNeurons);
+        for (int s = 0; s < size; s++) {
+            int row = s * nbOfNeurons;
+            //the weighted delta sum carries over from one neuron to the next, as in calculate_delta()
+            double weighted_delta_sum = 0;
+            for (int j = 0; j < nbOfNeurons; j++) {
+                weighted_delta_sum += batchDelta[row + j];
+                batchDelta[row + j] = activation.derivative(batchOutputs[row + j]) * weighted_delta_sum;
             }
-            tmp[j] = this.neurons[j].getNeuronOutput() * (1 - this.getNeurons()[j].getNeuronOutput()) * weighted_delta_sum;
         }
-        this.delta = new Matrix(tmp, nbOfNeurons);
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,6 @@
 package NeuralNetwork.Layers;
 
-import NeuralNetwork.Neuron.BiasNeuron;
-import NeuralNetwork.Neuron.InputNeuron;
-import NeuralNetwork.Neuron.Neuron;
+import NeuralNetwork.NeuralNetwork;
 
 /**
  * Describes the network's input layer
@@ -12,28 +10,25 @@ import NeuralNetwork.Neuron.Neuron;
 public class InputLayer extends Layer {
 
     /**
-     * Creates an input layer. Note that as the neuron generation usually
+     * Creates an input layer. Note that as the buffer allocation usually
      * takes place in {@link #setPrevLayer(Layer)} (so basically never for
-     * the input layer), as such the layers Neurons are generated in this constructor.
+     * the input layer), as such the layers output buffer is allocated in this constructor.
      *
      * @param nbOfInputs the network's number of inputs
      */
     public InputLayer(int nbOfInputs) {
         super(nbOfInputs);
-        generateNeurons();
+        allocateBuffers();
     }
 
     /**
-     * Overrides the standard {@code generateNeurons()}
-     * function to create {@code InputNeuron}
+     * The input layer has no weights, as such only its outputs
+     * (its inputs and the bias) are stored
      */
     @Override
-    protected void generateNeurons() {
-        neurons = new Neuron[nbOfNeurons];
-        for (int i = 0; i < nbOfNeurons - 1; i++) {
-            neurons[i] = new InputNeuron();
-        }
-        neurons[nbOfNeurons - 1] = new BiasNeuron();
+    protected void allocateBuffers() {
+        outputs = new double[nbOfNeurons];
+        outputs[nbOfNeurons - 1] = NeuralNetwork.BIAS;
     }
 
     /**
@@ -42,8 +37,62 @@ public class InputLayer extends Layer {
      * @param inputs the layers input vector
      */
     public void setInputs(double[] inputs) {
-        for (int i = 0; i < this.neurons.length - 1; i++) {
-            this.neurons[i].setInput(inputs[i]);
+        for (int i = 0; i < this.outputs.length - 1; i++) {
+            this.outputs[i] = inputs[i];
+        }
+    }
+
+    /**
+     * Sets the input layer's inputs (rgb values)
+     *
+     * @param red   the red input
+     * @param green the green input
+     * @param blue  the blue input
+     */
+    public void setInputs(double red, double green, double blue) {
+        this.outputs[0] = red;
+        this.outputs[1] = green;
+        this.outputs[2] = blue;
+    }
+
+    /**
+     * Sets the input vector of a sample of the mini-batch.
+     *
+     * @param sample the sample's index in the mini-batch
+     * @param inputs the sample's input vector
+     * @see #setBatchSize(int)
+     */
+    public void setBatchInputs(int sample, double[] inputs) {
+        System.arraycopy(inputs, 0, batchOutputs, sample * nbOfNeurons, nbOfNeurons - 1);
+    }
+
+    /**
+     * Sets the inputs (rgb values) of a sample of the mini-batch.
+     *
+     * @param sample the sample's index in the mini-batch
+     * @param red    the red input
+     * @param green  the green input
+     * @param blue   the blue input
+     */
+    public void setBatchInputs(int sample, double red, double green, double blue) {
+        int row = sample * nbOfNeurons;
+        batchOutputs[row] = red;
+        batchOutputs[row + 1] = green;
+        batchOutputs[row + 2] = blue;
+    }
+
+    /**
+     * Allocates the input buffer of the mini-batch (the input layer has no weights,
+     * as such only its outputs are stored)
+     *
+     * @param batchSize the maximal number of samples in a mini-batch
+     */
+    @Override
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        batchOutputs = new double[batchSize * nbOfNeurons];
+        for (int s = 0; s < batchSize; s++) {
+            batchOutputs[s * nbOfNeurons + nbOfNeurons - 1] = NeuralNetwork.BIAS;
         }
     }
 
@@ -54,4 +103,11 @@ public class InputLayer extends Layer {
     public void calculate_delta() {
     }
 
+    /**
+     * Does not do anything as the Layer is an input layer
+     */
+    @Override
+    public void calculateBatchDelta(int size) {
+    }
+
 }
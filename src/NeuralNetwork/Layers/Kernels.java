@@ -0,0 +1,259 @@
+package NeuralNetwork.Layers;
+
+/**
+ * Matrix-vector and matrix-matrix products used by the layers, see {@link #get()}.
+ * <p>
+ * All matrices are stored row-major in flat arrays, {@code lda}, {@code ldb} and {@code ldc}
+ * being the length of a row of the corresponding matrix (which may be larger than the
+ * number of columns used, e.g. when the last column holds the bias).
+ * The loops are ordered so that the innermost loop always walks contiguous memory.
+ * <p>
+ * This class is the scalar backend. If the sources located in {@code vector/} are on the class path
+ * and the {@code jdk.incubator.vector} module is available (Java 16+, {@code --add-modules jdk.incubator.vector}),
+ * {@link #VECTOR_KERNELS} overrides the products using SIMD instructions. Otherwise the layers
+ * fall back to this class.
+ *
+ * @author Nicolas Dutly
+ */
+public class Kernels {
+
+    /**
+     * Name of the class implementing the products with the Java Vector API
+     */
+    public static final String VECTOR_KERNELS = "NeuralNetwork.Layers.VectorKernels";
+
+    /**
+     * Number of rows of {@code b} processed together in {@link #gemmNT}, so that they
+     * stay in the cache while every row of {@code a} is multiplied with them
+     */
+    protected static final int BLOCK = 64;
+
+    /**
+     * The scalar backend
+     */
+    public static final Kernels SCALAR = new Kernels();
+
+    /**
+     * The vector backend, null if it is not available
+     */
+    private static final Kernels VECTOR = loadVectorKernels();
+
+    /**
+     * The backend used by the layers
+     */
+    private static Kernels kernels = VECTOR != null ? VECTOR : SCALAR;
+
+    protected Kernels() {
+    }
+
+    /**
+     * @return the vector backend or null if either its class or the {@code jdk.incubator.vector} module
+     * is missing, or if the CPU has no SIMD instructions for doubles
+     */
+    private static Kernels loadVectorKernels() {
+        try {
+            return (Kernels) Class.forName(VECTOR_KERNELS).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            //the class is missing or its constructor failed (no SIMD instructions)
+            return null;
+        } catch (LinkageError e) {
+            //the module is missing (NoClassDefFoundError)
+            return null;
+        }
+    }
+
+    /**
+     * @return the backend used by the layers (vector if available, scalar otherwise, unless set with {@link #use(Kernels)})
+     */
+    public static Kernels get() {
+        return kernels;
+    }
+
+    /**
+     * Sets the backend used by the layers. Must not be called while a network is processing samples.
+     *
+     * @param kernels the backend
+     */
+    public static void use(Kernels kernels) {
+        Kernels.kernels = kernels;
+    }
+
+    /**
+     * @param name either scalar, vector or auto (vector if available, scalar otherwise)
+     * @return the corresponding backend
+     * @throws IllegalArgumentException if the name is unknown or if the vector backend is not available
+     */
+    public static Kernels forName(String name) {
+        switch (name.toLowerCase()) {
+            case "scalar":
+                return SCALAR;
+            case "vector":
+                if (VECTOR == null) {
+                    throw new IllegalArgumentException("Vector kernels unavailable: compile vector/ and run with --add-modules jdk.incubator.vector (Java 16+)");
+                }
+                return VECTOR;
+            case "auto":
+                return VECTOR != null ? VECTOR : SCALAR;
+            default:
+                throw new IllegalArgumentException("Unknown kernels: " + name + " (expected scalar, vector or auto)");
+        }
+    }
+
+    /**
+     * @return a short description of the backend
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Computes {@code y = A * x}, where A is (m x k)
+     *
+     * @param m   number of rows of A
+     * @param k   number of columns of A
+     * @param a   matrix A
+     * @param lda row length of A
+     * @param x   vector x (k elements)
+     * @param y   vector y (overwritten, m elements)
+     */
+    public void gemv(int m, int k, double[] a, int lda, double[] x, double[] y) {
+        for (int i = 0; i < m; i++) {
+            int aRow = i * lda;
+            double sum = 0;
+            for (int p = 0; p < k; p++) {
+                sum += x[p] * a[aRow + p];
+            }
+            y[i] = sum;
+        }
+    }
+
+    /**
+     * Computes {@code y = A^T * x}, where A is (k x m)
+     *
+     * @param m   number of columns of A
+     * @param k   number of rows of A
+     * @param a   matrix A
+     * @param lda row length of A
+     * @param x   vector x (k elements)
+     * @param y   vector y (overwritten, m elements)
+     */
+    public void gemvT(int m, int k, double[] a, int lda, double[] x, double[] y) {
+        for (int j = 0; j < m; j++) {
+            y[j] = 0;
+        }
+        for (int p = 0; p < k; p++) {
+            double xp = x[p];
+            int aRow = p * lda;
+            for (int j = 0; j < m; j++) {
+                y[j] += a[aRow + j] * xp;
+            }
+        }
+    }
+
+    /**
+     * Computes {@code A = x * y^T}, where A is (m x n)
+     *
+     * @param m   number of elements of x and rows of A
+     * @param n   number of elements of y and columns of A
+     * @param x   vector x
+     * @param y   vector y
+     * @param a   matrix A (overwritten)
+     * @param lda row length of A
+     */
+    public void outer(int m, int n, double[] x, double[] y, double[] a, int lda) {
+        for (int i = 0; i < m; i++) {
+            double xi = x[i];
+            int aRow = i * lda;
+            for (int j = 0; j < n; j++) {
+                a[aRow + j] = xi * y[j];
+            }
+        }
+    }
+
+    /**
+     * Computes {@code C = A * B^T}, where A is (m x k) and B is (n x k)
+     *
+     * @param m   number of rows of A and C
+     * @param n   number of rows of B and columns of C
+     * @param k   number of columns of A and B
+     * @param a   matrix A
+     * @param lda row length of A
+     * @param b   matrix B
+     * @param ldb row length of B
+     * @param c   matrix C (overwritten)
+     * @param ldc row length of C
+     */
+    public void gemmNT(int m, int n, int k, double[] a, int lda, double[] b, int ldb, double[] c, int ldc) {
+        for (int j0 = 0; j0 < n; j0 += BLOCK) {
+            int j1 = Math.min(n, j0 + BLOCK);
+            for (int i = 0; i < m; i++) {
+                int aRow = i * lda;
+                int cRow = i * ldc;
+                for (int j = j0; j < j1; j++) {
+                    int bRow = j * ldb;
+                    double sum = 0;
+                    for (int p = 0; p < k; p++) {
+                        sum += a[aRow + p] * b[bRow + p];
+                    }
+                    c[cRow + j] = sum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes {@code C = A * B}, where A is (m x k) and B is (k x n)
+     *
+     * @param m   number of rows of A and C
+     * @param n   number of columns of B and C
+     * @param k   number of columns of A and rows of B
+     * @param a   matrix A
+     * @param lda row length of A
+     * @param b   matrix B
+     * @param ldb row length of B
+     * @param c   matrix C (overwritten)
+     * @param ldc row length of C
+     */
+    public void gemmNN(int m, int n, int k, double[] a, int lda, double[] b, int ldb, double[] c, int ldc) {
+        for (int i = 0; i < m; i++) {
+            int cRow = i * ldc;
+            for (int j = 0; j < n; j++) {
+                c[cRow + j] = 0;
+            }
+            for (int p = 0; p < k; p++) {
+                double aip = a[i * lda + p];
+                int bRow = p * ldb;
+                for (int j = 0; j < n; j++) {
+                    c[cRow + j] += aip * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes {@code C += A^T * B}, where A is (k x m) and B is (k x n)
+     *
+     * @param m   number of columns of A and rows of C
+     * @param n   number of columns of B and C
+     * @param k   number of rows of A and B
+     * @param a   matrix A
+     * @param lda row length of A
+     * @param b   matrix B
+     * @param ldb row length of B
+     * @param c   matrix C (accumulated into)
+     * @param ldc row length of C
+     */
+    public void gemmTN(int m, int n, int k, double[] a, int lda, double[] b, int ldb, double[] c, int ldc) {
+        for (int p = 0; p < k; p++) {
+            int aRow = p * lda;
+            int bRow = p * ldb;
+            for (int i = 0; i < m; i++) {
+                double api = a[aRow + i];
+                int cRow = i * ldc;
+                for (int j = 0; j < n; j++) {
+                    c[cRow + j] += api * b[bRow + j];
+                }
+            }
+        }
+    }
+}
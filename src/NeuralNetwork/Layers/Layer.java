@@ -1,31 +1,98 @@
 package NeuralNetwork.Layers;
 
-import Jama.Matrix;
-import NeuralNetwork.Neuron.BiasNeuron;
-import NeuralNetwork.Neuron.Neuron;
+import NeuralNetwork.NeuralNetwork;
+import NeuralNetwork.Optimizers.Optimizer;
+import NeuralNetwork.Optimizers.Sgd;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Describes Layer in the Neural network
+ * Describes Layer in the Neural network.
+ * <p>
+ * The synapse weights of all neurons in the layer are stored in a single contiguous
+ * row-major array ({@code weights[k * nbOfInputs + j]} is the weight of the synapse
+ * connecting the input {@code j} to the neuron {@code k}). The neuron outputs, weighted inputs
+ * and deltas are stored in buffers allocated once when the layer is connected, so that
+ * {@link #process()}, {@link #calculate_delta()} and {@link #adjustLayerWeights()} don't allocate
+ * any memory. Layers can be replicated ({@link #replicate(Layer)}) to process samples on several
+ * threads: the replicas share the weights but have their own buffers.
+ * <p>
+ * The weights are adjusted by the layer's {@link Optimizer} (plain gradient descent by default),
+ * whose state is shared with the replicas.
  *
  * @author Nicolas Dutly
  */
-abstract public class Layer {
+abstract public class Layer implements Cloneable {
 
     /**
-     * Describes an array of neurons, containing
-     * the neurons in the output layer
+     * Describes the default learning rate
+     */
+    public static final double LEARNING_RATE = 1E-3;
+    /**
+     * Describes the rule used to adjust the weights, created for the layer's weights
+     * in {@link #generateWeights(Random)} (shared with the replicas)
+     */
+    protected Optimizer optimizer = new Sgd(LEARNING_RATE);
+    /**
+     * Describes the activation function of the layer's neurons
      */
-    protected Neuron[] neurons;
+    protected Activation activation = Activation.SIGMOID;
     /**
      * Describes the number of neurons
-     * in the Layer.
+     * in the Layer (including the bias neuron, if any).
      */
     protected int nbOfNeurons;
     /**
-     * Describes the Matrix containing the delta
+     * Describes the number of inputs of every neuron
+     * in the layer (number of neurons in the previous layer)
+     */
+    protected int nbOfInputs;
+    /**
+     * Describes the synapse weights of the layer's neurons,
+     * stored row-major (one row of {@link #nbOfInputs} weights per neuron).
+     * The bias neuron has no weights.
+     */
+    protected double[] weights;
+    /**
+     * Contains the sum of the inputs multiplied with their respective weights
+     * for each neuron
+     */
+    protected double[] weightedInput;
+    /**
+     * Contains the output of each neuron. The last element is the
+     * bias neuron's output (if any), which is always {@link NeuralNetwork#BIAS}
+     */
+    protected double[] outputs;
+    /**
+     * Describes the delta
      * for each neuron (used in back-propagation)
      */
-    protected Matrix delta;
+    protected double[] delta;
+    /**
+     * Describes the number of samples processed at once in mini-batch mode
+     * (0 if the batch buffers have not been allocated)
+     *
+     * @see #setBatchSize(int)
+     */
+    protected int batchSize;
+    /**
+     * Same as {@link #weightedInput}, for each sample of a mini-batch (one row per sample)
+     */
+    protected double[] batchWeightedInput;
+    /**
+     * Same as {@link #outputs}, for each sample of a mini-batch (one row per sample)
+     */
+    protected double[] batchOutputs;
+    /**
+     * Same as {@link #delta}, for each sample of a mini-batch (one row per sample)
+     */
+    protected double[] batchDelta;
+    /**
+     * Accumulates the weight adjustments of the samples of a mini-batch
+     * until they are applied by the optimizer (same layout as {@link #weights})
+     */
+    protected double[] weightDelta;
     /**
      * Describes the previous layer
      * of type HiddenLayer
@@ -45,17 +112,37 @@ abstract public class Layer {
     }
 
     /**
-     * Generates the neurons in the layer, with a bias neuron.
-     * This method is overridden by the output layer,
-     * as it contains no bias
-     * @see BiasNeuron
+     * Generates null centered random weights between
+     * [-1/sqrt(n),1/sqrt(n)], where n the number of neuron inputs,
+     * and allocates the layer's buffers.
+     *
+     * @param random the random number generator used to initialize the weights
+     */
+    protected void generateWeights(Random random) {
+        nbOfInputs = prevLayer.getNbOfNeurons();
+        weights = new double[getNbOfWeightedNeurons() * nbOfInputs];
+        double min = -1. / Math.sqrt(nbOfInputs);
+        double max = 1. / Math.sqrt(nbOfInputs) + 0.01;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = min + random.nextDouble() * (max - min);
+        }
+        setOptimizer(optimizer);
+        allocateBuffers();
+    }
+
+    /**
+     * Allocates the buffers containing the weighted inputs, outputs and deltas of the
+     * neurons. The last neuron of the layer is a bias neuron, with a static output
+     * of {@link NeuralNetwork#BIAS}.
      */
-    protected void generateNeurons() {
-        neurons = new Neuron[nbOfNeurons];
-        for (int i = 0; i < nbOfNeurons - 1; i++) {
-            neurons[i] = new Neuron(prevLayer.getNbOfNeurons());
+    protected void allocateBuffers() {
+        weightedInput = new double[nbOfNeurons];
+        outputs = new double[nbOfNeurons];
+        delta = new double[nbOfNeurons];
+        weightDelta = new double[weights.length];
+        for (int k = getNbOfWeightedNeurons(); k < nbOfNeurons; k++) {
+            outputs[k] = NeuralNetwork.BIAS;
         }
-        neurons[nbOfNeurons - 1] = new BiasNeuron();
     }
 
     /**
@@ -68,36 +155,194 @@ abstract public class Layer {
 
     /**
      * Adjusts the weights of the individual synapses using the delta calculated in
+     * {@link #calculate_delta()}: the adjustments are stored in {@link #weightDelta},
+     * then applied by the optimizer
      *
      * @see #calculate_delta()
      */
     public void adjustLayerWeights() {
-        double[] tmpw;
-        tmpw = new double[prevLayer.getNbOfNeurons()];
-        for (int k = 0; k < nbOfNeurons; k++) {
-            for (int j = 0; j < prevLayer.getNbOfNeurons(); j++) {
-                tmpw[j] = delta.get(k, 0) * prevLayer.getNeurons()[j].getNeuronOutput();
-            }
-            Matrix weightDelta = new Matrix(tmpw, prevLayer.getNbOfNeurons());
-            neurons[k].adjustSynapseWeights(weightDelta);
-        }
+        Kernels.get().outer(getNbOfWeightedNeurons(), nbOfInputs, delta, prevLayer.outputs, weightDelta, nbOfInputs);
+        optimizer.update(weights, weightDelta);
     }
 
-
     /**
      * Activates each neuron in Layer (except the bias)
      */
     public void process() {
-        double[] tmp2;
-        for (int k = 0; k < this.nbOfNeurons; k++) {
-            tmp2 = new double[prevLayer.getNbOfNeurons()];
-            for (int j = 0; j < prevLayer.getNbOfNeurons(); j++) {
-                tmp2[j] = prevLayer.getNeurons()[j].getNeuronOutput();
+        calculateWeightedInput();
+        for (int k = 0; k < getNbOfWeightedNeurons(); k++) {
+            outputs[k] = activate(weightedInput[k]);
+        }
+    }
+
+    /**
+     * Calculates the weighted input of each neuron (except the bias) by summing up
+     * the previous layer's outputs multiplied with their given weights.
+     */
+    protected void calculateWeightedInput() {
+        Kernels.get().gemv(getNbOfWeightedNeurons(), nbOfInputs, weights, nbOfInputs, prevLayer.outputs, weightedInput);
+    }
+
+    /**
+     * Allocates the buffers used to process up to {@code batchSize} samples at once.
+     *
+     * @param batchSize the maximal number of samples in a mini-batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        batchWeightedInput = new double[batchSize * nbOfNeurons];
+        batchOutputs = new double[batchSize * nbOfNeurons];
+        batchDelta = new double[batchSize * nbOfNeurons];
+        for (int s = 0; s < batchSize; s++) {
+            for (int k = getNbOfWeightedNeurons(); k < nbOfNeurons; k++) {
+                batchOutputs[s * nbOfNeurons + k] = NeuralNetwork.BIAS;
+            }
+        }
+    }
+
+    /**
+     * Activates each neuron in the layer (except the bias) for every sample of the mini-batch,
+     * computing the weighted inputs of all samples with a single matrix-matrix product.
+     *
+     * @param size number of samples in the mini-batch
+     */
+    public void processBatch(int size) {
+        calculateBatchWeightedInput(size);
+        for (int s = 0; s < size; s++) {
+            int row = s * nbOfNeurons;
+            for (int k = 0; k < getNbOfWeightedNeurons(); k++) {
+                batchOutputs[row + k] = activate(batchWeightedInput[row + k]);
             }
-            this.neurons[k].process(new Matrix(tmp2, prevLayer.getNbOfNeurons()));
         }
     }
 
+    /**
+     * Calculates the weighted inputs of the mini-batch: {@code Z = A * W^T}, where A contains
+     * the previous layer's outputs (one row per sample)
+     *
+     * @param size number of samples in the mini-batch
+     */
+    protected void calculateBatchWeightedInput(int size) {
+        Kernels.get().gemmNT(size, getNbOfWeightedNeurons(), nbOfInputs,
+                prevLayer.batchOutputs, nbOfInputs, weights, nbOfInputs, batchWeightedInput, nbOfNeurons);
+    }
+
+    /**
+     * Same as {@link #calculate_delta()}, for every sample of the mini-batch
+     *
+     * @param size number of samples in the mini-batch
+     */
+    abstract public void calculateBatchDelta(int size);
+
+    /**
+     * Adds the weight adjustments of every sample of the mini-batch to {@link #weightDelta}:
+     * {@code G += D^T * A}, where D contains the deltas and A the previous layer's outputs
+     * (one row per sample)
+     *
+     * @param size number of samples in the mini-batch
+     */
+    public void accumulateWeightDelta(int size) {
+        Kernels.get().gemmTN(getNbOfWeightedNeurons(), nbOfInputs, size,
+                batchDelta, nbOfNeurons, prevLayer.batchOutputs, nbOfInputs, weightDelta, nbOfInputs);
+    }
+
+    /**
+     * Adjusts the weights using the accumulated mini-batch adjustments (applied by the
+     * optimizer), then resets them.
+     * <p>
+     * The adjustments are the sum (not the mean) of the adjustments of every line: the learning rate
+     * is per line, as such a step grows with the number of lines accumulated (the mini-batch size
+     * times the number of training threads) and the last, shorter mini-batch of an epoch takes a
+     * smaller step. The learning rate should be scaled down accordingly when the mini-batch grows.
+     *
+     * @see #accumulateWeightDelta(int)
+     */
+    public void applyWeightDelta() {
+        optimizer.update(weights, weightDelta);
+    }
+
+    /**
+     * Adds the weight adjustments accumulated by a replica of this layer to the adjustments
+     * of this layer, then resets the replica's adjustments.
+     *
+     * @param replica a replica of this layer
+     * @see #replicate(Layer)
+     */
+    public void addWeightDelta(Layer replica) {
+        for (int i = 0; i < weightDelta.length; i++) {
+            weightDelta[i] += replica.weightDelta[i];
+            replica.weightDelta[i] = 0;
+        }
+    }
+
+    /**
+     * Creates a copy of the layer sharing its weights, but with its own buffers (including the
+     * mini-batch buffers and the weight adjustments), so that the copy can process samples
+     * concurrently to this layer. The weights must not be adjusted while a replica is processing samples.
+     *
+     * @param prevLayer the replica's previous layer ({@code null} for the input layer),
+     *                  the replica becomes its next layer
+     * @return the replica
+     */
+    public Layer replicate(Layer prevLayer) {
+        Layer replica;
+        try {
+            replica = (Layer) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        replica.prevLayer = prevLayer;
+        replica.nextLayer = null;
+        if (prevLayer != null) prevLayer.nextLayer = replica;
+        replica.allocateBuffers();
+        if (batchSize > 0) replica.setBatchSize(batchSize);
+        return replica;
+    }
+
+    /**
+     * Activation function (sigmoid by default, see {@link #setActivation(Activation)})
+     *
+     * @param weightedInput The neurons weighted input
+     * @return The neurons output
+     */
+    protected double activate(double weightedInput) {
+        return activation.activate(weightedInput);
+    }
+
+    /**
+     * @param activation the activation function of the layer's neurons
+     */
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+    }
+
+    /**
+     * @return the activation function of the layer's neurons
+     */
+    public Activation getActivation() {
+        return activation;
+    }
+
+    /**
+     * @param learningRate the learning rate used when adjusting the weights
+     */
+    public void setLearningRate(double learningRate) {
+        optimizer.setLearningRate(learningRate);
+    }
+
+    /**
+     * Replaces the layer's optimizer by a new optimizer of the same type as {@code prototype},
+     * in its initial state. The layer's learning rate is kept.
+     * Must not be called on a replica.
+     *
+     * @param prototype the optimizer whose type and hyperparameters are used
+     */
+    public void setOptimizer(Optimizer prototype) {
+        double learningRate = optimizer.getLearningRate();
+        optimizer = prototype.create(weights.length);
+        optimizer.setLearningRate(learningRate);
+    }
+
     /**
      * @return layer's number of neurons
      */
@@ -106,31 +351,80 @@ abstract public class Layer {
     }
 
     /**
-     * @return the layer's delta Matrix
+     * @return the number of neurons in the layer that have synapse weights
+     * (every neuron except the bias)
+     */
+    public int getNbOfWeightedNeurons() {
+        return nbOfNeurons - 1;
+    }
+
+    /**
+     * @return the number of inputs of each neuron in the layer
+     */
+    public int getNbOfInputs() {
+        return nbOfInputs;
+    }
+
+    /**
+     * @param neuron the neuron's index in the layer
+     * @param input  the index of the neuron's input
+     * @return the weight of the synapse connecting {@code input} to {@code neuron}
+     */
+    public double getWeight(int neuron, int input) {
+        return weights[neuron * nbOfInputs + input];
+    }
+
+    /**
+     * @return the layer's weights (row-major, one row per neuron)
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return the layer's delta vector
      */
-    public Matrix getDelta() {
+    public double[] getDelta() {
         return delta;
     }
 
     /**
-     * @return the layers neuron array
+     * @return the output of each neuron in the layer for every sample of the current
+     * mini-batch (one row of {@link #getNbOfNeurons()} elements per sample)
+     */
+    public double[] getBatchOutputs() {
+        return batchOutputs;
+    }
+
+    /**
+     * @return the output of each neuron in the layer
      */
-    public Neuron[] getNeurons() {
-        return neurons;
+    public double[] getOutputs() {
+        return outputs;
     }
 
     /**
      * When the previous layer is specified, the layer has enough information
-     * to generate its neurons, which take place in the function, by calling
-     * {@link #generateNeurons()}
+     * to generate its weights, which take place in the function, by calling
+     * {@link #generateWeights(Random)}
      * {@code setPrevLayer(Layer prevLayer)} is not called
-     * in the input layer, as such the input layer's neuron generation
-     * takes place in it
+     * in the input layer, as such the input layer's buffers are allocated in its constructor.
      * @param prevLayer The previous Layer
      */
     public void setPrevLayer(Layer prevLayer) {
+        setPrevLayer(prevLayer, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Same as {@link #setPrevLayer(Layer)}, but initializes the weights using
+     * the given random number generator (used to get reproducible runs)
+     *
+     * @param prevLayer The previous Layer
+     * @param random    the random number generator used to initialize the weights
+     */
+    public void setPrevLayer(Layer prevLayer, Random random) {
         this.prevLayer = prevLayer;
-        generateNeurons();
+        generateWeights(random);
     }
 
     /**
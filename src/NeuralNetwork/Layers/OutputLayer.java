@@ -1,12 +1,5 @@
 package NeuralNetwork.Layers;
 
-import Jama.Matrix;
-import NeuralNetwork.Neuron.Neuron;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * Represents the networks output layer
  *
@@ -22,6 +15,11 @@ public class OutputLayer extends Layer {
      * @see #nbOfNeurons
      */
     private double[] trainingOutput;
+    /**
+     * Represents the training output of each sample of a mini-batch
+     * (one row of {@link #nbOfNeurons} elements per sample)
+     */
+    private double[] batchTrainingOutput;
     /**
      * Represents the number of correct classifications performed on the
      * training set during the current epoch.
@@ -40,6 +38,21 @@ public class OutputLayer extends Layer {
      * Represents the number of validation lines processed during the current epoch.
      */
     private double proccessed_validation_sets = 0;
+    /**
+     * Represents the sum of the cross-entropy losses of the training / validation lines
+     * processed during the current epoch, and the number of lines summed up
+     */
+    private double tr_loss = 0, valid_loss = 0;
+    private double tr_loss_count = 0, valid_loss_count = 0;
+    /**
+     * Contains the log-sum-exp of the weighted inputs ({@code log(sum(exp(z)))}), computed by the
+     * soft-max function and used to calculate the cross-entropy loss from the weighted inputs
+     */
+    private double logSumExp;
+    /**
+     * Same as {@link #logSumExp}, for each sample of a mini-batch
+     */
+    private double[] batchLogSumExp;
 
     /**
      * Creates an output layer with {@code nbOfColors} neurons
@@ -51,15 +64,14 @@ public class OutputLayer extends Layer {
     }
 
     /**
-     * Generates the output layer's neurons,
-     * without adding a bias neuron.
+     * The output layer has no bias neuron,
+     * as such every neuron has synapse weights.
+     *
+     * @return the number of neurons in the layer
      */
     @Override
-    protected void generateNeurons() {
-        neurons = new Neuron[nbOfNeurons];
-        for (int i = 0; i < nbOfNeurons; i++) {
-            neurons[i] = new Neuron(prevLayer.getNbOfNeurons());
-        }
+    public int getNbOfWeightedNeurons() {
+        return nbOfNeurons;
     }
 
     /**
@@ -75,13 +87,21 @@ public class OutputLayer extends Layer {
         double[] tmp;
         tmp = new double[nbOfNeurons];
         for (int i = 0; i < nbOfNeurons; i++) {
-            tmp[i] = this.neurons[i].getNeuronOutput();
-            tmp[i] = Math.round(tmp[i] * 100);
-            tmp[i] = tmp[i] / 100;
+            tmp[i] = round(outputs[i]);
         }
         return tmp;
     }
 
+    /**
+     * Rounds a neuron output on the second decimal value
+     *
+     * @param output the output to round
+     * @return the rounded output
+     */
+    private static double round(double output) {
+        return Math.round(output * 100) / 100.;
+    }
+
     /**
      * Calculates the delta of the output layer using the
      * back-propagation algorithm (Using stochastic gradient descent)
@@ -90,41 +110,117 @@ public class OutputLayer extends Layer {
      */
     @Override
     public void calculate_delta() {
-        double deltaArray[];
-        deltaArray = new double[nbOfNeurons];
         for (int k = 0; k < nbOfNeurons; k++) {
             //note the different derivative (a soft-max function is used in the output layer)
-            deltaArray[k] = (this.trainingOutput[k] - neurons[k].getNeuronOutput());
+            delta[k] = (this.trainingOutput[k] - outputs[k]);
         }
-        this.delta = new Matrix(deltaArray, nbOfNeurons);
+    }
 
+    /**
+     * Same as {@link #calculate_delta()}, for every sample of the mini-batch
+     *
+     * @param size number of samples in the mini-batch
+     */
+    @Override
+    public void calculateBatchDelta(int size) {
+        for (int i = 0; i < size * nbOfNeurons; i++) {
+            batchDelta[i] = batchTrainingOutput[i] - batchOutputs[i];
+        }
     }
 
     /**
-     * Activates the neurons in the layer and overrides their output with the output of a
+     * Calculates the weighted input of the neurons in the layer and activates them using a
      * softmax function to get a 1-N encoding
      */
     @Override
     public void process() {
-        super.process();
+        calculateWeightedInput();
         override_softmax();
     }
 
     /**
-     * Overrides the neuron's sigmoid function with a soft-max function to provide a 1 out of N
+     * Calculates the weighted input of the neurons in the layer and returns the index of the
+     * highest one, which is also the index of the highest soft-max output (the soft-max function
+     * is monotonic), as such the outputs are not calculated.
+     *
+     * @return the index of the neuron with the highest output
+     */
+    public int classify() {
+        calculateWeightedInput();
+        int max = 0;
+        for (int k = 1; k < nbOfNeurons; k++) {
+            if (weightedInput[k] > weightedInput[max]) max = k;
+        }
+        return max;
+    }
+
+    /**
+     * Same as {@link #classify()}, for every sample of the mini-batch
+     *
+     * @param size    number of samples in the mini-batch
+     * @param classes receives the index of the neuron with the highest output of each sample
+     * @param offset  index in {@code classes} receiving the result of the first sample
+     */
+    public void classifyBatch(int size, byte[] classes, int offset) {
+        calculateBatchWeightedInput(size);
+        for (int s = 0; s < size; s++) {
+            int row = s * nbOfNeurons;
+            int max = 0;
+            for (int k = 1; k < nbOfNeurons; k++) {
+                if (batchWeightedInput[row + k] > batchWeightedInput[row + max]) max = k;
+            }
+            classes[offset + s] = (byte) max;
+        }
+    }
+
+    /**
+     * Same as {@link #process()}, for every sample of the mini-batch
+     *
+     * @param size number of samples in the mini-batch
+     */
+    @Override
+    public void processBatch(int size) {
+        calculateBatchWeightedInput(size);
+        for (int s = 0; s < size; s++) {
+            batchLogSumExp[s] = softmax(batchWeightedInput, batchOutputs, s * nbOfNeurons);
+        }
+    }
+
+    /**
+     * Replaces the neuron's sigmoid function with a soft-max function to provide a 1 out of N
      * encoding of the output vector.
      */
     private void override_softmax() {
+        logSumExp = softmax(weightedInput, outputs, 0);
+    }
+
+    /**
+     * Soft-max function: {@code out[k] = exp(z[k]) / sum(exp(z))}. The highest weighted input is
+     * subtracted from every weighted input before the exponentiation (which does not change the
+     * result), so that large weighted inputs don't overflow. Every exponential is computed once,
+     * the outputs being used as scratch buffer.
+     *
+     * @param z      array containing the weighted inputs
+     * @param out    array receiving the outputs
+     * @param offset index of the first output neuron in both arrays
+     * @return the log-sum-exp of the weighted inputs {@code log(sum(exp(z)))}
+     */
+    private double softmax(double[] z, double[] out, int offset) {
+        double max = z[offset];
+        for (int k = 1; k < nbOfNeurons; k++) {
+            if (z[offset + k] > max) max = z[offset + k];
+        }
         double expSum = 0;
-        //Override the layer's neuron output with the soft-max function:
-        //sum up exp(weightedIn) of the layer's neurons
-        for (int k2 = 0; k2 < nbOfNeurons; k2++) {
-            expSum += Math.exp(neurons[k2].getWeightedInput());
+        for (int k = 0; k < nbOfNeurons; k++) {
+            double e = Math.exp(z[offset + k] - max);
+            out[offset + k] = e;
+            expSum += e;
         }
-        //Override the layer's neuron outputs
+        double inv = 1 / expSum;
         for (int k = 0; k < nbOfNeurons; k++) {
-            neurons[k].setNeuronOutput(Math.exp(neurons[k].getWeightedInput()) / expSum);
+            out[offset + k] *= inv;
         }
+        return max + Math.log(expSum);
     }
 
     /**
@@ -136,22 +232,110 @@ public class OutputLayer extends Layer {
      * @param trainingErr Used to distinguish to which sum is to be incremented (training / validation)
      */
     public void calc_class_err(boolean trainingErr) {
+        count_class_err(trainingErr, trainingOutput, outputs, weightedInput, logSumExp, 0);
+    }
+
+    /**
+     * Same as {@link #calc_class_err(boolean)}, for every sample of the mini-batch
+     *
+     * @param size        number of samples in the mini-batch
+     * @param trainingErr Used to distinguish to which sum is to be incremented (training / validation)
+     */
+    public void calc_batch_class_err(int size, boolean trainingErr) {
+        for (int s = 0; s < size; s++) {
+            count_class_err(trainingErr, batchTrainingOutput, batchOutputs, batchWeightedInput, batchLogSumExp[s], s * nbOfNeurons);
+        }
+    }
+
+    /**
+     * Compares the index of the highest (rounded) output with the index of the expected color
+     * and increments the corresponding sums. Also adds the sample's cross-entropy loss
+     * {@code -log(out[i])}, {@code i} being the expected color, calculated from the weighted inputs
+     * ({@code logSumExp - z[i]}) so that it stays finite when the output underflows to zero.
+     *
+     * @param trainingErr Used to distinguish to which sum is to be incremented (training / validation)
+     * @param expected    array containing the expected output
+     * @param output      array containing the layer's output
+     * @param z           array containing the layer's weighted inputs
+     * @param logSumExp   the log-sum-exp of the sample's weighted inputs
+     * @param offset      index of the first output neuron in the arrays
+     */
+    private void count_class_err(boolean trainingErr, double[] expected, double[] output, double[] z, double logSumExp, int offset) {
         if (trainingErr) proccessed_training_sets++;
         else proccessed_validation_sets++;
-        List<Double> trainingList = new ArrayList<>();
-        for (double current : trainingOutput) {
-            trainingList.add(current);
+        //index of the expected color
+        int i = -1;
+        for (int k = 0; k < nbOfNeurons; k++) {
+            if (expected[offset + k] == 1.0) {
+                i = k;
+                break;
+            }
         }
-        List<Double> outputVectorList = new ArrayList<>();
-        double[] outputVector = getOutputVector();
-        for (double current : outputVector) {
-            outputVectorList.add(current);
+        //index of the (first) highest rounded output
+        int max = 0;
+        for (int k = 1; k < nbOfNeurons; k++) {
+            if (round(output[offset + k]) > round(output[offset + max])) max = k;
         }
-        int i = trainingList.indexOf(1.0);
-        if (outputVectorList.indexOf(Collections.max(outputVectorList)) == i) {
+        if (max == i) {
             if (trainingErr) tr_correct++;
             else valid_correct++;
         }
+        //lines without expected color have a loss of zero
+        double loss = i < 0 ? 0 : logSumExp - z[offset + i];
+        if (trainingErr) {
+            tr_loss += loss;
+            tr_loss_count++;
+        } else {
+            valid_loss += loss;
+            valid_loss_count++;
+        }
+    }
+
+    /**
+     * Adds the classifications counted by a replica of this layer to the ones of
+     * this layer, then resets the replica's counts.
+     *
+     * @param replica a replica of this layer
+     * @see #replicate(Layer)
+     */
+    public void add_class_err(OutputLayer replica) {
+        tr_correct += replica.tr_correct;
+        valid_correct += replica.valid_correct;
+        proccessed_training_sets += replica.proccessed_training_sets;
+        proccessed_validation_sets += replica.proccessed_validation_sets;
+        tr_loss += replica.tr_loss;
+        valid_loss += replica.valid_loss;
+        tr_loss_count += replica.tr_loss_count;
+        valid_loss_count += replica.valid_loss_count;
+        replica.reset_class_err();
+    }
+
+    /**
+     * Resets the classification counts and the losses
+     */
+    private void reset_class_err() {
+        tr_correct = 0;
+        valid_correct = 0;
+        proccessed_training_sets = 0;
+        proccessed_validation_sets = 0;
+        tr_loss = 0;
+        valid_loss = 0;
+        tr_loss_count = 0;
+        valid_loss_count = 0;
+    }
+
+    /**
+     * Creates a copy of the layer sharing its weights (see {@link Layer#replicate(Layer)}),
+     * the copy's classification counts and losses start at zero.
+     *
+     * @param prevLayer the replica's previous layer
+     * @return the replica
+     */
+    @Override
+    public OutputLayer replicate(Layer prevLayer) {
+        OutputLayer replica = (OutputLayer) super.replicate(prevLayer);
+        replica.reset_class_err();
+        return replica;
     }
 
     /**
@@ -178,12 +362,70 @@ public class OutputLayer extends Layer {
     }
 
     /**
-     * Specifies the layers training output
+     * Used to retrieve the mean cross-entropy loss of the training or validation lines
+     * of the current epoch (resets it)
      *
-     * @param trainingOutput array containing the training output
+     * @param trainingLoss if set to true returns the training loss, otherwise the validation loss
+     * @return the mean cross-entropy loss, {@code NaN} if no line was processed
      */
-    public void setTrainingOutput(double[] trainingOutput) {
-        this.trainingOutput = trainingOutput;
+    public double get_loss(boolean trainingLoss) {
+        double loss;
+        if (trainingLoss) {
+            loss = tr_loss / tr_loss_count;
+            tr_loss = 0;
+            tr_loss_count = 0;
+        } else {
+            loss = valid_loss / valid_loss_count;
+            valid_loss = 0;
+            valid_loss_count = 0;
+        }
+        return loss;
+    }
+
+    /**
+     * Specifies the layers training output: the output vector with the given color's output set
+     * to one, the others to zero
+     *
+     * @param color index of the expected color, -1 if none (all outputs set to zero)
+     */
+    public void setTrainingOutput(int color) {
+        for (int k = 0; k < nbOfNeurons; k++) {
+            trainingOutput[k] = k == color ? 1 : 0;
+        }
+    }
+
+    /**
+     * Specifies the training output of a sample of the mini-batch, see {@link #setTrainingOutput(int)}
+     *
+     * @param sample the sample's index in the mini-batch
+     * @param color  index of the expected color, -1 if none
+     */
+    public void setBatchTrainingOutput(int sample, int color) {
+        int row = sample * nbOfNeurons;
+        for (int k = 0; k < nbOfNeurons; k++) {
+            batchTrainingOutput[row + k] = k == color ? 1 : 0;
+        }
+    }
+
+    /**
+     * Allocates the buffers, including the training output
+     */
+    @Override
+    protected void allocateBuffers() {
+        super.allocateBuffers();
+        trainingOutput = new double[nbOfNeurons];
+    }
+
+    /**
+     * Allocates the mini-batch buffers, including the training outputs and log-sum-exps
+     *
+     * @param batchSize the maximal number of samples in a mini-batch
+     */
+    @Override
+    public void setBatchSize(int batchSize) {
+        super.setBatchSize(batchSize);
+        batchTrainingOutput = new double[batchSize * nbOfNeurons];
+        batchLogSumExp = new double[batchSize];
     }
 
 
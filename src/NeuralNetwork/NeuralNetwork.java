@@ -1,34 +1,47 @@
 package NeuralNetwork;
 
-import Jama.Matrix;
+import NeuralNetwork.Layers.Activation;
 import NeuralNetwork.Layers.HiddenLayer;
 import NeuralNetwork.Layers.InputLayer;
+import NeuralNetwork.Layers.Layer;
 import NeuralNetwork.Layers.OutputLayer;
+import NeuralNetwork.Optimizers.LearningRateSchedule;
+import NeuralNetwork.Optimizers.Optimizer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Random;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 /**
  * Represents a neural network containing one input layer with 3 inputs,
- * two hidden layer with a variable number of neurons and one output layer
- * containing a variable amount of output neurons (depending on how many colors are to be detected).
+ * any number of hidden layers with a variable number of neurons each (two layers of
+ * the same width by default) and one output layer containing a variable amount of output
+ * neurons (depending on how many colors are to be detected).
  * <p>
  * <p>This project was created for the ROB[SP17] course in an attempt to better differentiate colors
  * when using the E-puck camera.</p>
  * <p>
- * <p><b>Note:</b>The  external libraries used are <a href="http://math.nist.gov/javanumerics/jama/">JAMA</a>,
- * which provides basic linear algebra functions and <a href="https://commons.apache.org/proper/commons-cli/">apache-commons-cli</a> for the CLI argument parser.
- * In this project, JAMA is mostly used to store information
- * in matrices, which makes the calculations more readable.</p>
+ * <p><b>Note:</b>The only external library used is <a href="https://commons.apache.org/proper/commons-cli/">apache-commons-cli</a>
+ * for the CLI argument parser. The layers store their weights in flat arrays.</p>
  * <p>
  * Network type: FFANN  (Feed forward artificial neural network)<br>
- * BP Algorithm: SGD (Stochastic gradient descent)<br>
+ * BP Algorithm: SGD (Stochastic gradient descent), optionally using mini-batches on several threads<br>
  * Learning type: Supervised<br>
  * </p>
  * <p>
@@ -60,34 +73,45 @@ public class NeuralNetwork {
      */
     private double finalValidationErr;
     /**
-     * Represents the networks input layer
+     * Represents the final mean cross-entropy loss over the training / validation set
+     * at the end of the program run
      */
-    private InputLayer inputLayer;
+    private double finalTrainingLoss, finalValidationLoss;
     /**
-     * Represents the networks first hidden layer
+     * Identifies a model file ("RGBM")
+     */
+    private static final int MODEL_MAGIC = 0x5247424D;
+    private static final int MODEL_VERSION = 2;
+
+    /**
+     * Represents the networks input layer
      */
-    private HiddenLayer hiddenLayer1;
+    private InputLayer inputLayer;
     /**
-     * Represents the networks second hidden layer
+     * Represents the networks hidden layers, from the input layer to the output layer
      */
-    private HiddenLayer hiddenLayer2;
+    private HiddenLayer[] hiddenLayers;
     /**
      * Represents the networks output layer
      */
     private OutputLayer outputLayer;
     /**
-     * Represents the training data sets.
+     * Contains every layer with weights: the hidden layers followed by the output layer
+     */
+    private Layer[] weightedLayers;
+    /**
+     * Represents the training data set.
      * {@link #parseDataSets(String, String, String)}
      */
-    private Matrix trainingInput, trainingOutput;
+    private DataSet trainingSet;
     /**
-     * Represents matrices containing the validation data.
+     * Represents the validation data set (optional).
      */
-    private Matrix validationInput, validationOutput;
+    private DataSet validationSet;
     /**
-     * Represents matrices containing the testing data.
+     * Represents the testing data set (optional).
      */
-    private Matrix testingInput, testingOutput;
+    private DataSet testingSet;
 
     /**
      * Describes how many colors are to be classified (nb of output neurons)
@@ -100,35 +124,189 @@ public class NeuralNetwork {
      */
     private boolean writeStats;
 
+    /**
+     * Print the training progress if set to true
+     */
+    private boolean showProgress = true;
+
     /**
      * Contains color definition in the testing set
      */
     private String[] colorNames = null;
+
+    /**
+     * Represents the random number generator used to initialize the weights
+     * and to shuffle the training set
+     */
+    private final Random random;
+
+    /**
+     * Generates the order in which the training set is processed during each epoch.
+     * Created on the first epoch, once the training set size is known.
+     */
+    private EpochSampler sampler;
+
+    /**
+     * Represents the training set if it is streamed from the disk instead of
+     * being loaded ({@link #trainingSet} is then unused)
+     */
+    private DataStream trainingStream;
+
+    /**
+     * Describes the number of epochs the network was trained for (saved in model files)
+     */
+    private int nbOfTrainedEpochs;
+
+    /**
+     * Describes the first epoch of the next call to {@link #init(int)}, set when resuming from a checkpoint
+     */
+    private int firstEpoch;
+
+    /**
+     * Describes the checkpoint file written during training ({@code null} if none)
+     * and the number of epochs between two checkpoints
+     */
+    private String checkpoint;
+    private int checkpointInterval;
+
+    /**
+     * Describes the early stopping: training stops once the validation error (training error if
+     * there is no validation set) did not decrease by more than {@code minDelta} (percentage points)
+     * during {@code patience} epochs, 0 to disable early stopping
+     */
+    private int patience;
+    private double minDelta;
+
+    /**
+     * Describes how the learning rate evolves during the training, {@code null} for a constant learning rate
+     */
+    private LearningRateSchedule schedule;
+
+    /**
+     * Contains a copy of the weights of every layer at the epoch with the lowest error (early stopping)
+     */
+    private double[][] bestWeights;
+
+    /**
+     * Describes how many training lines are fed through the network
+     * before the weights are adjusted (1 means stochastic gradient descent)
+     */
+    private int batchSize = 1;
+
+    /**
+     * Describes the number of threads used for training. Every thread processes a
+     * mini-batch of {@link #batchSize} lines, the weights are adjusted once all threads are done.
+     */
+    private int nbOfThreads = 1;
+
+    /**
+     * Represents the thread pool running the training workers (if more than one thread is used)
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Contains the training workers, the first one uses the network's layers, the others replicas
+     * of them. Created on the first epoch.
+     */
+    private List<TrainingWorker> workers;
+
+    /**
+     * Describes the number of threads used to classify frames. Every thread classifies a
+     * stripe of the frame.
+     */
+    private int nbOfInferenceThreads = 1;
+
+    /**
+     * Represents the thread pool running the inference workers (if more than one thread is used).
+     * Kept alive between frames, its threads are daemon threads.
+     */
+    private ForkJoinPool inferencePool;
+
+    /**
+     * Contains the inference workers (one per thread), they use replicas of the network's layers,
+     * as such they always use the current weights. Created on the first classified frame.
+     */
+    private List<InferenceWorker> inferenceWorkers;
+
     /**
      * Create a neural network with the following topology:
      * Input Layer: 3 input nodes (R/G/B) + bias
      * 2 hidden Layer with a variable amount of neurons (-n flag)
      * Output Layer: variable amount of neurons (-c flag)
      *
-     * @param nbOfHiddenNeurons specifies the number of hidden layer neurons
+     * @param nbOfHiddenNeurons specifies the number of neurons of each hidden layer
      * @param nbOfColors        specifies how many colors are to be recognized
      */
     public NeuralNetwork(int nbOfHiddenNeurons, int nbOfColors) {
+        this(new int[]{nbOfHiddenNeurons, nbOfHiddenNeurons}, nbOfColors, new Random());
+    }
+
+    /**
+     * Same as {@link #NeuralNetwork(int, int)}, but seeds the random number generator
+     * used for weight initialization and training set shuffling, which makes runs reproducible.
+     *
+     * @param nbOfHiddenNeurons specifies the number of neurons of each hidden layer
+     * @param nbOfColors        specifies how many colors are to be recognized
+     * @param seed              the random seed
+     */
+    public NeuralNetwork(int nbOfHiddenNeurons, int nbOfColors, long seed) {
+        this(new int[]{nbOfHiddenNeurons, nbOfHiddenNeurons}, nbOfColors, new Random(seed));
+    }
+
+    /**
+     * Create a neural network with any number of hidden layers:
+     * Input Layer: 3 input nodes (R/G/B) + bias
+     * one hidden layer per element of {@code hiddenNeurons} (-n flag, e.g. 16,8)
+     * Output Layer: variable amount of neurons (-c flag)
+     *
+     * @param hiddenNeurons specifies the number of neurons of each hidden layer, from the input
+     *                      layer to the output layer
+     * @param nbOfColors    specifies how many colors are to be recognized
+     */
+    public NeuralNetwork(int[] hiddenNeurons, int nbOfColors) {
+        this(hiddenNeurons, nbOfColors, new Random());
+    }
+
+    /**
+     * Same as {@link #NeuralNetwork(int[], int)}, but seeds the random number generator
+     *
+     * @param hiddenNeurons specifies the number of neurons of each hidden layer
+     * @param nbOfColors    specifies how many colors are to be recognized
+     * @param seed          the random seed
+     */
+    public NeuralNetwork(int[] hiddenNeurons, int nbOfColors, long seed) {
+        this(hiddenNeurons, nbOfColors, new Random(seed));
+    }
+
+    /**
+     * @param hiddenNeurons specifies the number of neurons of each hidden layer
+     * @param nbOfColors    specifies how many colors are to be recognized
+     * @param random        the random number generator to use
+     */
+    private NeuralNetwork(int[] hiddenNeurons, int nbOfColors, Random random) {
+        if (hiddenNeurons.length == 0) throw new IllegalArgumentException("At least one hidden layer is required");
+        for (int width : hiddenNeurons) {
+            if (width < 1) throw new IllegalArgumentException("Invalid number of hidden neurons: " + width);
+        }
+        this.random = random;
         this.nbOfColors = nbOfColors;
         //note the input layer bias is created in the InputLayer class
         this.inputLayer = new InputLayer(3);
-        this.hiddenLayer1 = new HiddenLayer(nbOfHiddenNeurons);
-        this.hiddenLayer2 = new HiddenLayer(nbOfHiddenNeurons);
-
-        this.hiddenLayer1.setPrevLayer(inputLayer);
-        this.hiddenLayer1.setNextLayer(this.hiddenLayer2);
-        this.hiddenLayer2.setPrevLayer(hiddenLayer1);
+        this.hiddenLayers = new HiddenLayer[hiddenNeurons.length];
+        this.weightedLayers = new Layer[hiddenNeurons.length + 1];
+        Layer prevLayer = inputLayer;
+        for (int l = 0; l < hiddenNeurons.length; l++) {
+            hiddenLayers[l] = new HiddenLayer(hiddenNeurons[l]);
+            hiddenLayers[l].setPrevLayer(prevLayer, random);
+            prevLayer.setNextLayer(hiddenLayers[l]);
+            weightedLayers[l] = hiddenLayers[l];
+            prevLayer = hiddenLayers[l];
+        }
 
         this.outputLayer = new OutputLayer(nbOfColors);
-        this.outputLayer.setPrevLayer(hiddenLayer2);
-
-        this.hiddenLayer2.setNextLayer(this.outputLayer);
-
+        this.outputLayer.setPrevLayer(prevLayer, random);
+        prevLayer.setNextLayer(this.outputLayer);
+        weightedLayers[hiddenNeurons.length] = outputLayer;
     }
 
     /**
@@ -143,17 +321,184 @@ public class NeuralNetwork {
      * if the training color order is swapped {@link #parseDataSets(String, String, String)})
      */
     public double[] query(boolean normalized, double red, double green, double blue) {
+        feedForward(normalized, red, green, blue);
+        outputLayer.process();
+        return outputLayer.getOutputVector();
+    }
+
+    /**
+     * Same as {@link #query(boolean, double, double, double)}, but writes the (unrounded)
+     * probabilities to a caller-supplied array instead of allocating a new one.
+     * Does not allocate any memory. Not thread-safe, as the network's layers are used.
+     *
+     * @param normalized indicates whether the passed values are already normalized
+     * @param red        the red rgb value [0-255]
+     * @param green      the green rgb value [0-255]
+     * @param blue       the blue rgb value [0-255]
+     * @param output     array receiving the probability of each color (at least {@code nbOfColors} long)
+     */
+    public void query(boolean normalized, double red, double green, double blue, double[] output) {
+        feedForward(normalized, red, green, blue);
+        outputLayer.process();
+        System.arraycopy(outputLayer.getOutputs(), 0, output, 0, nbOfColors);
+    }
+
+    /**
+     * Classifies a color, i.e. returns the index of the most probable color (the soft-max function
+     * is skipped, as it does not change the index of the highest output).
+     * Does not allocate any memory. Not thread-safe, as the network's layers are used.
+     *
+     * @param normalized indicates whether the passed values are already normalized
+     * @param red        the red rgb value [0-255]
+     * @param green      the green rgb value [0-255]
+     * @param blue       the blue rgb value [0-255]
+     * @return the index of the most probable color (same order as the training output vectors)
+     */
+    public int classify(boolean normalized, double red, double green, double blue) {
+        feedForward(normalized, red, green, blue);
+        return outputLayer.classify();
+    }
+
+    /**
+     * Classifies every pixel of a frame, the pixels being packed in a byte array, 3 bytes per pixel
+     * ({@code r,g,b}, row after row). The pixels are fed through the network in mini-batches
+     * and, if more than one inference thread is used, in stripes of consecutive pixels (rows)
+     * processed concurrently. The buffers are reused from one frame to the next, as such
+     * classifying a stream of frames does not allocate any memory per frame (except for
+     * a few bytes describing the frame).
+     *
+     * @param rgb     the frame's pixels, 3 bytes per pixel
+     * @param classes receives the index of the most probable color of each pixel, its length
+     *                is the number of pixels to be classified
+     * @throws InterruptedException if interrupted while waiting for the inference threads
+     * @throws ExecutionException   if an inference thread failed
+     * @see #setNbOfInferenceThreads(int)
+     */
+    public void classify(final byte[] rgb, byte[] classes) throws InterruptedException, ExecutionException {
+        infer(new PixelSource() {
+            @Override
+            public int getRgb(int pixel) {
+                int i = 3 * pixel;
+                return (rgb[i] & 0xFF) << 16 | (rgb[i + 1] & 0xFF) << 8 | rgb[i + 2] & 0xFF;
+            }
+        }, classes.length, classes, null);
+    }
+
+    /**
+     * Same as {@link #classify(byte[], byte[])}, the pixels being packed in integers
+     * ({@code 0xRRGGBB}, the highest byte is ignored, e.g. the pixels of a
+     * {@code BufferedImage.TYPE_INT_RGB} or {@code TYPE_INT_ARGB} image)
+     *
+     * @param rgb     the frame's pixels, one integer per pixel
+     * @param classes receives the index of the most probable color of each pixel
+     * @throws InterruptedException if interrupted while waiting for the inference threads
+     * @throws ExecutionException   if an inference thread failed
+     */
+    public void classify(final int[] rgb, byte[] classes) throws InterruptedException, ExecutionException {
+        infer(new PixelSource() {
+            @Override
+            public int getRgb(int pixel) {
+                return rgb[pixel];
+            }
+        }, classes.length, classes, null);
+    }
+
+    /**
+     * Same as {@link #classify(byte[], byte[])}, the pixels being read from a (possibly direct)
+     * byte buffer, 3 bytes per pixel, starting at the buffer's position. The buffer's position
+     * is not modified.
+     *
+     * @param rgb     the frame's pixels, 3 bytes per pixel
+     * @param classes receives the index of the most probable color of each pixel
+     * @throws InterruptedException if interrupted while waiting for the inference threads
+     * @throws ExecutionException   if an inference thread failed
+     */
+    public void classify(final ByteBuffer rgb, byte[] classes) throws InterruptedException, ExecutionException {
+        final int position = rgb.position();
+        infer(new PixelSource() {
+            @Override
+            public int getRgb(int pixel) {
+                int i = position + 3 * pixel;
+                return (rgb.get(i) & 0xFF) << 16 | (rgb.get(i + 1) & 0xFF) << 8 | rgb.get(i + 2) & 0xFF;
+            }
+        }, classes.length, classes, null);
+    }
+
+    /**
+     * Same as {@link #classify(byte[], byte[])}, but writes the probability of every color of every
+     * pixel instead of the most probable color. The probabilities are written as planes: the
+     * probability of color {@code k} for pixel {@code p} is {@code probabilities[k * nbOfPixels + p]}.
+     *
+     * @param rgb           the frame's pixels, 3 bytes per pixel
+     * @param probabilities receives the probability planes ({@code nbOfColors * nbOfPixels} long)
+     * @throws InterruptedException if interrupted while waiting for the inference threads
+     * @throws ExecutionException   if an inference thread failed
+     */
+    public void query(final byte[] rgb, double[] probabilities) throws InterruptedException, ExecutionException {
+        infer(new PixelSource() {
+            @Override
+            public int getRgb(int pixel) {
+                int i = 3 * pixel;
+                return (rgb[i] & 0xFF) << 16 | (rgb[i + 1] & 0xFF) << 8 | rgb[i + 2] & 0xFF;
+            }
+        }, probabilities.length / nbOfColors, null, probabilities);
+    }
+
+    /**
+     * Classifies the pixels of a frame, one stripe per inference thread
+     *
+     * @param pixels        the frame's pixels
+     * @param nbOfPixels    the number of pixels in the frame
+     * @param classes       receives the index of the most probable color of each pixel (optional)
+     * @param probabilities receives the probability planes (optional)
+     * @throws InterruptedException if interrupted while waiting for the inference threads
+     * @throws ExecutionException   if an inference thread failed
+     */
+    void infer(PixelSource pixels, int nbOfPixels, byte[] classes, double[] probabilities)
+            throws InterruptedException, ExecutionException {
+        if (inferenceWorkers == null) {
+            inferenceWorkers = new ArrayList<>();
+            for (int i = 0; i < nbOfInferenceThreads; i++) {
+                inferenceWorkers.add(new InferenceWorker(inputLayer, hiddenLayers, outputLayer));
+            }
+            if (nbOfInferenceThreads > 1) inferencePool = new ForkJoinPool(nbOfInferenceThreads);
+        }
+        //stripes are multiples of the chunk size, so that only the last chunk may be partial
+        int nbOfChunks = (nbOfPixels + InferenceWorker.CHUNK - 1) / InferenceWorker.CHUNK;
+        int stripe = (nbOfChunks + inferenceWorkers.size() - 1) / inferenceWorkers.size() * InferenceWorker.CHUNK;
+        for (int w = 0; w < inferenceWorkers.size(); w++) {
+            int from = Math.min(nbOfPixels, w * stripe);
+            inferenceWorkers.get(w).setStripe(pixels, nbOfPixels, from, Math.min(nbOfPixels, from + stripe),
+                    classes, probabilities);
+        }
+        if (inferencePool == null) {
+            inferenceWorkers.get(0).call();
+        } else {
+            for (Future<Void> result : inferencePool.invokeAll(inferenceWorkers)) {
+                result.get();
+            }
+        }
+    }
+
+    /**
+     * Sets the network's inputs and activates the hidden layers
+     *
+     * @param normalized indicates whether the passed values are already normalized
+     * @param red        the red rgb value [0-255]
+     * @param green      the green rgb value [0-255]
+     * @param blue       the blue rgb value [0-255]
+     */
+    private void feedForward(boolean normalized, double red, double green, double blue) {
         //normalize between [-1,1]
         if (!normalized) {
             red = 2 * (red / 255) - 1;
             green = 2 * (green / 255) - 1;
             blue = 2 * (blue / 255) - 1;
         }
-        inputLayer.setInputs(new double[]{red, green, blue, BIAS});
-        hiddenLayer1.process();
-        hiddenLayer2.process();
-        outputLayer.process();
-        return outputLayer.getOutputVector();
+        inputLayer.setInputs(red, green, blue);
+        for (HiddenLayer hiddenLayer : hiddenLayers) {
+            hiddenLayer.process();
+        }
     }
 
     /**
@@ -162,34 +507,125 @@ public class NeuralNetwork {
      * @param nbOfEpochs number of cycles that the training matrix is
      *                   to be fed through the network.
      * @throws Exception if the training input matrix is null.
-     * @see #train()
+     * @see #trainEpoch()
      * @see #validate()
      * @see #test()
-     * @see #write_statistics(int, int)
+     * @see #write_statistics(int, double, double, double, double)
      */
     public void init(int nbOfEpochs) throws Exception {
-        if (this.trainingInput == null) {
+        if (this.trainingSet == null && this.trainingStream == null) {
             throw new Exception("Error: Training data was no parsed. Was parseTrainingSet() called?");
         }
+        //early stopping: lowest error so far, its epoch and the corresponding errors
+        double bestErr = Double.MAX_VALUE;
+        int bestEpoch = -1;
+        double bestTrainingErr = 0, bestValidationErr = 0, bestTrainingLoss = 0, bestValidationLoss = 0;
         try {
-            for (int i = 0; i < nbOfEpochs; i++) {
-                printProgress(nbOfEpochs, i);
-                train();
+            for (int i = firstEpoch; i < nbOfEpochs; i++) {
+                if (showProgress) printProgress(nbOfEpochs, i);
+                if (schedule != null) setLearningRate(schedule.getLearningRate(i, nbOfEpochs));
+                trainEpoch();
                 validate();
-                write_statistics(i, nbOfEpochs);
-
+                //validation classification error
+                double validation_error = outputLayer.get_class_err(false);
+                //training classification error
+                double training_error = outputLayer.get_class_err(true);
+                //mean cross-entropy losses
+                double validation_loss = outputLayer.get_loss(false);
+                double training_loss = outputLayer.get_loss(true);
+                if (schedule != null) schedule.update(i, validationSet != null ? validation_error : training_error);
+                nbOfTrainedEpochs++;
+                //only the stats and checkpoint writes are caught, errors reading the training set are propagated
+                try {
+                    write_statistics(i, training_error, validation_error, training_loss, validation_loss);
+                    if (checkpoint != null && ((i + 1) % checkpointInterval == 0 || i == nbOfEpochs - 1)) {
+                        save(checkpoint);
+                    }
+                } catch (IOException e) {
+                    System.err.println("An error occurred while writing stats or checkpoints to file:");
+                    System.err.println(e.getMessage());
+                    break;
+                }
+                if (i == nbOfEpochs - 1) {
+                    finalTrainingErr = training_error;
+                    finalValidationErr = validation_error;
+                    finalTrainingLoss = training_loss;
+                    finalValidationLoss = validation_loss;
+                }
+                if (patience > 0) {
+                    double error = validationSet != null ? validation_error : training_error;
+                    if (error < bestErr - minDelta) {
+                        bestErr = error;
+                        bestEpoch = i;
+                        bestTrainingErr = training_error;
+                        bestValidationErr = validation_error;
+                        bestTrainingLoss = training_loss;
+                        bestValidationLoss = validation_loss;
+                        snapshotWeights();
+                    } else if (i - bestEpoch >= patience) {
+                        if (showProgress) System.out.printf("\rEarly stopping after epoch %d (best epoch: %d)\n", i, bestEpoch);
+                        break;
+                    }
+                }
+            }
+            if (bestEpoch >= 0) {
+                restoreWeights();
+                finalTrainingErr = bestTrainingErr;
+                finalValidationErr = bestValidationErr;
+                finalTrainingLoss = bestTrainingLoss;
+                finalValidationLoss = bestValidationLoss;
+                //the last checkpoint holds the weights of the last epoch, replace them with the best ones
+                if (checkpoint != null) {
+                    try {
+                        save(checkpoint);
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while writing stats or checkpoints to file:");
+                        System.err.println(e.getMessage());
+                    }
+                }
             }
-        } catch (IOException e) {
-            System.err.println("An error occurred while writing stats to file:");
-            System.err.println(e.getMessage());
         } finally {
-            if (writeStats) {
+            firstEpoch = 0;
+            //the writer is only opened once an epoch was trained (not if resuming a finished run)
+            if (err_writer != null) {
                 err_writer.close();
+                err_writer = null;
+            }
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+                workers = null;
             }
         }
         test();
     }
 
+    /**
+     * Copies the weights of every layer to {@link #bestWeights}
+     */
+    private void snapshotWeights() {
+        if (bestWeights == null) {
+            bestWeights = new double[weightedLayers.length][];
+            for (int l = 0; l < weightedLayers.length; l++) {
+                bestWeights[l] = new double[weightedLayers[l].getWeights().length];
+            }
+        }
+        for (int l = 0; l < weightedLayers.length; l++) {
+            double[] weights = weightedLayers[l].getWeights();
+            System.arraycopy(weights, 0, bestWeights[l], 0, weights.length);
+        }
+    }
+
+    /**
+     * Copies the weights saved by {@link #snapshotWeights()} back into the layers
+     */
+    private void restoreWeights() {
+        for (int l = 0; l < weightedLayers.length; l++) {
+            double[] weights = weightedLayers[l].getWeights();
+            System.arraycopy(bestWeights[l], 0, weights, 0, weights.length);
+        }
+    }
+
     /**
      * Print the current training progress percentage
      *
@@ -209,23 +645,21 @@ public class NeuralNetwork {
      * network. The result gives an indication of the overall network performance.
      */
     private void test() {
-        if (testingInput == null) return;
+        if (testingSet == null) return;
         System.out.printf("\n============================================BEGIN TESTING===================================\n");
         System.out.printf("\nProbability vector order: %s\n\n", Arrays.toString(colorNames));
-        for (int row2 = 0; row2 < testingInput.getRowDimension(); row2++) {
+        for (int row2 = 0; row2 < testingSet.size(); row2++) {
             String color = "";
             try {
                 /*To lower amount of CLI options needed, these values must be adapted if one wishes
                 to train other colors.*/
-                for (int i = 0; i < testingOutput.getColumnDimension(); i++) {
-                    if (testingOutput.get(row2, i) == 1) {
-                        color = colorNames[i];
-                    }
+                if (testingSet.getColor(row2) >= 0) {
+                    color = colorNames[testingSet.getColor(row2)];
                 }
             } catch (ArrayIndexOutOfBoundsException e) {
                 System.err.println("An error occurred during testing. Adapt color definitions in source file");
             }
-            double[] results = query(true, testingInput.get(row2, 0), testingInput.get(row2, 1), testingInput.get(row2, 2));
+            double[] results = query(true, testingSet.getInput(row2, 0), testingSet.getInput(row2, 1), testingSet.getInput(row2, 2));
             System.out.printf("Color should be %s, output vector is:\t\t%s\n", color, Arrays.toString(results));
         }
         System.out.printf("=====================================END TESTING==================================\n");
@@ -233,37 +667,37 @@ public class NeuralNetwork {
 
     /**
      * Writes network error statistics to stats/err_writer.csv
-     * (percentage of false classifications)
-     * @param currentEpoch the current epoch
-     * @param nbOfEpochs   total number of epochs
+     * (percentage of false classifications and mean cross-entropy loss)
+     * @param currentEpoch     the current epoch
+     * @param training_error   the training classification error of the epoch
+     * @param validation_error the validation classification error of the epoch
+     * @param training_loss    the mean training loss of the epoch
+     * @param validation_loss  the mean validation loss of the epoch
      * @throws IOException on IO exception when accessing stats/error_stats.csv
      */
-    private void write_statistics(int currentEpoch, int nbOfEpochs) throws IOException {
+    private void write_statistics(int currentEpoch, double training_error, double validation_error,
+                                  double training_loss, double validation_loss) throws IOException {
         if (!writeStats) return;
-        //validation classification error
-        double validation_error = outputLayer.get_class_err(false);
-        //training classification error
-        double training_error = outputLayer.get_class_err(true);
         //write statistics to file
         File errFile;
         if (err_writer == null) {
             File statsFolder = new File("stats");
             statsFolder.mkdir();
             errFile = new File("stats/error_stats.csv");
-            err_writer = new BufferedWriter(new FileWriter(errFile));
-            if (validationInput != null) {
-                err_writer.write("Epoch,Training Error,Validation Error\n");
-            } else {
-                err_writer.write("Epoch,Training Error\n");
+            //when resuming, keep the stats of the epochs trained before the checkpoint
+            boolean append = firstEpoch > 0 && errFile.exists();
+            err_writer = new BufferedWriter(new FileWriter(errFile, append));
+            if (!append) {
+                if (validationSet != null) {
+                    err_writer.write("Epoch,Training Error,Validation Error,Training Loss,Validation Loss\n");
+                } else {
+                    err_writer.write("Epoch,Training Error,Training Loss\n");
+                }
             }
         }
         err_writer.write(String.format("%d,%f", currentEpoch, training_error));
-        if (validationInput != null) err_writer.write(String.format(",%f\n", validation_error));
-        else err_writer.write("\n");
-        if (currentEpoch == nbOfEpochs - 1) {
-            finalTrainingErr = training_error;
-            finalValidationErr = validation_error;
-        }
+        if (validationSet != null) err_writer.write(String.format(",%f,%f,%f\n", validation_error, training_loss, validation_loss));
+        else err_writer.write(String.format(",%f\n", training_loss));
     }
 
     /**
@@ -279,258 +713,416 @@ public class NeuralNetwork {
      *
      * @see #init(int)
      */
-    private void validate() {
-        if (validationInput != null) {
+    void validate() {
+        if (validationSet != null) {
             //order does not matter on validation
-            for (int row3 = 0; row3 < validationInput.getRowDimension(); row3++) {
-                inputLayer.setInputs(new double[]{validationInput.get(row3, 0), validationInput.get(row3, 1), validationInput.get(row3, 2), BIAS /*bias*/});
-                outputLayer.setTrainingOutput(validationOutput.getArray()[row3]);
-                hiddenLayer1.process();
-                hiddenLayer2.process();
-                outputLayer.process();
+            for (int row3 = 0; row3 < validationSet.size(); row3++) {
+                inputLayer.setInputs(validationSet.getInput(row3, 0), validationSet.getInput(row3, 1), validationSet.getInput(row3, 2));
+                outputLayer.setTrainingOutput(validationSet.getColor(row3));
+                for (Layer layer : weightedLayers) {
+                    layer.process();
+                }
                 outputLayer.calc_class_err(false);
             }
         }
     }
 
     /**
-     * Feeds a the training set through the neural network,
-     * then back-propagates the error and adjusts the weights.
+     * Feeds the training set through the neural network once, in a random order.
+     * If the training set is streamed from the disk, the lines are shuffled within each chunk.
      * Called once during every epoch.
+     *
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws ExecutionException   if a worker failed
+     * @throws IOException          if the training stream could not be read
      * @see #init(int)
+     * @see #setTrainingStream(DataStream)
      */
-    private void train() {
-
-        Random rnd = new Random();
-        int row;
-        //randomize line order to improve training
-        ArrayList<Integer> processedLines = new ArrayList<>();
-        row = rnd.nextInt(trainingInput.getRowDimension());
-
-        for (int n = 0; n < trainingInput.getRowDimension(); n++) {
+    private void trainEpoch() throws InterruptedException, ExecutionException, IOException {
+        boolean batch = batchSize > 1 || nbOfThreads > 1;
+        if (trainingStream == null) {
+            //randomize line order to improve training, every row is processed once per epoch
+            if (sampler == null) sampler = new EpochSampler(trainingSet.size(), random);
+            int[] order = sampler.shuffle();
+            if (batch) trainBatch(trainingSet, order, order.length);
+            else train(trainingSet, order, order.length);
+        } else {
+            if (sampler == null) sampler = new EpochSampler(trainingStream.getChunkSize(), random);
+            trainingStream.rewind();
+            DataSet chunk;
+            while ((chunk = trainingStream.next()) != null) {
+                int[] order = sampler.shuffle(chunk.size());
+                if (batch) trainBatch(chunk, order, chunk.size());
+                else train(chunk, order, chunk.size());
+            }
+        }
+    }
 
-            //don't train the same row twice during one epoch
-            while (processedLines.contains(row)) row = rnd.nextInt(trainingInput.getRowDimension());
-            processedLines.add(row);
+    /**
+     * Feeds a the training set through the neural network,
+     * then back-propagates the error and adjusts the weights.
+     *
+     * @param dataSet  the training set (or a chunk of it)
+     * @param order    the order in which the lines are processed
+     * @param nbOfRows the number of lines to be processed (first elements of {@code order})
+     * @see #trainEpoch()
+     */
+    private void train(DataSet dataSet, int[] order, int nbOfRows) {
+        for (int i = 0; i < nbOfRows; i++) {
+            int row = order[i];
             //set the networks training input and training outputs
-            inputLayer.setInputs(new double[]{trainingInput.get(row, 0), trainingInput.get(row, 1), trainingInput.get(row, 2), BIAS});
-            outputLayer.setTrainingOutput(trainingOutput.getArray()[row]);
+            inputLayer.setInputs(dataSet.getInput(row, 0), dataSet.getInput(row, 1), dataSet.getInput(row, 2));
+            outputLayer.setTrainingOutput(dataSet.getColor(row));
 
             //forward phase
-            hiddenLayer1.process();
-            hiddenLayer2.process();
-            outputLayer.process();
+            for (Layer layer : weightedLayers) {
+                layer.process();
+            }
 
             //classification error
             outputLayer.calc_class_err(true);
 
             //Back propagation
-            outputLayer.calculate_delta();
-            hiddenLayer2.calculate_delta();
-            hiddenLayer1.calculate_delta();
-
-            outputLayer.adjustLayerWeights();
-            hiddenLayer2.adjustLayerWeights();
-            hiddenLayer1.adjustLayerWeights();
-        }
-        processedLines.clear();
-    }
-
-    /**
-     * Parses a csv file, which is in following format: <br >
-     * {@code r,g,b;x1,x2,x3,...,xn}<br>
-     * With one of the {@code xi} set to one. Where <br>
-     * {@code r}: red value [0-255]<br>
-     * {@code g}: green value [0-255]<br>
-     * {@code b}: blue value [0-255]<br>
-     * {@code x1}: set to 1 if color is red<br>
-     * {@code x2}: set to 1 if color is green<br>
-     * {@code x3}: set to 1 if color is blue<br>
-     * (Note: the order of the {@code xi} can be interchanged, this will result
-     * in a change of the output vector {@link #write_C_source(String)})
-     * The csv values are then inserted into the following Matrices<br>
+            for (int l = weightedLayers.length - 1; l >= 0; l--) {
+                weightedLayers[l].calculate_delta();
+            }
+
+            for (int l = weightedLayers.length - 1; l >= 0; l--) {
+                weightedLayers[l].adjustLayerWeights();
+            }
+        }
+    }
+
+    /**
+     * Feeds the training set through the neural network in mini-batches of {@link #batchSize} lines.
+     * Every layer processes the whole mini-batch at once (matrix-matrix products), the weight
+     * adjustments of the lines are accumulated and applied once at the end of the mini-batch.
+     * <p>
+     * If more than one thread is used, each thread processes its own mini-batch (shard) using
+     * replicas of the layers. The adjustments of all shards are then added up in a fixed order
+     * (so that the result does not depend on thread scheduling) and applied to the shared weights.
+     *
+     * @param dataSet  the training set (or a chunk of it)
+     * @param order    the order in which the lines are processed
+     * @param nbOfRows the number of lines to be processed (first elements of {@code order})
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws ExecutionException   if a worker failed
+     * @see #trainEpoch()
+     * @see #setBatchSize(int)
+     * @see #setNbOfThreads(int)
+     */
+    private void trainBatch(DataSet dataSet, int[] order, int nbOfRows) throws InterruptedException, ExecutionException {
+        if (workers == null) createWorkers();
+        for (TrainingWorker worker : workers) {
+            worker.setTrainingSet(dataSet);
+        }
+
+        int step = batchSize * workers.size();
+        for (int first = 0; first < nbOfRows; first += step) {
+            for (int w = 0; w < workers.size(); w++) {
+                int from = Math.min(nbOfRows, first + w * batchSize);
+                workers.get(w).setShard(order, from, Math.min(nbOfRows, from + batchSize));
+            }
+            if (pool == null) {
+                workers.get(0).call();
+            } else {
+                for (Future<Void> result : pool.invokeAll(workers)) {
+                    result.get();
+                }
+            }
+            for (int w = 1; w < workers.size(); w++) {
+                workers.get(0).add(workers.get(w));
+            }
+            workers.get(0).applyWeightDelta();
+        }
+    }
+
+    /**
+     * Creates one training worker per thread, and the thread pool running them
+     * if more than one thread is used.
+     */
+    private void createWorkers() {
+        setBatchSize(batchSize);
+        workers = new ArrayList<>();
+        workers.add(new TrainingWorker(inputLayer, hiddenLayers, outputLayer));
+        for (int i = 1; i < nbOfThreads; i++) {
+            workers.add(TrainingWorker.replicate(workers.get(0)));
+        }
+        if (nbOfThreads > 1) pool = new ForkJoinPool(nbOfThreads);
+    }
+
+    /**
+     * Parses the data sets, see {@link DataSet#parse(String, int, boolean)} for the csv format.
      * <b>Note:</b>The first line of the testing set *must* contain the names of the colors
      * to that are to be recognized, in the correct order and separated by commas (see testing
      * set example)
-     * {@link #trainingInput}
-     * {@link #trainingOutput}
-     * {@link #validationInput}
-     * {@link #validationOutput}
-     * {@link #testingInput}
-     * {@link #testingOutput}
-     *
-     * @param trainingSet csv file path of the training set
+     *
+     * @param trainingSet   csv file path of the training set
      * @param validationSet csv file path of the validation set (optional)
-     * @param testingSet csv file path of the testing set (optional)
+     * @param testingSet    csv file path of the testing set (optional)
      * @throws IOException if an IO exception occurs
-     * @throws Exception   if the csv file has an incorrect format.
      */
-    public void parseDataSets(String trainingSet, String validationSet, String testingSet) throws Exception {
-
-        ArrayList<String> files = new ArrayList<>();
-        files.add(trainingSet);
-
-        //optional
-        if (validationSet == null) files.add("");
-        else files.add(validationSet);
-        if (testingSet == null) files.add("");
-        else files.add(testingSet);
+    public void parseDataSets(String trainingSet, String validationSet, String testingSet) throws IOException {
+        setDataSets(trainingSet == null ? null : DataSet.parse(trainingSet, nbOfColors, false),
+                validationSet == null ? null : DataSet.parse(validationSet, nbOfColors, false),
+                testingSet == null ? null : DataSet.parse(testingSet, nbOfColors, true));
+    }
 
-        double[][] inputArray = null;
-        double[][] outputArray = null;
-        int nbOfLines = 0;
+    /**
+     * Specifies already parsed data sets. As data sets are immutable, the same
+     * data sets can be used by several networks.
+     *
+     * @param trainingSet   the training set
+     * @param validationSet the validation set (optional)
+     * @param testingSet    the testing set (optional), its header defines the color names
+     */
+    public void setDataSets(DataSet trainingSet, DataSet validationSet, DataSet testingSet) {
+        this.trainingSet = trainingSet;
+        this.validationSet = validationSet;
+        this.testingSet = testingSet;
+        if (testingSet != null) this.colorNames = testingSet.getColorNames();
+    }
+//------------------------------------------Model files------------------------------------------------------------
 
-        for (int k = 0; k < files.size(); k++) {
-            if (files.get(k).equals("")) continue;
-            File dataSet = new File(files.get(k));
-            BufferedReader bufferedReader = null;
-            LineNumberReader lineNumberReader;
-            try {
-                lineNumberReader = new LineNumberReader(new FileReader(dataSet));
-                //get the number of lines
-                lineNumberReader.skip(Long.MAX_VALUE);
-                nbOfLines = lineNumberReader.getLineNumber() + 1;
-                bufferedReader = new BufferedReader(new FileReader(dataSet));
-            } catch (FileNotFoundException e) {
-                System.err.printf("error: %s%n", e.getMessage());
-                System.exit(-1);
+    /**
+     * Saves the model: a header (magic number, version, number of trained epochs, layer widths
+     * without bias neurons, color names, names of the hidden layers' activation functions) followed
+     * by the weights of every layer (row-major, one row per neuron, bias weight last). Integers and
+     * doubles are big-endian, the names are preceded by their length (short) and UTF-8 encoded.
+     * Version 1 models (without activation functions, sigmoid only) can still be loaded.
+     * <p>
+     * The model is written to a temporary file which then replaces the given file, as such
+     * an existing model is never left half-written (e.g. checkpoints, if the program crashes).
+     *
+     * @param filename the model file (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     * @see #load(String)
+     */
+    public void save(String filename) throws IOException {
+        File tmp = new File(filename + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MODEL_MAGIC);
+            out.writeInt(MODEL_VERSION);
+            out.writeInt(nbOfTrainedEpochs);
+            int[] widths = getTopology();
+            out.writeInt(widths.length);
+            for (int width : widths) {
+                out.writeInt(width);
             }
-            try {
-                String currentLine;
-                String[] tmpInputLines = new String[nbOfLines];
-                String[] tmpOutputLines = new String[nbOfLines];
-                inputArray = new double[nbOfLines][3];
-                outputArray = new double[nbOfLines][this.nbOfColors];
-                int i = 0;
-                boolean headerParsed = false;
-                while ((currentLine = bufferedReader.readLine()) != null) {
-                    if (k == 2 && !headerParsed) {
-                        headerParsed = true;
-                        colorNames = currentLine.split(",");
-                        currentLine = bufferedReader.readLine();
-                        for (String colorName : colorNames) {
-                            if (Pattern.compile("[0-9]+").matcher(colorName).find()) {
-                                System.err.println("\nInvalid test color header. The test file must" +
-                                        "contain a header line containing color names separated by commas.");
-                                System.exit(-1);
-                            }
-                        }
-                    }
-                    while (currentLine.equals("")) {
-                        currentLine = bufferedReader.readLine();
-                    }
-                    tmpInputLines[i] = currentLine.split(";")[0];
-                    tmpOutputLines[i] = currentLine.split(";")[1];
-                    String[] colorVals = tmpInputLines[i].split(",");
-                    String[] outputVals = tmpOutputLines[i].split(",");
-                    //get rgb values and normalize
-                    double red = Double.valueOf(colorVals[0]);
-                    double rednorm = 2 * (red / 255.) - 1;
-                    double green = Double.valueOf(colorVals[1]);
-                    double greennorm = 2 * (green / 255.) - 1;
-                    double blue = Double.valueOf(colorVals[2]);
-                    double bluenorm = 2 * (blue / 255.) - 1;
-                    inputArray[i] = new double[]{rednorm, greennorm, bluenorm};
-
-                    for (int j = 0; j < outputVals.length; j++) {
-                        outputArray[i][j] = Double.valueOf(outputVals[j]);
-                    }
-                    i++;
+            out.writeShort(colorNames == null ? 0 : colorNames.length);
+            if (colorNames != null) {
+                for (String colorName : colorNames) {
+                    byte[] name = colorName.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(name.length);
+                    out.write(name);
                 }
-            } catch (IOException e) {
-                System.err.printf("IO error: %s%n", e.getMessage());
-            } catch (ArrayIndexOutOfBoundsException e) {
-                System.err.println("error: passed csv file has bad format\n");
-                System.exit(0);
-            } finally {
-                bufferedReader.close();
             }
-            switch (k) {
-                case 0:
-                    this.trainingInput = new Matrix(inputArray);
-                    this.trainingOutput = new Matrix(outputArray);
-                    break;
-                case 1:
-                    this.validationInput = new Matrix(inputArray);
-                    this.validationOutput = new Matrix(outputArray);
-                    break;
-                case 2:
-                    this.testingInput = new Matrix(inputArray);
-                    this.testingOutput = new Matrix(outputArray);
-                    break;
-                default:
-                    System.err.println("Error while parsing data sets");
-                    System.exit(0);
+            for (HiddenLayer hiddenLayer : hiddenLayers) {
+                byte[] name = hiddenLayer.getActivation().getName().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
             }
+            for (Layer layer : weightedLayers) {
+                for (double weight : layer.getWeights()) out.writeDouble(weight);
+            }
+        } finally {
+            out.close();
         }
+        Files.move(tmp.toPath(), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
+    /**
+     * Loads a model saved by {@link #save(String)}, e.g. to query a trained network without training it.
+     * The file is memory-mapped and the weights are copied from the mapping in bulk.
+     *
+     * @param filename the model file
+     * @return the network
+     * @throws IOException if an IO exception occurs or if the file is not a valid model
+     */
+    public static NeuralNetwork load(String filename) throws IOException {
+        ByteBuffer buffer = map(filename);
+        int[] widths = readTopology(buffer, filename);
+        NeuralNetwork network = new NeuralNetwork(Arrays.copyOfRange(widths, 1, widths.length - 1), widths[widths.length - 1]);
+        network.readModel(buffer, filename, false);
+        return network;
+    }
 
+    /**
+     * Resumes training from a checkpoint: the weights and the number of trained epochs are loaded
+     * from the model file, the next call to {@link #init(int)} then starts with the following epoch.
+     * The network's topology and activation functions must be the same as the checkpoint's.
+     *
+     * @param filename the checkpoint (model file)
+     * @throws IOException if an IO exception occurs or if the file is not a valid model
+     * @see #setCheckpoint(String, int)
+     */
+    public void resume(String filename) throws IOException {
+        ByteBuffer buffer = map(filename);
+        int[] widths = readTopology(buffer, filename);
+        if (!Arrays.equals(widths, getTopology()))
+            throw new IOException(filename + ": topology " + Arrays.toString(widths) + " differs from the network's "
+                    + Arrays.toString(getTopology()));
+        readModel(buffer, filename, true);
+        firstEpoch = nbOfTrainedEpochs;
     }
+
+    /**
+     * @param filename the model file
+     * @return the mapped model file (read-only)
+     * @throws IOException if an IO exception occurs
+     */
+    private static ByteBuffer map(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            //the mapping stays valid once the file is closed
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads the header of a model file up to (and including) the layer widths
+     *
+     * @param buffer   the model file, positioned at its beginning
+     * @param filename the model file's name (for error messages)
+     * @return the layer widths (without bias neurons)
+     * @throws IOException if the file is not a valid model
+     */
+    private static int[] readTopology(ByteBuffer buffer, String filename) throws IOException {
+        if (buffer.limit() < 16 || buffer.getInt() != MODEL_MAGIC) throw new IOException("Not a model file: " + filename);
+        int version = buffer.getInt();
+        if (version < 1 || version > MODEL_VERSION) throw new IOException("Unsupported model version: " + version);
+        buffer.getInt();
+        int nbOfLayers = buffer.getInt();
+        if (nbOfLayers < 3 || 4L * nbOfLayers > buffer.remaining())
+            throw new IOException(filename + ": unsupported number of layers " + nbOfLayers);
+        int[] widths = new int[nbOfLayers];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = buffer.getInt();
+            if (widths[i] < 1) throw new IOException(filename + ": unsupported topology " + Arrays.toString(widths));
+        }
+        if (widths[0] != 3) throw new IOException(filename + ": unsupported topology " + Arrays.toString(widths));
+        return widths;
+    }
+
+    /**
+     * Reads a model file into the network, which has the model's topology
+     *
+     * @param buffer      the model file, positioned at its beginning
+     * @param filename    the model file's name (for error messages)
+     * @param activations whether the model's activation functions must be the network's (resuming),
+     *                    otherwise they replace the network's
+     * @throws IOException if the file is not a valid model
+     */
+    private void readModel(ByteBuffer buffer, String filename, boolean activations) throws IOException {
+        buffer.rewind();
+        buffer.position(4);
+        int version = buffer.getInt();
+        nbOfTrainedEpochs = buffer.getInt();
+        buffer.position(buffer.position() + 4 + 4 * buffer.getInt(buffer.position()));
+        int nbOfNames = buffer.getShort();
+        colorNames = nbOfNames == 0 ? colorNames : new String[nbOfNames];
+        for (int i = 0; i < nbOfNames; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            colorNames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        Activation[] functions = new Activation[hiddenLayers.length];
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            if (version < 2) {
+                functions[l] = Activation.SIGMOID;
+                continue;
+            }
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            try {
+                functions[l] = Activation.forName(new String(name, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(filename + ": " + e.getMessage());
+            }
+            if (activations && functions[l] != hiddenLayers[l].getActivation())
+                throw new IOException(filename + ": activation function " + functions[l].getName()
+                        + " differs from the network's " + hiddenLayers[l].getActivation().getName());
+        }
+        long nbOfWeights = 0;
+        for (Layer layer : weightedLayers) {
+            nbOfWeights += layer.getWeights().length;
+        }
+        if (buffer.remaining() != 8 * nbOfWeights) throw new IOException("Truncated model file: " + filename);
+        //the weights are copied into the existing arrays, which are shared with the layers' replicas
+        DoubleBuffer weights = buffer.asDoubleBuffer();
+        for (Layer layer : weightedLayers) {
+            weights.get(layer.getWeights());
+        }
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            hiddenLayers[l].setActivation(functions[l]);
+        }
+        resetInferenceWorkers();
+    }
+
+    /**
+     * Saves the model periodically during training ({@link #init(int)}), so that a long training can be
+     * resumed after a crash ({@link #resume(String)}). A checkpoint is also saved after the last epoch.
+     *
+     * @param filename the checkpoint file (overwritten every {@code interval} epochs), {@code null} for none
+     * @param interval the number of epochs between two checkpoints
+     */
+    public void setCheckpoint(String filename, int interval) {
+        if (interval < 1) throw new IllegalArgumentException("Invalid checkpoint interval: " + interval);
+        this.checkpoint = filename;
+        this.checkpointInterval = interval;
+    }
+
 //------------------------------------------C source writer---------------------------------------------------------
 
     /**
      * Prints out the query formula for the neural network in a c file that can then be compiled
      * with the other project files and can be run independently from the java program.
+     * One weight matrix and one output buffer are written per hidden layer.
      *
      * @param filename the c source file to write to.
      */
     public void write_C_source(String filename) {
         String pattern = "dd.MM.yyyy 'at' HH:mm:ss";
         String timeStamp = new SimpleDateFormat(pattern).format(new Date());
-        double[][] hlWeightMatrix = new double[hiddenLayer1.getNbOfNeurons() - 1][inputLayer.getNbOfNeurons()];
-        //---------------------------------------Generate hidden Layer 1 weight matrix----------------------------------------
-        String hlwMatrix1 = String.format("double hl1WeightMatrix1[%d][%d]", hiddenLayer1.getNbOfNeurons() - 1, inputLayer.getNbOfNeurons());
-        StringBuilder sb = new StringBuilder(hlwMatrix1);
-        sb.append(" = {");
-        for (int i = 0; i < hiddenLayer1.getNbOfNeurons() - 1; i++) {
-            sb.append("{");
-            for (int j = 0; j < inputLayer.getNbOfNeurons(); j++) {
-                hlWeightMatrix[i][j] = hiddenLayer1.getNeurons()[i].getSynapse_weights().get(j, 0);
-                sb.append(hlWeightMatrix[i][j]);
-                sb.append(",");
-            }
-            sb.deleteCharAt(sb.length() - 1);
-            sb.append("},");
+        //---------------------------------------Generate the weight matrices and buffers---------------------------------
+        StringBuilder declarations = new StringBuilder();
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            declarations.append("double hiddenOut").append(l + 1).append("[").append(hiddenLayers[l].getNbOfNeurons()).append("];\n");
         }
-        sb.deleteCharAt(sb.length() - 1);
-        sb.append("};\n");
-        hlwMatrix1 = sb.toString();
-        //---------------------------------------Generate hidden Layer 2 weight matrix----------------------------------------
-        double[][] hl2WeightMatrix = new double[hiddenLayer2.getNbOfNeurons() - 1][hiddenLayer1.getNbOfNeurons()];
-        String hlwMatrix2 = String.format("double hl2WeightMatrix1[%d][%d]", hiddenLayer2.getNbOfNeurons() - 1, hiddenLayer1.getNbOfNeurons());
-        StringBuilder sbhl2 = new StringBuilder(hlwMatrix2);
-        sbhl2.append(" = {");
-        for (int i = 0; i < hiddenLayer2.getNbOfNeurons() - 1; i++) {
-            sbhl2.append("{");
-            for (int j = 0; j < hiddenLayer1.getNbOfNeurons(); j++) {
-                hl2WeightMatrix[i][j] = hiddenLayer2.getNeurons()[i].getSynapse_weights().get(j, 0);
-                sbhl2.append(hl2WeightMatrix[i][j]);
-                sbhl2.append(",");
-            }
-            sbhl2.deleteCharAt(sbhl2.length() - 1);
-            sbhl2.append("},");
-        }
-        sbhl2.deleteCharAt(sbhl2.length() - 1);
-        sbhl2.append("};\n");
-        hlwMatrix2 = sbhl2.toString();
-        //---------------------------------------Generate output Layer weight matrix----------------------------------------
-        double[][] outWeightMatrix = new double[outputLayer.getNbOfNeurons()][hiddenLayer1.getNbOfNeurons()];
-        String outwMatrix = String.format("double outWeightMatrix1[%d][%d]", outputLayer.getNbOfNeurons(), hiddenLayer1.getNbOfNeurons());
-        StringBuilder sb2 = new StringBuilder(outwMatrix);
-        sb2.append(" = {");
-        for (int i = 0; i < outputLayer.getNbOfNeurons(); i++) {
-            sb2.append("{");
-            for (int j = 0; j < hiddenLayer1.getNbOfNeurons(); j++) {
-                outWeightMatrix[i][j] = outputLayer.getNeurons()[i].getSynapse_weights().get(j, 0);
-                sb2.append(outWeightMatrix[i][j]);
-                sb2.append(",");
-            }
-            sb2.deleteCharAt(sb2.length() - 1);
-            sb2.append("},");
+        declarations.append("double out[").append(outputLayer.getNbOfNeurons()).append("];\n");
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            appendWeightMatrix(declarations, "hl" + (l + 1) + "WeightMatrix1", hiddenLayers[l]);
+        }
+        appendWeightMatrix(declarations, "outWeightMatrix1", outputLayer);
+        //one C function per activation function used
+        EnumSet<Activation> functions = EnumSet.noneOf(Activation.class);
+        for (HiddenLayer hiddenLayer : hiddenLayers) {
+            functions.add(hiddenLayer.getActivation());
+        }
+        for (Activation function : functions) {
+            declarations.append(function.toC());
+        }
+        //---------------------------------------Generate the hidden layers----------------------------------------------
+        StringBuilder hidden = new StringBuilder();
+        String prevOut = "inputs";
+        int prevWidth = inputLayer.getNbOfNeurons();
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            String out = "hiddenOut" + (l + 1);
+            int width = hiddenLayers[l].getNbOfNeurons();
+            hidden.append("    for(i = 0; i < ").append(width).append(" - 1; i++){\n")
+                    .append("        sum = 0;\n")
+                    .append("        for(j = 0; j < ").append(prevWidth).append("; j++){\n")
+                    .append("            sum += ").append(prevOut).append("[j] * hl").append(l + 1).append("WeightMatrix1[i][j];\n")
+                    .append("        }\n")
+                    .append("        ").append(out).append("[i] = ").append(hiddenLayers[l].getActivation().getCFunction()).append("(sum);\n")
+                    .append("    }\n")
+                    .append("    ").append(out).append("[").append(width).append(" - 1] = ").append(BIAS).append(";\n");
+            prevOut = out;
+            prevWidth = width;
         }
-        sb2.deleteCharAt(sb2.length() - 1);
-        sb2.append("};\n");
-        outwMatrix = sb2.toString();
         //----------------------------------generate C file-----------------------------------------------------------------
         File cFile = new File(filename);
         BufferedWriter cSourceWritter = null;
@@ -542,14 +1134,10 @@ public class NeuralNetwork {
                             "Gen time: " + timeStamp + ". Use -lm flag when compiling to get access to the exp() function from math.h\n" +
                             "This function returns an array of doubles indicating the probability of each color (same order as the)\n" +
                             "training data set (eg: r,g,b,v,c)\n" +
+                            "Topology: " + Arrays.toString(getTopology()) + "\n" +
                             "--------------------------------------------------------------------------------------------------*/\n\n\n" +
                             "#include <math.h>\n" +
-                            "double hiddenOut1[" + hiddenLayer1.getNbOfNeurons() + "];\n" +
-                            "double hiddenOut2[" + hiddenLayer2.getNbOfNeurons() + "];\n" +
-                            "double out["+outputLayer.getNbOfNeurons()+"];\n" +
-                            hlwMatrix1 +
-                            hlwMatrix2 +
-                            outwMatrix +
+                            declarations +
                             "double* query(double r, double g, double b);" +
                             "\n" +
                             "double* query(double r, double g, double b){\n" +
@@ -563,34 +1151,24 @@ public class NeuralNetwork {
                             "    int n = 0;\n" +
                             "    double inputs[4] = {r,g,b," + BIAS + "};\n" +
                             "\n" +
-                            "    for(i = 0; i < " + hiddenLayer1.getNbOfNeurons() + " - 1; i++){\n" +
-                            "        sum = 0;\n" +
-                            "        for(j = 0; j < " + inputLayer.getNbOfNeurons() + "; j++){\n" +
-                            "            sum += inputs[j] * hl1WeightMatrix1[i][j];\n" +
-                            "        }\n" +
-                            "        hiddenOut1[i] = 1. / (1 + exp(-sum));\n" +
-                            "    }\n" +
-                            "\n" +
-                            "    hiddenOut1[" + hiddenLayer1.getNbOfNeurons() + " - 1] = " + BIAS + ";\n" +
-                            "    for(i = 0; i < " + hiddenLayer2.getNbOfNeurons() + "-1;i++){\n" +
-                            "        sum = 0;\n" +
-                            "        for(j = 0; j < " + hiddenLayer1.getNbOfNeurons() + "; j++){\n" +
-                            "            sum += hiddenOut1[j] * hl2WeightMatrix1[i][j];\n" +
-                            "        }\n" +
-                            "        hiddenOut2[i] = 1. / (1 + exp(-sum));\n" +
-                            "    }hiddenOut2[" + hiddenLayer2.getNbOfNeurons() + "-1] = -1 ;\n" +
+                            hidden +
                             "    double weightedInput[" + outputLayer.getNbOfNeurons() + "];\n" +
                             "    double softmaxsum = 0;\n" +
+                            "    double max = 0;\n" +
                             "    for(i = 0; i < " + outputLayer.getNbOfNeurons() + "; i++){\n" +
                             "        sum = 0;\n" +
-                            "        for(j = 0; j < " + hiddenLayer2.getNbOfNeurons() + "; j++){\n" +
-                            "            sum += hiddenOut2[j] * outWeightMatrix1[i][j];\n" +
+                            "        for(j = 0; j < " + prevWidth + "; j++){\n" +
+                            "            sum += " + prevOut + "[j] * outWeightMatrix1[i][j];\n" +
                             "        }\n" +
                             "        weightedInput[i] = sum;\n" +
-                            "        softmaxsum += exp(weightedInput[i]);\n" +
+                            "        if (i == 0 || sum > max) max = sum;\n" +
                             "    }\n" +
                             "    for(n = 0; n < " + outputLayer.getNbOfNeurons() + "; n++){\n" +
-                            "        out[n] = exp(weightedInput[n]) / softmaxsum;\n" +
+                            "        out[n] = exp(weightedInput[n] - max);\n" +
+                            "        softmaxsum += out[n];\n" +
+                            "    }\n" +
+                            "    for(n = 0; n < " + outputLayer.getNbOfNeurons() + "; n++){\n" +
+                            "        out[n] = out[n] / softmaxsum;\n" +
                             "        out[n] = roundf(out[n] * 100) / 100;\n" +
                             "    }\n" +
                             "    return out;\n" +
@@ -612,6 +1190,31 @@ public class NeuralNetwork {
         }
     }
 
+    /**
+     * Appends the C declaration of a layer's weight matrix (one row per neuron, one column per input)
+     *
+     * @param sb    the C source
+     * @param name  the matrix's name
+     * @param layer the layer
+     */
+    private static void appendWeightMatrix(StringBuilder sb, String name, Layer layer) {
+        int rows = layer.getNbOfWeightedNeurons();
+        int columns = layer.getNbOfInputs();
+        sb.append(String.format("double %s[%d][%d]", name, rows, columns));
+        sb.append(" = {");
+        for (int i = 0; i < rows; i++) {
+            sb.append("{");
+            for (int j = 0; j < columns; j++) {
+                sb.append(layer.getWeight(i, j));
+                sb.append(",");
+            }
+            sb.deleteCharAt(sb.length() - 1);
+            sb.append("},");
+        }
+        sb.deleteCharAt(sb.length() - 1);
+        sb.append("};\n");
+    }
+
     /**
      * Setter for {@link #writeStats}
      *
@@ -622,6 +1225,210 @@ public class NeuralNetwork {
         this.writeStats = writeStats;
     }
 
+    /**
+     * Streams the training set from the disk instead of loading it: during every epoch, the
+     * data set is read chunk by chunk and the lines are shuffled within each chunk (the chunk
+     * size bounds the shuffling and the memory used). Replaces the training set passed to
+     * {@link #setDataSets(DataSet, DataSet, DataSet)}.
+     *
+     * @param trainingStream the training set's stream (not closed by the network)
+     */
+    public void setTrainingStream(DataStream trainingStream) {
+        this.trainingStream = trainingStream;
+        this.sampler = null;
+    }
+
+    /**
+     * Enables early stopping: {@link #init(int)} stops once the validation error (training error if there
+     * is no validation set) did not improve by more than {@code minDelta} during {@code patience} epochs.
+     * The weights of the epoch with the lowest error are kept in memory and restored at the end of the
+     * training, the final errors are those of that epoch.
+     *
+     * @param patience number of epochs without improvement before stopping, 0 to disable early stopping
+     * @param minDelta minimal decrease of the error (percentage points) counted as an improvement
+     */
+    public void setEarlyStopping(int patience, double minDelta) {
+        if (patience < 0) throw new IllegalArgumentException("Invalid patience: " + patience);
+        this.patience = patience;
+        this.minDelta = minDelta;
+    }
+
+    /**
+     * Sets the learning rate schedule, consulted before every epoch. Schedules reacting to the error
+     * (reduce on plateau) are given the validation error, the training error if there is no validation set.
+     *
+     * @param schedule the schedule, {@code null} to keep the learning rate constant
+     */
+    public void setLearningRateSchedule(LearningRateSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * Sets the number of training lines fed through the network before the weights are adjusted
+     * and allocates the layers' mini-batch buffers. The adjustments of the lines are summed, not
+     * averaged (see {@link Layer#applyWeightDelta()}): the learning rate has to be scaled down
+     * when the mini-batch size is increased.
+     *
+     * @param batchSize the mini-batch size (1 for stochastic gradient descent)
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.batchSize = batchSize;
+        inputLayer.setBatchSize(batchSize);
+        for (Layer layer : weightedLayers) {
+            layer.setBatchSize(batchSize);
+        }
+    }
+
+    /**
+     * Sets the number of threads used for training (data-parallel training).
+     * Each thread processes a mini-batch of {@link #batchSize} lines, the weights are adjusted
+     * once every thread is done, as such the weights are adjusted every
+     * {@code nbOfThreads * batchSize} lines.
+     *
+     * @param nbOfThreads the number of training threads
+     * @see #setBatchSize(int)
+     */
+    public void setNbOfThreads(int nbOfThreads) {
+        if (nbOfThreads < 1) throw new IllegalArgumentException("Invalid number of threads: " + nbOfThreads);
+        this.nbOfThreads = nbOfThreads;
+    }
+
+    /**
+     * Sets the number of threads used to classify frames, each thread classifying a stripe of the frame
+     *
+     * @param nbOfInferenceThreads the number of inference threads
+     * @see #classify(byte[], byte[])
+     */
+    public void setNbOfInferenceThreads(int nbOfInferenceThreads) {
+        if (nbOfInferenceThreads < 1)
+            throw new IllegalArgumentException("Invalid number of threads: " + nbOfInferenceThreads);
+        this.nbOfInferenceThreads = nbOfInferenceThreads;
+        resetInferenceWorkers();
+    }
+
+    /**
+     * Discards the inference workers, they are created again by the next frame classification.
+     * Must be called whenever a setting copied by the layers' replicas (e.g. the activation) changes.
+     */
+    private void resetInferenceWorkers() {
+        if (inferencePool != null) inferencePool.shutdown();
+        inferencePool = null;
+        inferenceWorkers = null;
+    }
+
+    /**
+     * Sets the learning rate used when adjusting the weights
+     *
+     * @param learningRate the learning rate
+     */
+    public void setLearningRate(double learningRate) {
+        for (Layer layer : weightedLayers) {
+            layer.setLearningRate(learningRate);
+        }
+    }
+
+    /**
+     * Sets the activation function of the neurons of every hidden layer (sigmoid by default)
+     *
+     * @param activation the activation function
+     */
+    public void setActivation(Activation activation) {
+        for (HiddenLayer hiddenLayer : hiddenLayers) {
+            hiddenLayer.setActivation(activation);
+        }
+        //the replicas of the inference workers copied the previous activation
+        resetInferenceWorkers();
+    }
+
+    /**
+     * Sets the rule used to adjust the weights (plain gradient descent by default). Every layer
+     * gets its own optimizer of the same type, in its initial state, the learning rate is kept.
+     *
+     * @param optimizer the optimizer whose type and hyperparameters are used
+     * @see Optimizer#forName(String, double)
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        for (Layer layer : weightedLayers) {
+            layer.setOptimizer(optimizer);
+        }
+    }
+
+    /**
+     * Setter for {@link #showProgress}
+     *
+     * @param showProgress set to false to avoid printing the training progress
+     *                     (e.g. when several networks are trained concurrently)
+     */
+    public void setShowProgress(boolean showProgress) {
+        this.showProgress = showProgress;
+    }
+
+    /**
+     * @return the names of the colors (from the testing set's header or the model file),
+     * {@code null} if unknown
+     */
+    public String[] getColorNames() {
+        return colorNames;
+    }
+
+    /**
+     * @return the number of neurons (without bias) of every layer, from the input layer (3)
+     * to the output layer (number of colors)
+     */
+    public int[] getTopology() {
+        int[] widths = new int[hiddenLayers.length + 2];
+        widths[0] = inputLayer.getNbOfNeurons() - 1;
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            widths[l + 1] = hiddenLayers[l].getNbOfNeurons() - 1;
+        }
+        widths[widths.length - 1] = outputLayer.getNbOfNeurons();
+        return widths;
+    }
+
+    /**
+     * @return the number of colors recognized by the network
+     */
+    public int getNbOfColors() {
+        return nbOfColors;
+    }
+
+    /**
+     * Classifies every line of a data set, see {@link #classify(boolean, double, double, double)}
+     *
+     * @param dataSet the data set
+     * @return the classification error over the data set (% of missed classifications)
+     */
+    public double getClassificationError(DataSet dataSet) {
+        int correct = 0;
+        for (int row = 0; row < dataSet.size(); row++) {
+            if (classify(true, dataSet.getInput(row, 0), dataSet.getInput(row, 1), dataSet.getInput(row, 2)) == dataSet.getColor(row))
+                correct++;
+        }
+        return 100 - 100. * correct / dataSet.size();
+    }
+
+    /**
+     * @return the training set, {@code null} if not parsed (e.g. streamed)
+     */
+    public DataSet getTrainingSet() {
+        return trainingSet;
+    }
+
+    /**
+     * @return the validation set, {@code null} if none
+     */
+    public DataSet getValidationSet() {
+        return validationSet;
+    }
+
+    /**
+     * @return every layer with weights: the hidden layers followed by the output layer
+     */
+    Layer[] getWeightedLayers() {
+        return weightedLayers;
+    }
+
     /**
      * @return final training classification (% of missed classifications over the entire training set)
      */
@@ -635,4 +1442,18 @@ public class NeuralNetwork {
     public double getFinalValidationErr() {
         return finalValidationErr;
     }
+
+    /**
+     * @return final training loss (mean cross-entropy over the entire training set)
+     */
+    public double getFinalTrainingLoss() {
+        return finalTrainingLoss;
+    }
+
+    /**
+     * @return final validation loss (mean cross-entropy over the entire validation set)
+     */
+    public double getFinalValidationLoss() {
+        return finalValidationLoss;
+    }
 }
@@ -1,4 +0,0 @@
-/**
- * Regroups different Neuron types used in the Neural network
- */
-package NeuralNetwork.Neuron;
\ No newline at end of file
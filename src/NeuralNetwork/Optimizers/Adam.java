@@ -0,0 +1,78 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Adam: moving averages of the adjustments (first moment) and of the squared adjustments
+ * (second moment) of every weight, corrected for their initialization bias<br>
+ * {@code m = beta1 * m + (1 - beta1) * adjustment}<br>
+ * {@code v = beta2 * v + (1 - beta2) * adjustment^2}<br>
+ * {@code w += learningRate * (m / (1 - beta1^t)) / (sqrt(v / (1 - beta2^t)) + epsilon)}<br>
+ * where {@code t} is the number of updates.
+ *
+ * @author Nicolas Dutly
+ */
+public class Adam extends Optimizer {
+
+    /**
+     * Describe the default decays of the moving averages
+     */
+    public static final double BETA1 = 0.9, BETA2 = 0.999;
+    /**
+     * Describes the default term avoiding divisions by zero
+     */
+    public static final double EPSILON = 1E-8;
+
+    private final double beta1, beta2;
+    private final double epsilon;
+    /**
+     * Contain the moving averages of the adjustments and of the squared adjustments of each weight
+     */
+    private final double[] mean, meanSquare;
+    /**
+     * Contain {@code beta1^t} and {@code beta2^t}
+     */
+    private double beta1t = 1, beta2t = 1;
+
+    /**
+     * @param learningRate the learning rate
+     * @param beta1        the fraction of the adjustments' moving average kept at each update [0,1[
+     * @param beta2        the fraction of the squared adjustments' moving average kept at each update [0,1[
+     * @param epsilon      the term added to the root mean square to avoid divisions by zero
+     */
+    public Adam(double learningRate, double beta1, double beta2, double epsilon) {
+        this(learningRate, beta1, beta2, epsilon, 0);
+    }
+
+    private Adam(double learningRate, double beta1, double beta2, double epsilon, int nbOfWeights) {
+        super(learningRate);
+        if (beta1 < 0 || beta1 >= 1) throw new IllegalArgumentException("Invalid beta1: " + beta1);
+        if (beta2 < 0 || beta2 >= 1) throw new IllegalArgumentException("Invalid beta2: " + beta2);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.mean = new double[nbOfWeights];
+        this.meanSquare = new double[nbOfWeights];
+    }
+
+    @Override
+    public Optimizer create(int nbOfWeights) {
+        return new Adam(learningRate, beta1, beta2, epsilon, nbOfWeights);
+    }
+
+    @Override
+    public void update(double[] weights, double[] adjustment) {
+        beta1t *= beta1;
+        beta2t *= beta2;
+        //bias corrections, folded into the step size and into epsilon
+        double step = learningRate * Math.sqrt(1 - beta2t) / (1 - beta1t);
+        double eps = epsilon * Math.sqrt(1 - beta2t);
+        for (int i = 0; i < weights.length; i++) {
+            double g = adjustment[i];
+            double m = beta1 * mean[i] + (1 - beta1) * g;
+            double v = beta2 * meanSquare[i] + (1 - beta2) * g * g;
+            mean[i] = m;
+            meanSquare[i] = v;
+            weights[i] += step * m / (Math.sqrt(v) + eps);
+            adjustment[i] = 0;
+        }
+    }
+}
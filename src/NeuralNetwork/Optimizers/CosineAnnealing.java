@@ -0,0 +1,27 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Cosine annealing: the learning rate follows half a cosine period, from {@code baseRate}
+ * at the first epoch to {@code minRate} at the last one<br>
+ * {@code rate = minRate + (baseRate - minRate) * (1 + cos(pi * epoch / (nbOfEpochs - 1))) / 2}
+ *
+ * @author Nicolas Dutly
+ */
+public class CosineAnnealing extends LearningRateSchedule {
+
+    private final double minRate;
+
+    /**
+     * @param baseRate the initial learning rate
+     * @param minRate  the learning rate reached at the end of the training
+     */
+    public CosineAnnealing(double baseRate, double minRate) {
+        super(baseRate);
+        this.minRate = minRate;
+    }
+
+    @Override
+    protected double rate(int epoch, int nbOfEpochs) {
+        return minRate + (baseRate - minRate) * (1 + Math.cos(Math.PI * epoch / Math.max(nbOfEpochs - 1, 1))) / 2;
+    }
+}
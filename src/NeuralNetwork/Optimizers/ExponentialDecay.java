@@ -0,0 +1,32 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Exponential decay: the learning rate is multiplied by {@code gamma} after every epoch<br>
+ * {@code rate = baseRate * gamma^epoch}
+ *
+ * @author Nicolas Dutly
+ */
+public class ExponentialDecay extends LearningRateSchedule {
+
+    /**
+     * Describes the default decay factor
+     */
+    public static final double GAMMA = 0.99;
+
+    private final double gamma;
+
+    /**
+     * @param baseRate the initial learning rate
+     * @param gamma    the factor applied after every epoch ]0,1]
+     */
+    public ExponentialDecay(double baseRate, double gamma) {
+        super(baseRate);
+        if (gamma <= 0 || gamma > 1) throw new IllegalArgumentException("Invalid decay factor: " + gamma);
+        this.gamma = gamma;
+    }
+
+    @Override
+    protected double rate(int epoch, int nbOfEpochs) {
+        return baseRate * Math.pow(gamma, epoch);
+    }
+}
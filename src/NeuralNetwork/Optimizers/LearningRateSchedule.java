@@ -0,0 +1,102 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Describes how the learning rate evolves during the training. The network asks the schedule
+ * for the learning rate before every epoch ({@link #getLearningRate(int, int)}) and reports the
+ * error reached after every epoch ({@link #update(int, double)}).
+ * <p>
+ * Every schedule can start with a linear warmup: during the first {@code warmup} epochs the
+ * learning rate grows from {@code baseRate / warmup} to {@code baseRate}, the schedule itself
+ * starts once the warmup is over.
+ *
+ * @author Nicolas Dutly
+ */
+public abstract class LearningRateSchedule {
+
+    /**
+     * Describes the initial learning rate (reached at the end of the warmup)
+     */
+    protected final double baseRate;
+    /**
+     * Describes the number of warmup epochs
+     */
+    private int warmup;
+
+    /**
+     * @param baseRate the initial learning rate
+     */
+    protected LearningRateSchedule(double baseRate) {
+        this.baseRate = baseRate;
+    }
+
+    /**
+     * @param epoch      the epoch about to be trained (starting at 0)
+     * @param nbOfEpochs the total number of epochs
+     * @return the learning rate used during the epoch
+     */
+    public final double getLearningRate(int epoch, int nbOfEpochs) {
+        if (epoch < warmup) return baseRate * (epoch + 1) / warmup;
+        return rate(epoch - warmup, Math.max(nbOfEpochs - warmup, 1));
+    }
+
+    /**
+     * Reports the error reached after an epoch
+     *
+     * @param epoch the epoch (starting at 0)
+     * @param error the classification error (validation error, training error without validation set)
+     */
+    public final void update(int epoch, double error) {
+        if (epoch >= warmup) update(error);
+    }
+
+    /**
+     * @param epoch      the epoch about to be trained, counted from the end of the warmup
+     * @param nbOfEpochs the number of epochs after the warmup
+     * @return the learning rate used during the epoch
+     */
+    protected abstract double rate(int epoch, int nbOfEpochs);
+
+    /**
+     * Reports the error reached after an epoch (after the warmup). Ignored by default.
+     *
+     * @param error the classification error
+     */
+    protected void update(double error) {
+    }
+
+    /**
+     * @param warmup the number of warmup epochs (0 for none)
+     */
+    public void setWarmup(int warmup) {
+        if (warmup < 0) throw new IllegalArgumentException("Invalid number of warmup epochs: " + warmup);
+        this.warmup = warmup;
+    }
+
+    /**
+     * Creates a schedule from its name
+     *
+     * @param name     step, exponential, cosine or plateau
+     * @param baseRate the initial learning rate
+     * @param decay    the decay factor (step, exponential, plateau), 0 for the schedule's default
+     * @param step     the number of epochs between two decays (step) or without improvement before a
+     *                 decay (plateau), 0 for the schedule's default
+     * @param minRate  the lowest learning rate (cosine, plateau)
+     * @return the schedule
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static LearningRateSchedule forName(String name, double baseRate, double decay, int step, double minRate) {
+        switch (name.toLowerCase()) {
+            case "step":
+                return new StepDecay(baseRate, decay > 0 ? decay : StepDecay.FACTOR, step > 0 ? step : StepDecay.STEP);
+            case "exponential":
+                return new ExponentialDecay(baseRate, decay > 0 ? decay : ExponentialDecay.GAMMA);
+            case "cosine":
+                return new CosineAnnealing(baseRate, minRate);
+            case "plateau":
+                return new ReduceOnPlateau(baseRate, decay > 0 ? decay : ReduceOnPlateau.FACTOR,
+                        step > 0 ? step : ReduceOnPlateau.PATIENCE, minRate);
+            default:
+                throw new IllegalArgumentException("Unknown learning rate schedule: " + name + " (expected step, exponential, cosine or plateau)");
+        }
+    }
+}
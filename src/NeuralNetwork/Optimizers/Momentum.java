@@ -0,0 +1,60 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Gradient descent with momentum: every weight moves with a velocity, which is the
+ * exponentially decaying sum of its past adjustments<br>
+ * {@code v = momentum * v + learningRate * adjustment}<br>
+ * {@code w += v}
+ *
+ * @author Nicolas Dutly
+ */
+public class Momentum extends Optimizer {
+
+    /**
+     * Describes the default momentum
+     */
+    public static final double MOMENTUM = 0.9;
+    /**
+     * Describes the fraction of the velocity kept at each update
+     */
+    protected final double momentum;
+    /**
+     * Contains the velocity of each weight
+     */
+    protected final double[] velocity;
+
+    /**
+     * @param learningRate the learning rate
+     * @param momentum     the fraction of the velocity kept at each update [0,1[
+     */
+    public Momentum(double learningRate, double momentum) {
+        this(learningRate, momentum, 0);
+    }
+
+    /**
+     * @param learningRate the learning rate
+     * @param momentum     the fraction of the velocity kept at each update [0,1[
+     * @param nbOfWeights  the number of weights (0 for a prototype)
+     */
+    protected Momentum(double learningRate, double momentum, int nbOfWeights) {
+        super(learningRate);
+        if (momentum < 0 || momentum >= 1) throw new IllegalArgumentException("Invalid momentum: " + momentum);
+        this.momentum = momentum;
+        this.velocity = new double[nbOfWeights];
+    }
+
+    @Override
+    public Optimizer create(int nbOfWeights) {
+        return new Momentum(learningRate, momentum, nbOfWeights);
+    }
+
+    @Override
+    public void update(double[] weights, double[] adjustment) {
+        for (int i = 0; i < weights.length; i++) {
+            double v = momentum * velocity[i] + learningRate * adjustment[i];
+            velocity[i] = v;
+            weights[i] += v;
+            adjustment[i] = 0;
+        }
+    }
+}
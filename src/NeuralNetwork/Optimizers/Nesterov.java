@@ -0,0 +1,46 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Nesterov accelerated gradient. The weights are kept at the look-ahead position
+ * (the position the velocity is about to carry them to), so that the adjustments computed
+ * by back-propagation are the ones at the look-ahead position:<br>
+ * {@code v' = momentum * v + learningRate * adjustment}<br>
+ * {@code w += (1 + momentum) * v' - momentum * v}
+ *
+ * @author Nicolas Dutly
+ */
+public class Nesterov extends Momentum {
+
+    /**
+     * @param learningRate the learning rate
+     * @param momentum     the fraction of the velocity kept at each update [0,1[
+     */
+    public Nesterov(double learningRate, double momentum) {
+        super(learningRate, momentum);
+    }
+
+    /**
+     * @param learningRate the learning rate
+     * @param momentum     the fraction of the velocity kept at each update [0,1[
+     * @param nbOfWeights  the number of weights (0 for a prototype)
+     */
+    protected Nesterov(double learningRate, double momentum, int nbOfWeights) {
+        super(learningRate, momentum, nbOfWeights);
+    }
+
+    @Override
+    public Optimizer create(int nbOfWeights) {
+        return new Nesterov(learningRate, momentum, nbOfWeights);
+    }
+
+    @Override
+    public void update(double[] weights, double[] adjustment) {
+        for (int i = 0; i < weights.length; i++) {
+            double prev = velocity[i];
+            double v = momentum * prev + learningRate * adjustment[i];
+            velocity[i] = v;
+            weights[i] += (1 + momentum) * v - momentum * prev;
+            adjustment[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Describes the rule used to adjust the weights of a layer once back-propagation has computed
+ * the weight adjustments (the negative gradient of the error with respect to the weights,
+ * summed over the samples of the mini-batch).
+ * <p>
+ * Every layer owns an instance ({@link #create(int)}), whose state (velocities, moving averages)
+ * is stored in flat arrays parallel to the layer's weights, allocated once, so that
+ * {@link #update(double[], double[])} doesn't allocate any memory. The instances given to the
+ * network are only prototypes carrying the hyperparameters.
+ *
+ * @author Nicolas Dutly
+ */
+public abstract class Optimizer {
+
+    /**
+     * Describes the learning rate
+     */
+    protected double learningRate;
+
+    /**
+     * @param learningRate the learning rate
+     */
+    protected Optimizer(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Creates an optimizer of the same type, with the same hyperparameters, and allocates its
+     * state for a layer
+     *
+     * @param nbOfWeights number of weights of the layer
+     * @return the new optimizer, in its initial state
+     */
+    public abstract Optimizer create(int nbOfWeights);
+
+    /**
+     * Adjusts the weights, then resets the adjustments to zero
+     *
+     * @param weights    the layer's weights
+     * @param adjustment the weight adjustments (same layout as the weights), reset to zero
+     */
+    public abstract void update(double[] weights, double[] adjustment);
+
+    /**
+     * @return the learning rate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * @param learningRate the learning rate
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Creates an optimizer (prototype) from its name, using the default hyperparameters
+     *
+     * @param name         sgd, momentum, nesterov, rmsprop or adam
+     * @param learningRate the learning rate
+     * @return the optimizer
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Optimizer forName(String name, double learningRate) {
+        switch (name.toLowerCase()) {
+            case "sgd":
+                return new Sgd(learningRate);
+            case "momentum":
+                return new Momentum(learningRate, Momentum.MOMENTUM);
+            case "nesterov":
+                return new Nesterov(learningRate, Momentum.MOMENTUM);
+            case "rmsprop":
+                return new RmsProp(learningRate, RmsProp.DECAY, RmsProp.EPSILON);
+            case "adam":
+                return new Adam(learningRate, Adam.BETA1, Adam.BETA2, Adam.EPSILON);
+            default:
+                throw new IllegalArgumentException("Unknown optimizer: " + name + " (expected sgd, momentum, nesterov, rmsprop or adam)");
+        }
+    }
+}
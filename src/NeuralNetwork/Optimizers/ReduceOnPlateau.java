@@ -0,0 +1,64 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Reduce on plateau: the learning rate is multiplied by {@code factor} whenever the error did
+ * not improve during {@code patience} epochs, without going below {@code minRate}.
+ *
+ * @author Nicolas Dutly
+ */
+public class ReduceOnPlateau extends LearningRateSchedule {
+
+    /**
+     * Describe the default decay factor and number of epochs without improvement before a decay
+     */
+    public static final double FACTOR = 0.5;
+    public static final int PATIENCE = 10;
+
+    private final double factor;
+    private final int patience;
+    private final double minRate;
+    /**
+     * Describes the current learning rate
+     */
+    private double rate;
+    /**
+     * Describes the lowest error so far
+     */
+    private double bestErr = Double.MAX_VALUE;
+    /**
+     * Describes the number of epochs since the last improvement (or the last decay)
+     */
+    private int badEpochs;
+
+    /**
+     * @param baseRate the initial learning rate
+     * @param factor   the factor applied at every decay ]0,1]
+     * @param patience the number of epochs without improvement before a decay
+     * @param minRate  the lowest learning rate
+     */
+    public ReduceOnPlateau(double baseRate, double factor, int patience, double minRate) {
+        super(baseRate);
+        if (factor <= 0 || factor > 1) throw new IllegalArgumentException("Invalid decay factor: " + factor);
+        if (patience < 1) throw new IllegalArgumentException("Invalid patience: " + patience);
+        this.factor = factor;
+        this.patience = patience;
+        this.minRate = minRate;
+        this.rate = baseRate;
+    }
+
+    @Override
+    protected double rate(int epoch, int nbOfEpochs) {
+        return rate;
+    }
+
+    @Override
+    protected void update(double error) {
+        if (error < bestErr) {
+            bestErr = error;
+            badEpochs = 0;
+        } else if (++badEpochs >= patience) {
+            rate = Math.max(rate * factor, minRate);
+            badEpochs = 0;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * RMSProp: the adjustment of every weight is divided by the root of the moving average of its
+ * squared adjustments, so that every weight moves at a similar pace<br>
+ * {@code s = decay * s + (1 - decay) * adjustment^2}<br>
+ * {@code w += learningRate * adjustment / (sqrt(s) + epsilon)}
+ *
+ * @author Nicolas Dutly
+ */
+public class RmsProp extends Optimizer {
+
+    /**
+     * Describes the default decay of the moving average
+     */
+    public static final double DECAY = 0.9;
+    /**
+     * Describes the default term avoiding divisions by zero
+     */
+    public static final double EPSILON = 1E-8;
+
+    private final double decay;
+    private final double epsilon;
+    /**
+     * Contains the moving average of the squared adjustments of each weight
+     */
+    private final double[] meanSquare;
+
+    /**
+     * @param learningRate the learning rate
+     * @param decay        the fraction of the moving average kept at each update [0,1[
+     * @param epsilon      the term added to the root mean square to avoid divisions by zero
+     */
+    public RmsProp(double learningRate, double decay, double epsilon) {
+        this(learningRate, decay, epsilon, 0);
+    }
+
+    private RmsProp(double learningRate, double decay, double epsilon, int nbOfWeights) {
+        super(learningRate);
+        if (decay < 0 || decay >= 1) throw new IllegalArgumentException("Invalid decay: " + decay);
+        this.decay = decay;
+        this.epsilon = epsilon;
+        this.meanSquare = new double[nbOfWeights];
+    }
+
+    @Override
+    public Optimizer create(int nbOfWeights) {
+        return new RmsProp(learningRate, decay, epsilon, nbOfWeights);
+    }
+
+    @Override
+    public void update(double[] weights, double[] adjustment) {
+        for (int i = 0; i < weights.length; i++) {
+            double g = adjustment[i];
+            double s = decay * meanSquare[i] + (1 - decay) * g * g;
+            meanSquare[i] = s;
+            weights[i] += learningRate * g / (Math.sqrt(s) + epsilon);
+            adjustment[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Plain (stochastic) gradient descent: {@code w += learningRate * adjustment}.
+ * Has no state.
+ *
+ * @author Nicolas Dutly
+ */
+public class Sgd extends Optimizer {
+
+    /**
+     * @param learningRate the learning rate
+     */
+    public Sgd(double learningRate) {
+        super(learningRate);
+    }
+
+    @Override
+    public Optimizer create(int nbOfWeights) {
+        return new Sgd(learningRate);
+    }
+
+    @Override
+    public void update(double[] weights, double[] adjustment) {
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] += adjustment[i] * learningRate;
+            adjustment[i] = 0;
+        }
+    }
+}
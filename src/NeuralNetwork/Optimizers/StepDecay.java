@@ -0,0 +1,37 @@
+package NeuralNetwork.Optimizers;
+
+/**
+ * Step decay: the learning rate is multiplied by {@code factor} every {@code step} epochs<br>
+ * {@code rate = baseRate * factor^floor(epoch / step)}
+ *
+ * @author Nicolas Dutly
+ */
+public class StepDecay extends LearningRateSchedule {
+
+    /**
+     * Describe the default decay factor and number of epochs between two decays
+     */
+    public static final double FACTOR = 0.5;
+    public static final int STEP = 100;
+
+    private final double factor;
+    private final int step;
+
+    /**
+     * @param baseRate the initial learning rate
+     * @param factor   the factor applied at every decay ]0,1]
+     * @param step     the number of epochs between two decays
+     */
+    public StepDecay(double baseRate, double factor, int step) {
+        super(baseRate);
+        if (factor <= 0 || factor > 1) throw new IllegalArgumentException("Invalid decay factor: " + factor);
+        if (step < 1) throw new IllegalArgumentException("Invalid decay step: " + step);
+        this.factor = factor;
+        this.step = step;
+    }
+
+    @Override
+    protected double rate(int epoch, int nbOfEpochs) {
+        return baseRate * Math.pow(factor, epoch / step);
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Regroups the optimizers, the update rules turning the weight adjustments computed by
+ * back-propagation into changes of the weights, and the learning rate schedules.
+ */
+package NeuralNetwork.Optimizers;
@@ -0,0 +1,337 @@
+package NeuralNetwork;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Pipelined csv ingestion: one thread reads the raw bytes of the file and splits them into chunks of
+ * at most {@code chunkSize} lines, {@code nbOfParsers} threads parse the chunks concurrently
+ * (see {@link CsvLoader}), and a bounded queue hands the parsed chunks, in file order, to the trainer.
+ * <p>
+ * The chunks' buffers (raw bytes and parsed columns) are taken from a fixed pool and recycled once
+ * the trainer is done with them, as such the memory footprint does not depend on the file size.
+ * Once the end of the file is reached, the reader waits for {@link #rewind()} to read the file again.
+ *
+ * @author Nicolas Dutly
+ * @see DataStream
+ */
+class ParsingPipeline implements Closeable {
+
+    /**
+     * Size of the buffer the file is read into
+     */
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Contains the raw bytes and the parsed columns of a chunk
+     */
+    private static class Chunk {
+        byte[] raw;
+        int length;
+        long firstLine;
+        final ByteColumn rgb, colors;
+        DataSet dataSet;
+
+        Chunk(int chunkSize) {
+            raw = new byte[Math.max(chunkSize * 32, 1024)];
+            rgb = new ByteColumn(new byte[3 * chunkSize]);
+            colors = new ByteColumn(new byte[chunkSize]);
+        }
+
+        void append(byte[] bytes, int offset, int count) {
+            if (length + count > raw.length) raw = Arrays.copyOf(raw, Math.max(2 * raw.length, length + count));
+            System.arraycopy(bytes, offset, raw, length, count);
+            length += count;
+        }
+    }
+
+    /**
+     * Marks the end of the file in the queue
+     */
+    private static final Future<Chunk> END = completed(null);
+
+    private final String path;
+    private final int nbOfColors;
+    private final int chunkSize;
+    private final FileInputStream in;
+    private final FileChannel channel;
+    /**
+     * Contains the chunks which are not in use
+     */
+    private final BlockingQueue<Chunk> free;
+    /**
+     * Contains the chunks being parsed or parsed, in file order
+     */
+    private final BlockingQueue<Future<Chunk>> queue;
+    private final ExecutorService parsers;
+    private final ExecutorService reader;
+    /**
+     * Allows the reader to read the file again once it reached its end
+     */
+    private final Semaphore restart = new Semaphore(0);
+    /**
+     * Represents the chunk returned by the last call to {@link #next()}
+     */
+    private Chunk current;
+    /**
+     * Indicates whether the end of the file was returned by {@link #next()}
+     */
+    private boolean ended;
+    /**
+     * Indicates whether no chunk was returned since the file was opened or rewound
+     */
+    private boolean atStart = true;
+
+    /**
+     * Opens a csv file and starts reading it
+     *
+     * @param path        the csv file's path
+     * @param nbOfColors  number of colors (length of the output vectors)
+     * @param chunkSize   maximal number of lines per chunk
+     * @param nbOfParsers number of threads parsing the chunks
+     * @throws IOException if an IO exception occurs
+     */
+    ParsingPipeline(String path, int nbOfColors, int chunkSize, int nbOfParsers) throws IOException {
+        this.path = path;
+        this.nbOfColors = nbOfColors;
+        this.chunkSize = chunkSize;
+        this.in = new FileInputStream(path);
+        this.channel = in.getChannel();
+        int capacity = 2 * nbOfParsers;
+        queue = new ArrayBlockingQueue<>(capacity);
+        //chunks: queued or being parsed, used by the trainer, being filled by the reader
+        free = new ArrayBlockingQueue<>(capacity + 2);
+        for (int i = 0; i < capacity + 2; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+        parsers = Executors.newFixedThreadPool(nbOfParsers, daemonThreads("rgb_NN parser"));
+        reader = Executors.newSingleThreadExecutor(daemonThreads("rgb_NN reader"));
+        reader.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                read();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param value the future's value
+     * @return a completed future
+     */
+    private static <T> Future<T> completed(final T value) {
+        FutureTask<T> future = new FutureTask<>(new Callable<T>() {
+            @Override
+            public T call() {
+                return value;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * @param exception the exception thrown by the future
+     * @return a completed future, which failed
+     */
+    private static <T> Future<T> failed(final Exception exception) {
+        FutureTask<T> future = new FutureTask<>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                throw exception;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * @param name the threads' name
+     * @return a factory creating daemon threads (which do not prevent the program from exiting)
+     */
+    static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Reader thread: reads the file chunk by chunk and queues the chunks' parsing, then waits
+     * for the next pass. Read errors are queued too, so that the trainer reports them, the pass
+     * ends after a read error (every pass ends with {@link #END}).
+     *
+     * @throws InterruptedException if the pipeline is closed
+     */
+    private void read() throws InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (true) {
+            try {
+                channel.position(0);
+                buffer.clear().flip();
+                long lineNumber = 0;
+                while (true) {
+                    Chunk chunk = free.take();
+                    chunk.length = 0;
+                    chunk.firstLine = lineNumber;
+                    int lines;
+                    try {
+                        lines = fill(chunk, buffer);
+                    } catch (IOException e) {
+                        free.put(chunk);
+                        throw e;
+                    }
+                    if (chunk.length == 0) {
+                        free.put(chunk);
+                        break;
+                    }
+                    lineNumber += lines;
+                    queue.put(parsers.submit(parse(chunk)));
+                }
+            } catch (IOException e) {
+                queue.put(ParsingPipeline.<Chunk>failed(e));
+            }
+            queue.put(END);
+            restart.acquire();
+        }
+    }
+
+    /**
+     * Copies the next lines of the file to a chunk, the lines are complete (except for the last
+     * line of the file if it does not end with a line break)
+     *
+     * @param chunk  the chunk
+     * @param buffer the buffer the file is read into (its remaining bytes have not been copied yet)
+     * @return the number of lines copied
+     * @throws IOException if an IO exception occurs
+     */
+    private int fill(Chunk chunk, ByteBuffer buffer) throws IOException {
+        byte[] bytes = buffer.array();
+        int lines = 0;
+        while (lines < chunkSize) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) break;
+            }
+            int start = buffer.position();
+            int i = start;
+            int limit = buffer.limit();
+            while (i < limit && lines < chunkSize) {
+                if (bytes[i++] == '\n') lines++;
+            }
+            chunk.append(bytes, start, i - start);
+            buffer.position(i);
+        }
+        return lines;
+    }
+
+    /**
+     * @param chunk the chunk to be parsed
+     * @return the task parsing the chunk, which recycles the chunk if it has a bad format
+     */
+    private Callable<Chunk> parse(final Chunk chunk) {
+        return new Callable<Chunk>() {
+            @Override
+            public Chunk call() throws IOException {
+                try {
+                    chunk.rgb.clear();
+                    chunk.colors.clear();
+                    CsvLoader loader = new CsvLoader(path, nbOfColors, false);
+                    loader.setColumns(chunk.rgb, chunk.colors);
+                    loader.setLineNumber(chunk.firstLine);
+                    loader.parse(ByteBuffer.wrap(chunk.raw, 0, chunk.length), true, Integer.MAX_VALUE);
+                    chunk.dataSet = new DataSet(chunk.rgb.array(), chunk.colors.array(), chunk.colors.size(), nbOfColors, null);
+                    return chunk;
+                } catch (IOException | RuntimeException e) {
+                    //the trainer only gets the exception, the chunk goes back to the pool
+                    free.add(chunk);
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the next parsed chunk, the previous one being recycled
+     *
+     * @return the next chunk, {@code null} if the end of the file was reached
+     * @throws IOException if an IO exception occurs or if the file has a bad format
+     */
+    DataSet next() throws IOException {
+        if (ended) return null;
+        atStart = false;
+        try {
+            if (current != null) {
+                free.put(current);
+                current = null;
+            }
+            Future<Chunk> next = queue.take();
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading a chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        if (current == null) {
+            ended = true;
+            return null;
+        }
+        return current.dataSet;
+    }
+
+    /**
+     * Restarts at the beginning of the file, the chunks not returned yet are skipped
+     * (along with their errors, e.g. after a chunk with a bad format was returned by {@link #next()})
+     *
+     * @throws IOException if interrupted while skipping the chunks
+     */
+    void rewind() throws IOException {
+        if (atStart) return;
+        try {
+            if (current != null) {
+                free.put(current);
+                current = null;
+            }
+            while (!ended) {
+                try {
+                    Chunk chunk = queue.take().get();
+                    if (chunk == null) ended = true;
+                    else free.put(chunk);
+                } catch (ExecutionException e) {
+                    //skipped, the failed chunk was already recycled
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rewinding", e);
+        }
+        ended = false;
+        atStart = true;
+        restart.release();
+    }
+
+    /**
+     * Stops the threads and closes the file
+     *
+     * @throws IOException if an IO exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        reader.shutdownNow();
+        parsers.shutdownNow();
+        in.close();
+    }
+}
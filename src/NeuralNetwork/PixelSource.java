@@ -0,0 +1,15 @@
+package NeuralNetwork;
+
+/**
+ * Gives access to the pixels of a frame, whatever the frame's buffer type.
+ *
+ * @author Nicolas Dutly
+ * @see NeuralNetwork#classify(byte[], byte[])
+ */
+interface PixelSource {
+    /**
+     * @param pixel the pixel's index in the frame
+     * @return the pixel's rgb value, packed as {@code 0xRRGGBB}
+     */
+    int getRgb(int pixel);
+}
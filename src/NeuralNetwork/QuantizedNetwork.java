@@ -0,0 +1,531 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.Activation;
+import NeuralNetwork.Layers.Layer;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Fixed-point version of a trained network, for targets without floating point unit (the E-puck's
+ * micro-controller).
+ * <p>
+ * The weights of every layer are quantized to 8 bit integers with a per-layer scale, the neuron
+ * outputs (and inputs) to 16 bit integers with a per-layer scale, the weighted inputs being
+ * accumulated in 32 bit integers. The activation functions and the soft-max's exponential are
+ * replaced by tables of {@link #TABLE_SIZE} intervals with linear interpolation, indexed by the
+ * rescaled accumulators (multiplication by a fixed-point factor and shift). As such inference
+ * only uses integer arithmetic.
+ * <p>
+ * The scales and the ranges of the activation tables are derived from a calibration pass
+ * ({@link #quantize(NeuralNetwork, DataSet)}): the float network is fed with a data set and the
+ * largest weighted input and output of every layer are recorded. This class is the Java reference
+ * of the integer-only C classifier generated by {@link #write_C_source(String)}, both compute
+ * exactly the same values.
+ *
+ * @author Nicolas Dutly
+ */
+public class QuantizedNetwork {
+
+    /**
+     * Number of intervals of the activation and exponential tables
+     */
+    public static final int TABLE_SIZE = 256;
+    /**
+     * Number of fractional bits of the table positions (linear interpolation)
+     */
+    static final int FRAC_BITS = 8;
+    /**
+     * Largest absolute value of a quantized weight (8 bit) and of a quantized output (16 bit)
+     */
+    static final int WEIGHT_MAX = 127;
+    static final int OUTPUT_MAX = 32767;
+    /**
+     * Fixed-point scale of the network's inputs: {@code 2 * (v / 255.) - 1 = (2 * v - 255) / 255}
+     */
+    static final int INPUT_SCALE = 255;
+    /**
+     * Describes the exponential table: {@code exp(-x)} for x in [0, EXP_RANGE], scaled by {@link #OUTPUT_MAX}
+     */
+    static final double EXP_RANGE = 16;
+    /**
+     * Fixed-point value of a probability of 1 (probabilities are Q15 numbers)
+     */
+    public static final int PROBABILITY_ONE = 1 << 15;
+    /**
+     * Largest rescaling factor (fixed-point), as the accumulators are at most 31 bits long the
+     * products fit in 64 bits
+     */
+    private static final double MULT_MAX = 1 << 30;
+
+    private static final short[] EXP_TABLE = new short[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            EXP_TABLE[i] = (short) Math.round(OUTPUT_MAX * Math.exp(-i * EXP_RANGE / TABLE_SIZE));
+        }
+    }
+
+    /**
+     * Describes how many colors the network recognizes
+     */
+    private final int nbOfColors;
+    /**
+     * Contains the quantized weights of every weighted layer (hidden layers, then output layer),
+     * row-major, one row per neuron, bias weight last
+     */
+    private final byte[][] weights;
+    /**
+     * Describes the number of inputs (bias included) and weighted neurons of every weighted layer
+     */
+    private final int[] nbOfInputs, nbOfNeurons;
+    /**
+     * Contains the fixed-point scale of the inputs of every weighted layer: an input {@code q}
+     * stands for {@code q / inputScales[l]}, the bias input being {@code -inputScales[l]}
+     */
+    private final int[] inputScales;
+    /**
+     * Contain the factor and the shift rescaling the accumulators of every weighted layer to
+     * table positions: {@code (acc * multipliers[l]) >> shifts[l]}
+     */
+    private final int[] multipliers, shifts;
+    /**
+     * Contains the quantized outputs of the activation function of every hidden layer at
+     * {@code TABLE_SIZE + 1} evenly spaced weighted inputs
+     */
+    private final short[][] tables;
+    /**
+     * Contains the calibrated range of the weighted inputs of every hidden layer: the tables
+     * cover [-ranges[l], ranges[l]]
+     */
+    private final double[] ranges;
+    /**
+     * Contain the outputs of every layer and the accumulators of the output layer
+     * (reused from one query to the next)
+     */
+    private final int[][] outputs;
+    private final long[] accumulators;
+
+    /**
+     * @param nbOfColors  the number of colors
+     * @param weights     the quantized weights of every weighted layer
+     * @param nbOfInputs  the number of inputs of every weighted layer (bias included)
+     * @param inputScales the fixed-point scale of the inputs of every weighted layer
+     * @param multipliers the rescaling factors of every weighted layer
+     * @param shifts      the rescaling shifts of every weighted layer
+     * @param tables      the activation tables of every hidden layer
+     * @param ranges      the ranges of the activation tables
+     */
+    private QuantizedNetwork(int nbOfColors, byte[][] weights, int[] nbOfInputs, int[] inputScales, int[] multipliers,
+                             int[] shifts, short[][] tables, double[] ranges) {
+        this.nbOfColors = nbOfColors;
+        this.weights = weights;
+        this.nbOfInputs = nbOfInputs;
+        this.inputScales = inputScales;
+        this.multipliers = multipliers;
+        this.shifts = shifts;
+        this.tables = tables;
+        this.ranges = ranges;
+        this.nbOfNeurons = new int[weights.length];
+        this.outputs = new int[weights.length][];
+        for (int l = 0; l < weights.length; l++) {
+            nbOfNeurons[l] = weights[l].length / nbOfInputs[l];
+            outputs[l] = new int[nbOfInputs[l]];
+        }
+        this.accumulators = new long[nbOfColors];
+    }
+
+    /**
+     * Quantizes a trained network. The calibration set is fed through the float network to
+     * measure the range of the weighted inputs and outputs of every hidden layer, which
+     * define the range of the activation tables and the scale of the quantized outputs.
+     *
+     * @param network        the trained network
+     * @param calibrationSet the data set used for the calibration (usually the training set)
+     * @return the quantized network
+     * @throws IllegalArgumentException if a layer has too many inputs for 32 bit accumulators
+     *                                  or if its weights can't be rescaled
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork network, DataSet calibrationSet) {
+        Layer[] layers = network.getWeightedLayers();
+        int nbOfLayers = layers.length;
+        //---------------------------------------calibration pass (float network)------------------------------------------
+        double[] maxWeightedInput = new double[nbOfLayers];
+        double[] maxOutput = new double[nbOfLayers];
+        double[][] values = new double[nbOfLayers + 1][];
+        values[0] = new double[4];
+        for (int l = 0; l < nbOfLayers; l++) {
+            values[l + 1] = new double[layers[l].getNbOfWeightedNeurons() + 1];
+        }
+        for (int row = 0; row < calibrationSet.size(); row++) {
+            for (int c = 0; c < 3; c++) {
+                values[0][c] = calibrationSet.getInput(row, c);
+            }
+            values[0][3] = NeuralNetwork.BIAS;
+            for (int l = 0; l < nbOfLayers; l++) {
+                Layer layer = layers[l];
+                double[] w = layer.getWeights();
+                int inputs = layer.getNbOfInputs();
+                for (int k = 0; k < layer.getNbOfWeightedNeurons(); k++) {
+                    double z = 0;
+                    for (int j = 0; j < inputs; j++) {
+                        z += w[k * inputs + j] * values[l][j];
+                    }
+                    double a = l < nbOfLayers - 1 ? layer.getActivation().activate(z) : z;
+                    values[l + 1][k] = a;
+                    maxWeightedInput[l] = Math.max(maxWeightedInput[l], Math.abs(z));
+                    maxOutput[l] = Math.max(maxOutput[l], Math.abs(a));
+                }
+                values[l + 1][layer.getNbOfWeightedNeurons()] = NeuralNetwork.BIAS;
+            }
+        }
+        //---------------------------------------quantization---------------------------------------------------------------
+        byte[][] weights = new byte[nbOfLayers][];
+        int[] nbOfInputs = new int[nbOfLayers];
+        int[] inputScales = new int[nbOfLayers];
+        int[] multipliers = new int[nbOfLayers];
+        int[] shifts = new int[nbOfLayers];
+        short[][] tables = new short[nbOfLayers - 1][];
+        double[] ranges = new double[nbOfLayers - 1];
+        int inputScale = INPUT_SCALE;
+        for (int l = 0; l < nbOfLayers; l++) {
+            Layer layer = layers[l];
+            double[] w = layer.getWeights();
+            nbOfInputs[l] = layer.getNbOfInputs();
+            if ((long) WEIGHT_MAX * OUTPUT_MAX * nbOfInputs[l] > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many inputs for 32 bit accumulators: " + nbOfInputs[l]);
+            inputScales[l] = inputScale;
+            //per-layer weight scale: the largest weight becomes WEIGHT_MAX
+            double maxWeight = 0;
+            for (double weight : w) {
+                maxWeight = Math.max(maxWeight, Math.abs(weight));
+            }
+            double weightScale = maxWeight > 0 ? maxWeight / WEIGHT_MAX : 1;
+            weights[l] = new byte[w.length];
+            for (int i = 0; i < w.length; i++) {
+                weights[l][i] = (byte) Math.round(w[i] / weightScale);
+            }
+            //weighted input of a neuron: acc * weightScale / inputScale
+            double factor;
+            if (l < nbOfLayers - 1) {
+                ranges[l] = Math.max(maxWeightedInput[l], 1);
+                factor = weightScale / inputScale * (TABLE_SIZE / (2 * ranges[l])) * (1 << FRAC_BITS);
+                //the outputs (and the bias) must fit in 16 bits
+                inputScale = (int) Math.min(OUTPUT_MAX, Math.floor(OUTPUT_MAX / Math.max(maxOutput[l], 1)));
+                tables[l] = new short[TABLE_SIZE + 1];
+                Activation activation = layer.getActivation();
+                for (int i = 0; i <= TABLE_SIZE; i++) {
+                    double z = -ranges[l] + i * (2 * ranges[l] / TABLE_SIZE);
+                    long q = Math.round(inputScale * activation.activate(z));
+                    tables[l][i] = (short) Math.max(-OUTPUT_MAX, Math.min(OUTPUT_MAX, q));
+                }
+            } else {
+                factor = weightScale / inputScale * (TABLE_SIZE / EXP_RANGE) * (1 << FRAC_BITS);
+            }
+            //largest shift keeping the factor below MULT_MAX
+            int shift = 0;
+            while (shift < 62 && factor * Math.pow(2, shift + 1) < MULT_MAX) {
+                shift++;
+            }
+            if (factor * Math.pow(2, shift) >= MULT_MAX)
+                throw new IllegalArgumentException("The weights of layer " + (l + 1) + " can't be rescaled");
+            shifts[l] = shift;
+            multipliers[l] = (int) Math.round(factor * Math.pow(2, shift));
+        }
+        return new QuantizedNetwork(network.getNbOfColors(), weights, nbOfInputs, inputScales, multipliers, shifts,
+                tables, ranges);
+    }
+
+    /**
+     * Linear interpolation in a table, the position being a fixed-point number
+     * ({@link #FRAC_BITS} fractional bits), saturated outside of the table
+     *
+     * @param table    the table ({@code TABLE_SIZE + 1} values)
+     * @param position the position in the table
+     * @return the interpolated value
+     */
+    private static int interpolate(short[] table, long position) {
+        if (position <= 0) return table[0];
+        if (position >= (long) TABLE_SIZE << FRAC_BITS) return table[TABLE_SIZE];
+        int i = (int) (position >> FRAC_BITS);
+        int f = (int) (position & ((1 << FRAC_BITS) - 1));
+        return table[i] + (((table[i + 1] - table[i]) * f) >> FRAC_BITS);
+    }
+
+    /**
+     * Feeds a color through the quantized network, the output layer's accumulators are
+     * written to {@link #accumulators}
+     *
+     * @param red   the red rgb value [0-255]
+     * @param green the green rgb value [0-255]
+     * @param blue  the blue rgb value [0-255]
+     */
+    private void feedForward(int red, int green, int blue) {
+        int[] in = outputs[0];
+        in[0] = 2 * red - INPUT_SCALE;
+        in[1] = 2 * green - INPUT_SCALE;
+        in[2] = 2 * blue - INPUT_SCALE;
+        in[3] = -INPUT_SCALE;
+        int last = weights.length - 1;
+        for (int l = 0; l <= last; l++) {
+            byte[] w = weights[l];
+            int inputs = nbOfInputs[l];
+            in = outputs[l];
+            for (int k = 0; k < nbOfNeurons[l]; k++) {
+                //32 bit accumulator, as in C
+                int acc = 0;
+                for (int j = 0; j < inputs; j++) {
+                    acc += w[k * inputs + j] * in[j];
+                }
+                if (l < last) {
+                    long position = ((acc * (long) multipliers[l]) >> shifts[l]) + ((long) (TABLE_SIZE / 2) << FRAC_BITS);
+                    outputs[l + 1][k] = interpolate(tables[l], position);
+                } else {
+                    accumulators[k] = acc;
+                }
+            }
+            if (l < last) outputs[l + 1][nbOfNeurons[l]] = -inputScales[l + 1];
+        }
+    }
+
+    /**
+     * Classifies a color: index of the highest weighted input of the output layer (the soft-max
+     * is skipped). Does not allocate any memory. Not thread-safe, as the network's buffers are used.
+     *
+     * @param red   the red rgb value [0-255]
+     * @param green the green rgb value [0-255]
+     * @param blue  the blue rgb value [0-255]
+     * @return the index of the most probable color (same order as the training output vectors)
+     */
+    public int classify(int red, int green, int blue) {
+        feedForward(red, green, blue);
+        int max = 0;
+        for (int k = 1; k < nbOfColors; k++) {
+            if (accumulators[k] > accumulators[max]) max = k;
+        }
+        return max;
+    }
+
+    /**
+     * Computes the probability of every color as Q15 numbers ({@link #PROBABILITY_ONE} stands for 1),
+     * the soft-max's exponentials being interpolated in a table after the highest weighted input
+     * was subtracted. Does not allocate any memory. Not thread-safe, as the network's buffers are used.
+     *
+     * @param red    the red rgb value [0-255]
+     * @param green  the green rgb value [0-255]
+     * @param blue   the blue rgb value [0-255]
+     * @param output array receiving the probability of each color (at least {@code nbOfColors} long)
+     */
+    public void query(int red, int green, int blue, int[] output) {
+        feedForward(red, green, blue);
+        int last = weights.length - 1;
+        long max = accumulators[0];
+        for (int k = 1; k < nbOfColors; k++) {
+            max = Math.max(max, accumulators[k]);
+        }
+        int sum = 0;
+        for (int k = 0; k < nbOfColors; k++) {
+            output[k] = interpolate(EXP_TABLE, ((max - accumulators[k]) * multipliers[last]) >> shifts[last]);
+            sum += output[k];
+        }
+        for (int k = 0; k < nbOfColors; k++) {
+            output[k] = (output[k] << 15) / sum;
+        }
+    }
+
+    /**
+     * @param dataSet the data set
+     * @return the classification error of the quantized network over the data set
+     * (% of missed classifications)
+     */
+    public double getClassificationError(DataSet dataSet) {
+        int correct = 0;
+        for (int row = 0; row < dataSet.size(); row++) {
+            if (classify(dataSet.getRgb(row, 0), dataSet.getRgb(row, 1), dataSet.getRgb(row, 2)) == dataSet.getColor(row))
+                correct++;
+        }
+        return 100 - 100. * correct / dataSet.size();
+    }
+
+    /**
+     * Checks that the quantization does not degrade the classification of a data set
+     * by more than a given tolerance
+     *
+     * @param network   the float network the quantized network was derived from
+     * @param dataSet   the data set (e.g. the validation set)
+     * @param tolerance the largest accepted increase of the classification error (percentage points)
+     * @return whether the classification error of the quantized network is within the tolerance
+     * of the float network's
+     */
+    public boolean isWithinTolerance(NeuralNetwork network, DataSet dataSet, double tolerance) {
+        return getClassificationError(dataSet) - network.getClassificationError(dataSet) <= tolerance;
+    }
+
+    /**
+     * Generates the integer-only C classifier: {@code classify(r, g, b)} returns the index of the
+     * most probable color, {@code query(r, g, b, out)} the probabilities of the colors as Q15 numbers.
+     * Only needs stdint.h (no floating point, no libm). The 32 bit products and the arithmetic
+     * right shift of negative numbers are assumed (as by gcc and XC16).
+     *
+     * @param filename the C source to be created (overwritten if existing)
+     * @throws IOException if an IO exception occurs
+     */
+    public void write_C_source(String filename) throws IOException {
+        String timeStamp = new SimpleDateFormat("dd.MM.yyyy 'at' HH:mm:ss").format(new Date());
+        int last = weights.length - 1;
+        StringBuilder declarations = new StringBuilder();
+        for (int l = 0; l <= last; l++) {
+            String name = l < last ? "hl" + (l + 1) : "out";
+            declarations.append(String.format("static const int8_t %sWeights[%d][%d] = {", name, nbOfNeurons[l], nbOfInputs[l]));
+            for (int k = 0; k < nbOfNeurons[l]; k++) {
+                declarations.append(k > 0 ? ",\n    {" : "\n    {");
+                for (int j = 0; j < nbOfInputs[l]; j++) {
+                    declarations.append(j > 0 ? "," : "").append(weights[l][k * nbOfInputs[l] + j]);
+                }
+                declarations.append("}");
+            }
+            declarations.append("\n};\n");
+            if (l < last) {
+                declarations.append("/* activation of the weighted inputs in [").append(-ranges[l]).append(", ")
+                        .append(ranges[l]).append("], outputs scaled by ").append(inputScales[l + 1]).append(" */\n");
+                appendTable(declarations, name + "Table", tables[l]);
+            }
+        }
+        declarations.append("/* exp(-x) for x in [0, ").append(EXP_RANGE).append("], scaled by ").append(OUTPUT_MAX).append(" */\n");
+        appendTable(declarations, "expTable", EXP_TABLE);
+
+        StringBuilder forward = new StringBuilder();
+        String prevOut = "inputs";
+        for (int l = 0; l < last; l++) {
+            String out = "hiddenOut" + (l + 1);
+            forward.append("    int16_t ").append(out).append("[").append(nbOfNeurons[l] + 1).append("];\n")
+                    .append("    for(i = 0; i < ").append(nbOfNeurons[l]).append("; i++){\n")
+                    .append("        int32_t acc = 0;\n")
+                    .append("        for(j = 0; j < ").append(nbOfInputs[l]).append("; j++){\n")
+                    .append("            acc += (int32_t) hl").append(l + 1).append("Weights[i][j] * ").append(prevOut).append("[j];\n")
+                    .append("        }\n")
+                    .append("        ").append(out).append("[i] = (int16_t) interpolate(hl").append(l + 1).append("Table, ")
+                    .append("(((int64_t) acc * ").append(multipliers[l]).append(") >> ").append(shifts[l]).append(") + ")
+                    .append((long) (TABLE_SIZE / 2) << FRAC_BITS).append(");\n")
+                    .append("    }\n")
+                    .append("    ").append(out).append("[").append(nbOfNeurons[l]).append("] = ").append(-inputScales[l + 1]).append(";\n");
+            prevOut = out;
+        }
+        forward.append("    for(i = 0; i < NB_OF_COLORS; i++){\n")
+                .append("        int32_t acc = 0;\n")
+                .append("        for(j = 0; j < ").append(nbOfInputs[last]).append("; j++){\n")
+                .append("            acc += (int32_t) outWeights[i][j] * ").append(prevOut).append("[j];\n")
+                .append("        }\n")
+                .append("        out[i] = acc;\n")
+                .append("    }\n");
+
+        String cSource =
+                "/*------------------------------------------------------------------------------------------------" +
+                        "\nThis file was automatically generated by " + getClass().getSimpleName() + "\n" +
+                        "Gen time: " + timeStamp + ". Integer-only classifier (8 bit weights, 16 bit outputs, 32 bit\n" +
+                        "accumulators), no floating point and no libm needed. classify() returns the index of the most\n" +
+                        "probable color, query() the probability of each color as Q15 numbers (PROBABILITY_ONE stands for 1),\n" +
+                        "same order as the training data set (eg: r,g,b,v,c)\n" +
+                        "Topology: " + Arrays.toString(getTopology()) + "\n" +
+                        "--------------------------------------------------------------------------------------------------*/\n\n\n" +
+                        "#include <stdint.h>\n" +
+                        "#define NB_OF_COLORS " + nbOfColors + "\n" +
+                        "#define PROBABILITY_ONE " + PROBABILITY_ONE + "\n" +
+                        "#define TABLE_SIZE " + TABLE_SIZE + "\n" +
+                        "#define FRAC_BITS " + FRAC_BITS + "\n" +
+                        declarations +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b);\n" +
+                        "void query(unsigned char r, unsigned char g, unsigned char b, uint16_t out[NB_OF_COLORS]);\n" +
+                        "\n" +
+                        "static int32_t interpolate(const int16_t* table, int64_t position){\n" +
+                        "    if(position <= 0) return table[0];\n" +
+                        "    if(position >= ((int64_t) TABLE_SIZE << FRAC_BITS)) return table[TABLE_SIZE];\n" +
+                        "    int32_t i = (int32_t) (position >> FRAC_BITS);\n" +
+                        "    int32_t f = (int32_t) (position & ((1 << FRAC_BITS) - 1));\n" +
+                        "    return table[i] + ((((int32_t) table[i + 1] - table[i]) * f) >> FRAC_BITS);\n" +
+                        "}\n" +
+                        "\n" +
+                        "static void feed_forward(unsigned char r, unsigned char g, unsigned char b, int32_t out[NB_OF_COLORS]){\n" +
+                        "    int i = 0;\n" +
+                        "    int j = 0;\n" +
+                        "    int16_t inputs[4] = {(int16_t) (2 * r - " + INPUT_SCALE + "), (int16_t) (2 * g - " + INPUT_SCALE
+                        + "), (int16_t) (2 * b - " + INPUT_SCALE + "), -" + INPUT_SCALE + "};\n" +
+                        "\n" +
+                        forward +
+                        "}\n" +
+                        "\n" +
+                        "int classify(unsigned char r, unsigned char g, unsigned char b){\n" +
+                        "    int32_t acc[NB_OF_COLORS];\n" +
+                        "    int i = 0;\n" +
+                        "    int max = 0;\n" +
+                        "    feed_forward(r, g, b, acc);\n" +
+                        "    for(i = 1; i < NB_OF_COLORS; i++){\n" +
+                        "        if(acc[i] > acc[max]) max = i;\n" +
+                        "    }\n" +
+                        "    return max;\n" +
+                        "}\n" +
+                        "\n" +
+                        "void query(unsigned char r, unsigned char g, unsigned char b, uint16_t out[NB_OF_COLORS]){\n" +
+                        "    int32_t acc[NB_OF_COLORS];\n" +
+                        "    int32_t e[NB_OF_COLORS];\n" +
+                        "    int32_t sum = 0;\n" +
+                        "    int32_t max = 0;\n" +
+                        "    int i = 0;\n" +
+                        "    feed_forward(r, g, b, acc);\n" +
+                        "    max = acc[0];\n" +
+                        "    for(i = 1; i < NB_OF_COLORS; i++){\n" +
+                        "        if(acc[i] > max) max = acc[i];\n" +
+                        "    }\n" +
+                        "    for(i = 0; i < NB_OF_COLORS; i++){\n" +
+                        "        e[i] = interpolate(expTable, ((int64_t) ((int64_t) max - acc[i]) * " + multipliers[last]
+                        + ") >> " + shifts[last] + ");\n" +
+                        "        sum += e[i];\n" +
+                        "    }\n" +
+                        "    for(i = 0; i < NB_OF_COLORS; i++){\n" +
+                        "        out[i] = (uint16_t) (((uint32_t) e[i] << 15) / (uint32_t) sum);\n" +
+                        "    }\n" +
+                        "}\n";
+        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+        try {
+            writer.write(cSource);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Appends the C definition of a table ({@code static const int16_t name[TABLE_SIZE + 1]})
+     *
+     * @param sb    the builder
+     * @param name  the table's name
+     * @param table the table's values
+     */
+    private static void appendTable(StringBuilder sb, String name, short[] table) {
+        sb.append("static const int16_t ").append(name).append("[TABLE_SIZE + 1] = {");
+        for (int i = 0; i < table.length; i++) {
+            sb.append(i % 16 == 0 ? "\n    " : " ").append(table[i]).append(i < table.length - 1 ? "," : "");
+        }
+        sb.append("\n};\n");
+    }
+
+    /**
+     * @return the width of every layer without bias neurons, from the input layer to the output layer
+     */
+    public int[] getTopology() {
+        int[] topology = new int[weights.length + 1];
+        topology[0] = 3;
+        for (int l = 0; l < weights.length; l++) {
+            topology[l + 1] = nbOfNeurons[l];
+        }
+        return topology;
+    }
+
+    /**
+     * @return the number of colors
+     */
+    public int getNbOfColors() {
+        return nbOfColors;
+    }
+}
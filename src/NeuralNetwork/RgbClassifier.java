@@ -0,0 +1,30 @@
+package NeuralNetwork;
+
+/**
+ * Classifies colors, thread-safe and without allocating any memory.
+ *
+ * @author Nicolas Dutly
+ * @see ClassifierCompiler#compile(NeuralNetwork)
+ */
+public interface RgbClassifier {
+    /**
+     * @param red   the red rgb value [0-255]
+     * @param green the green rgb value [0-255]
+     * @param blue  the blue rgb value [0-255]
+     * @return the index of the most probable color (same order as the training output vectors)
+     */
+    int classify(int red, int green, int blue);
+
+    /**
+     * @param red    the red rgb value [0-255]
+     * @param green  the green rgb value [0-255]
+     * @param blue   the blue rgb value [0-255]
+     * @param output array receiving the probability of each color (at least {@link #getNbOfColors()} long)
+     */
+    void query(int red, int green, int blue, double[] output);
+
+    /**
+     * @return the number of colors
+     */
+    int getNbOfColors();
+}
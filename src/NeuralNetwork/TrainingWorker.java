@@ -0,0 +1,148 @@
+package NeuralNetwork;
+
+import NeuralNetwork.Layers.HiddenLayer;
+import NeuralNetwork.Layers.InputLayer;
+import NeuralNetwork.Layers.Layer;
+import NeuralNetwork.Layers.OutputLayer;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Feeds a shard of the training set through a set of layers in one mini-batch and
+ * accumulates the resulting weight adjustments, without applying them.
+ * <p>
+ * Used for data-parallel training: every worker owns replicas of the network's layers,
+ * which share the network's weights but have their own activation and delta buffers.
+ * Once all workers are done, their weight adjustments are added up in a fixed order and
+ * applied to the shared weights by {@link NeuralNetwork}.
+ *
+ * @author Nicolas Dutly
+ */
+class TrainingWorker implements Callable<Void> {
+
+    private final InputLayer inputLayer;
+    private final HiddenLayer[] hiddenLayers;
+    private final OutputLayer outputLayer;
+    /**
+     * Represents the training set
+     */
+    private DataSet trainingSet;
+    /**
+     * Contains the row indices of the current epoch
+     */
+    private int[] order;
+    /**
+     * Describes the shard: the rows {@code order[from]} to {@code order[to - 1]}
+     */
+    private int from, to;
+
+    /**
+     * @param inputLayer   the worker's input layer
+     * @param hiddenLayers the worker's hidden layers, from the input layer to the output layer
+     * @param outputLayer  the worker's output layer
+     */
+    TrainingWorker(InputLayer inputLayer, HiddenLayer[] hiddenLayers, OutputLayer outputLayer) {
+        this.inputLayer = inputLayer;
+        this.hiddenLayers = hiddenLayers;
+        this.outputLayer = outputLayer;
+    }
+
+    /**
+     * Creates a worker using replicas of another worker's layers
+     *
+     * @param worker the worker whose layers are replicated
+     * @return the new worker
+     */
+    static TrainingWorker replicate(TrainingWorker worker) {
+        InputLayer inputLayer = (InputLayer) worker.inputLayer.replicate(null);
+        HiddenLayer[] hiddenLayers = new HiddenLayer[worker.hiddenLayers.length];
+        Layer prevLayer = inputLayer;
+        for (int l = 0; l < hiddenLayers.length; l++) {
+            hiddenLayers[l] = (HiddenLayer) worker.hiddenLayers[l].replicate(prevLayer);
+            prevLayer = hiddenLayers[l];
+        }
+        OutputLayer outputLayer = worker.outputLayer.replicate(prevLayer);
+        return new TrainingWorker(inputLayer, hiddenLayers, outputLayer);
+    }
+
+    /**
+     * @param trainingSet the training set
+     */
+    void setTrainingSet(DataSet trainingSet) {
+        this.trainingSet = trainingSet;
+    }
+
+    /**
+     * Specifies the rows to be processed on the next call
+     *
+     * @param order the row indices of the current epoch
+     * @param from  index of the first row of the shard in {@code order}
+     * @param to    index after the last row of the shard in {@code order}
+     */
+    void setShard(int[] order, int from, int to) {
+        this.order = order;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Processes the shard: forward phase, classification error and back propagation.
+     * The weight adjustments are accumulated in the worker's layers.
+     */
+    @Override
+    public Void call() {
+        int size = to - from;
+        if (size <= 0) return null;
+        //set the networks training inputs and training outputs
+        for (int s = 0; s < size; s++) {
+            int row = order[from + s];
+            inputLayer.setBatchInputs(s, trainingSet.getInput(row, 0), trainingSet.getInput(row, 1), trainingSet.getInput(row, 2));
+            outputLayer.setBatchTrainingOutput(s, trainingSet.getColor(row));
+        }
+
+        //forward phase
+        for (HiddenLayer hiddenLayer : hiddenLayers) {
+            hiddenLayer.processBatch(size);
+        }
+        outputLayer.processBatch(size);
+
+        //classification error
+        outputLayer.calc_batch_class_err(size, true);
+
+        //Back propagation
+        outputLayer.calculateBatchDelta(size);
+        for (int l = hiddenLayers.length - 1; l >= 0; l--) {
+            hiddenLayers[l].calculateBatchDelta(size);
+        }
+
+        outputLayer.accumulateWeightDelta(size);
+        for (int l = hiddenLayers.length - 1; l >= 0; l--) {
+            hiddenLayers[l].accumulateWeightDelta(size);
+        }
+        return null;
+    }
+
+    /**
+     * Adds the weight adjustments and classification counts of another worker to this
+     * worker's, resetting the other worker's.
+     *
+     * @param worker a worker using replicas of this worker's layers
+     */
+    void add(TrainingWorker worker) {
+        outputLayer.addWeightDelta(worker.outputLayer);
+        for (int l = hiddenLayers.length - 1; l >= 0; l--) {
+            hiddenLayers[l].addWeightDelta(worker.hiddenLayers[l]);
+        }
+        outputLayer.add_class_err(worker.outputLayer);
+    }
+
+    /**
+     * Applies the accumulated weight adjustments to the (shared) weights
+     */
+    void applyWeightDelta() {
+        outputLayer.applyWeightDelta();
+        for (int l = hiddenLayers.length - 1; l >= 0; l--) {
+            hiddenLayers[l].applyWeightDelta();
+        }
+    }
+}
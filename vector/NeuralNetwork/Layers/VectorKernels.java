@@ -0,0 +1,158 @@
+package NeuralNetwork.Layers;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Implements the products of {@link Kernels} with the Java Vector API, using the widest
+ * SIMD registers available for doubles (e.g. 4 lanes with AVX2, 8 lanes with AVX-512).
+ * Loaded by {@link Kernels} if available, see {@link Kernels#VECTOR_KERNELS}.
+ * <p>
+ * Requires Java 16+: compile and run with {@code --add-modules jdk.incubator.vector}.
+ * The dot products are accumulated lane-wise with fused multiply-adds, so the results
+ * may differ from the scalar backend in the last bits.
+ *
+ * @author Nicolas Dutly
+ */
+public final class VectorKernels extends Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Number of lanes of {@link #SPECIES}
+     */
+    private static final int LANES = SPECIES.length();
+
+    /**
+     * @throws UnsupportedOperationException if the CPU has no SIMD instructions for doubles
+     */
+    public VectorKernels() {
+        if (LANES < 2) {
+            throw new UnsupportedOperationException("No SIMD instructions for doubles");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + LANES + " lanes)";
+    }
+
+    /**
+     * @return the dot product of the {@code k} elements of {@code a} and {@code b} starting at {@code aOffset} and {@code bOffset}
+     */
+    private static double dot(int k, double[] a, int aOffset, double[] b, int bOffset) {
+        int bound = SPECIES.loopBound(k);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int p = 0;
+        for (; p < bound; p += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + p);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + p);
+            acc = va.fma(vb, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; p < k; p++) {
+            sum += a[aOffset + p] * b[bOffset + p];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes {@code c += alpha * b} on {@code n} elements starting at {@code cOffset} and {@code bOffset}
+     */
+    private static void axpy(int n, double alpha, double[] b, int bOffset, double[] c, int cOffset) {
+        int bound = SPECIES.loopBound(n);
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int j = 0;
+        for (; j < bound; j += LANES) {
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + j);
+            DoubleVector vc = DoubleVector.fromArray(SPECIES, c, cOffset + j);
+            vb.fma(va, vc).intoArray(c, cOffset + j);
+        }
+        for (; j < n; j++) {
+            c[cOffset + j] += alpha * b[bOffset + j];
+        }
+    }
+
+    /**
+     * Computes {@code c = alpha * b} on {@code n} elements starting at {@code cOffset} and {@code bOffset}
+     */
+    private static void scale(int n, double alpha, double[] b, int bOffset, double[] c, int cOffset) {
+        int bound = SPECIES.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += LANES) {
+            DoubleVector.fromArray(SPECIES, b, bOffset + j).mul(alpha).intoArray(c, cOffset + j);
+        }
+        for (; j < n; j++) {
+            c[cOffset + j] = alpha * b[bOffset + j];
+        }
+    }
+
+    @Override
+    public void gemv(int m, int k, double[] a, int lda, double[] x, double[] y) {
+        for (int i = 0; i < m; i++) {
+            y[i] = dot(k, a, i * lda, x, 0);
+        }
+    }
+
+    @Override
+    public void gemvT(int m, int k, double[] a, int lda, double[] x, double[] y) {
+        if (k == 0) {
+            Arrays.fill(y, 0, m, 0);
+            return;
+        }
+        scale(m, x[0], a, 0, y, 0);
+        for (int p = 1; p < k; p++) {
+            axpy(m, x[p], a, p * lda, y, 0);
+        }
+    }
+
+    @Override
+    public void outer(int m, int n, double[] x, double[] y, double[] a, int lda) {
+        for (int i = 0; i < m; i++) {
+            scale(n, x[i], y, 0, a, i * lda);
+        }
+    }
+
+    @Override
+    public void gemmNT(int m, int n, int k, double[] a, int lda, double[] b, int ldb, double[] c, int ldc) {
+        for (int j0 = 0; j0 < n; j0 += BLOCK) {
+            int j1 = Math.min(n, j0 + BLOCK);
+            for (int i = 0; i < m; i++) {
+                int aRow = i * lda;
+                int cRow = i * ldc;
+                for (int j = j0; j < j1; j++) {
+                    c[cRow + j] = dot(k, a, aRow, b, j * ldb);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemmNN(int m, int n, int k, double[] a, int lda, double[] b, int ldb, double[] c, int ldc) {
+        for (int i = 0; i < m; i++) {
+            int cRow = i * ldc;
+            if (k == 0) {
+                Arrays.fill(c, cRow, cRow + n, 0);
+                continue;
+            }
+            scale(n, a[i * lda], b, 0, c, cRow);
+            for (int p = 1; p < k; p++) {
+                axpy(n, a[i * lda + p], b, p * ldb, c, cRow);
+            }
+        }
+    }
+
+    @Override
+    public void gemmTN(int m, int n, int k, double[] a, int lda, double[] b, int ldb, double[] c, int ldc) {
+        for (int p = 0; p < k; p++) {
+            int aRow = p * lda;
+            int bRow = p * ldb;
+            for (int i = 0; i < m; i++) {
+                axpy(n, a[aRow + i], b, bRow, c, i * ldc);
+            }
+        }
+    }
+}